@@ -0,0 +1,34 @@
+package org.openpnp.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.openpnp.model.Configuration;
+
+import com.google.common.io.Files;
+
+/**
+ * Setup shared by the benchmarks. Like the tests, the benchmarks run against the default
+ * configuration loaded into a temporary directory.
+ */
+class BenchmarkConfiguration {
+    static final String SAMPLE_IMAGE = "/samples/pnp-test/pnp-test.png";
+
+    private static boolean loaded;
+
+    static synchronized Configuration load() throws Exception {
+        if (!loaded) {
+            File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+            Configuration.initialize(workingDirectory);
+            Configuration.get().load();
+            loaded = true;
+        }
+        return Configuration.get();
+    }
+
+    static BufferedImage loadSampleImage() throws Exception {
+        return ImageIO.read(BenchmarkConfiguration.class.getResource(SAMPLE_IMAGE));
+    }
+}
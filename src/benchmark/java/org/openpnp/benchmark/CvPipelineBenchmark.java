@@ -0,0 +1,70 @@
+package org.openpnp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
+import org.openpnp.model.Configuration;
+import org.openpnp.util.OpenCvUtils;
+import org.openpnp.util.VisionUtils;
+import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvStage.Result;
+
+/**
+ * The default bottom vision and fiducial pipelines processing the bundled sample image. The
+ * image is handed to the ImageCapture stage directly so that camera settling is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CvPipelineBenchmark {
+    @Param({"ReferenceBottomVision", "ReferenceFiducialLocator"})
+    public String pipelineName;
+
+    private CvPipeline pipeline;
+    private Mat image;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Configuration configuration = BenchmarkConfiguration.load();
+        String xml = IOUtils.toString(ReferenceBottomVision.class
+                .getResource("/org/openpnp/machine/reference/vision/" + pipelineName
+                        + "-DefaultPipeline.xml"));
+        pipeline = new CvPipeline(xml);
+        pipeline.setProperty("camera",
+                configuration.getMachine().getDefaultHead().getDefaultCamera());
+        pipeline.setProperty("footprint",
+                configuration.getPackage("FIDUCIAL-1X2").getFootprint());
+        image = OpenCvUtils.toMat(BenchmarkConfiguration.loadSampleImage());
+        pipeline.setProperty("ImageCapture.image", image);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pipeline.close();
+        image.release();
+    }
+
+    @Benchmark
+    public Result process() {
+        pipeline.process();
+        return pipeline.getResult(VisionUtils.PIPELINE_RESULTS_NAME);
+    }
+}
@@ -0,0 +1,93 @@
+package org.openpnp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openpnp.machine.reference.ReferenceActuator;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.driver.GcodeDriver;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+import org.openpnp.machine.reference.driver.TcpCommunications;
+import org.openpnp.spi.Machine;
+import org.openpnp.util.GcodeServer;
+
+/**
+ * GcodeDriver command round trips over TCP against a GcodeServer on localhost, set up as in
+ * GcodeDriverTest. This measures the driver's own overhead of sending a command and waiting for
+ * and parsing its response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GcodeDriverBenchmark {
+    private GcodeServer server;
+    private Machine machine;
+    private ReferenceActuator actuator;
+    private boolean value;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new GcodeServer();
+        server.addCommandResponse("G21 ; Set millimeters mode", "ok");
+        server.addCommandResponse("G90 ; Set absolute positioning mode", "ok");
+        server.addCommandResponse("M82 ; Set absolute mode for extruder", "ok");
+        server.addCommandResponse("G28 ; Home all axes", "ok");
+        server.addCommandResponse("SET A1 true", "ok");
+        server.addCommandResponse("SET A1 false", "ok");
+        server.addCommandResponse("READ A1", "read:a1:497\nok");
+
+        machine = BenchmarkConfiguration.load().getMachine();
+
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaults();
+        driver.setConnectionKeepAlive(false);
+        driver.setCommunicationsType("tcp");
+        TcpCommunications tcp = (TcpCommunications) driver.getCommunications();
+        tcp.setIpAddress("localhost");
+        tcp.setPort(server.getListenerPort());
+        driver.setConnectWaitTimeMilliseconds(0);
+        driver.setTimeoutMilliseconds(500);
+        ((ReferenceMachine) machine).setDriver(driver);
+
+        actuator = new ReferenceActuator();
+        actuator.setName("A1");
+        machine.addActuator(actuator);
+        driver.setCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND, "SET A1 {BooleanValue}");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, "READ A1");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_REGEX, "read:a1:(?<Value>-?\\d+)");
+
+        machine.setEnabled(true);
+        machine.home();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        machine.setEnabled(false);
+        server.shutdown();
+    }
+
+    @Benchmark
+    public void actuate() throws Exception {
+        value = !value;
+        actuator.actuate(value);
+    }
+
+    @Benchmark
+    public String read() throws Exception {
+        return actuator.read();
+    }
+}
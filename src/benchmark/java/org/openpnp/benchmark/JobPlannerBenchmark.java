@@ -0,0 +1,96 @@
+package org.openpnp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.SimplePnpJobPlanner;
+import org.openpnp.model.Board;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+/**
+ * Planning a whole job with SimplePnpJobPlanner, one plan() call per cycle until all placements
+ * are planned, on the default machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobPlannerBenchmark {
+    @Param({"100", "1000"})
+    public int placements;
+
+    private Head head;
+    private List<JobPlacement> jobPlacements;
+    private SimplePnpJobPlanner planner = new SimplePnpJobPlanner();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Configuration configuration = BenchmarkConfiguration.load();
+        head = configuration.getMachine().getDefaultHead();
+
+        // Only parts the machine has a nozzle tip for can be planned.
+        List<Part> parts = new ArrayList<>();
+        for (Part part : configuration.getParts()) {
+            if (part.getPackage() != null
+                    && !part.getPackage().getCompatibleNozzleTips().isEmpty()) {
+                parts.add(part);
+            }
+        }
+        if (parts.isEmpty()) {
+            throw new Exception("The default configuration has no parts that can be planned.");
+        }
+
+        Board board = new Board();
+        List<Placement> boardPlacements = new ArrayList<>();
+        for (int i = 0; i < placements; i++) {
+            Placement placement = new Placement("P" + i);
+            placement.setPart(parts.get(i % parts.size()));
+            placement.setLocation(
+                    new Location(LengthUnit.Millimeters, (i % 50) * 2.0, (i / 50) * 2.0, 0, 0));
+            boardPlacements.add(placement);
+        }
+        board.addPlacements(boardPlacements);
+        BoardLocation boardLocation = new BoardLocation(board);
+        jobPlacements = new ArrayList<>();
+        for (Placement placement : board.getPlacements()) {
+            jobPlacements.add(new JobPlacement(boardLocation, placement));
+        }
+    }
+
+    @Benchmark
+    public int plan() {
+        List<JobPlacement> remaining = new ArrayList<>(jobPlacements);
+        int cycles = 0;
+        while (!remaining.isEmpty()) {
+            List<PlannedPlacement> planned = planner.plan(head, remaining);
+            if (planned.isEmpty()) {
+                break;
+            }
+            cycles++;
+        }
+        return cycles;
+    }
+}
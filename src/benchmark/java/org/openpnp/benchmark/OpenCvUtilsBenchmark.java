@@ -0,0 +1,57 @@
+package org.openpnp.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openpnp.util.OpenCvUtils;
+
+/**
+ * Conversion of the bundled sample image between BufferedImage and Mat, as done for every
+ * captured frame that goes through a pipeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OpenCvUtilsBenchmark {
+    private BufferedImage image;
+    private Mat mat;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        image = BenchmarkConfiguration.loadSampleImage();
+        mat = OpenCvUtils.toMat(image);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mat.release();
+    }
+
+    @Benchmark
+    public Mat toMat() {
+        Mat result = OpenCvUtils.toMat(image);
+        result.release();
+        return result;
+    }
+
+    @Benchmark
+    public BufferedImage toBufferedImage() {
+        return OpenCvUtils.toBufferedImage(mat);
+    }
+}
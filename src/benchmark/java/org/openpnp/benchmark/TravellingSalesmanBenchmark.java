@@ -0,0 +1,57 @@
+package org.openpnp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.util.TravellingSalesman;
+
+/**
+ * TravellingSalesman.solve() on random locations spread over a typical machine, as in
+ * TavellingSalesmanTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TravellingSalesmanBenchmark {
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private List<Location> locations;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Seeded, so that every run solves the same problem.
+        Random rnd = new Random(42);
+        locations = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            locations.add(new Location(LengthUnit.Millimeters, rnd.nextDouble() * 1000.0,
+                    rnd.nextDouble() * 500.0, rnd.nextDouble() * 20.0, 0.0));
+        }
+    }
+
+    @Benchmark
+    public double solve() {
+        TravellingSalesman<Location> tsm = new TravellingSalesman<>(locations,
+                location -> location, new Location(LengthUnit.Millimeters), null);
+        return tsm.solve();
+    }
+}
@@ -58,14 +58,23 @@ public class Main {
     private static void configureLogging(File configurationDirectory) {
         File logDirectory = new File(configurationDirectory, "log");
         File logFile = new File(logDirectory, "OpenPnP.log");
+        // Write log entries on tinylog's writing thread so that logging threads, often the machine
+        // thread, never wait on disk I/O. The main thread ends as soon as the GUI is up, so the
+        // writing thread does not observe it and is shut down when the JVM exits instead.
         Configurator
             .currentConfig()
             .writer(new RollingFileWriter(logFile.getAbsolutePath(), 100))
             .addWriter(new ConsoleWriter(System.out, System.err))
+            .writingThread(null)
             .activate();
         Configurator.currentConfig()
             .formatPattern("{date:yyyy-MM-dd HH:mm:ss.SSS} {class_name} {level}: {message}")
             .activate();
+        // Write out whatever is still queued, whichever way the JVM exits. The known exit paths
+        // in MainFrame also do this before calling System.exit(), so the file writer is not
+        // closed by tinylog's own shutdown hook while entries are still being written.
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> Configurator.shutdownWritingThread(true), "LogShutdown"));
 
         // Redirect the stdout and stderr to the LogPanel
         SystemLogger out = new SystemLogger(System.out, Level.INFO);
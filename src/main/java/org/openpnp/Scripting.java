@@ -12,15 +12,25 @@ import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
+import javax.script.SimpleScriptContext;
 import javax.swing.AbstractAction;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
@@ -45,6 +55,18 @@ public class Scripting {
     File eventsDirectory;
     WatchService watcher;
 
+    /**
+     * Event scripts by event name, which is the script's base name. This is rebuilt whenever the
+     * Events directory changes, so on() doesn't have to list the directory for every event.
+     */
+    private volatile Map<String, List<File>> eventScripts = Collections.emptyMap();
+
+    /**
+     * Idle script engines by file extension. An engine is taken out of the pool while a script
+     * runs on it, so two threads never share one, and it keeps the scripts it has compiled.
+     */
+    private final Map<String, Queue<PooledEngine>> enginePool = new ConcurrentHashMap<>();
+
     public Scripting() {
         // Collect all the script filename extensions we know how to handle from the list of
         // available scripting engines.
@@ -121,6 +143,7 @@ public class Scripting {
         try {
             watcher = FileSystems.getDefault().newWatchService();
             watchDirectory(getScriptsDirectory());
+            watchDirectory(eventsDirectory);
             Thread thread = new Thread(() -> {
                 for (;;) {
                     try {
@@ -129,6 +152,7 @@ public class Scripting {
                         key.pollEvents();
                         key.reset();
                         // rescan
+                        indexEventScripts();
                         synchronizeMenu(menu, getScriptsDirectory());
                     }
                     catch (Exception e) {
@@ -140,8 +164,10 @@ public class Scripting {
             thread.start();
         }
         catch (Exception e) {
+            watcher = null;
             e.printStackTrace();
         }
+        indexEventScripts();
     }
 
     public void setMenu(JMenu menu) {
@@ -155,6 +181,7 @@ public class Scripting {
 
             @Override
             public void actionPerformed(ActionEvent e) {
+                indexEventScripts();
                 synchronizeMenu(menu, getScriptsDirectory());
             }
         });
@@ -286,36 +313,119 @@ public class Scripting {
     }
     
     public void execute(File script, Map<String, Object> additionalGlobals) throws Exception {
-        ScriptEngine engine =
-                manager.getEngineByExtension(Files.getFileExtension(script.getName()));
-
-        engine.put("config", Configuration.get());
-        engine.put("machine", Configuration.get().getMachine());
-        engine.put("gui", MainFrame.get());
-        engine.put("scripting", this);
-        engine.put(ScriptEngine.FILENAME, script.getName());
-
-        if (additionalGlobals != null) {
-            for (String name : additionalGlobals.keySet()) {
-                engine.put(name, additionalGlobals.get(name));
+        String extension = Files.getFileExtension(script.getName());
+        Queue<PooledEngine> pool =
+                enginePool.computeIfAbsent(extension, k -> new ConcurrentLinkedQueue<>());
+        PooledEngine pooledEngine = pool.poll();
+        if (pooledEngine == null) {
+            ScriptEngine engine = manager.getEngineByExtension(extension);
+            if (engine == null) {
+                throw new Exception("No script engine found for " + script.getName());
             }
+            pooledEngine = new PooledEngine(engine);
         }
+        try {
+            ScriptEngine engine = pooledEngine.engine;
+
+            // Each run gets fresh bindings so that scripts don't see each other's variables,
+            // just like when every script had its own engine.
+            ScriptContext context = new SimpleScriptContext();
+            context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+            context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE),
+                    ScriptContext.GLOBAL_SCOPE);
+            Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            bindings.put("config", Configuration.get());
+            bindings.put("machine", Configuration.get().getMachine());
+            bindings.put("gui", MainFrame.get());
+            bindings.put("scripting", this);
+            bindings.put(ScriptEngine.FILENAME, script.getName());
+
+            if (additionalGlobals != null) {
+                for (String name : additionalGlobals.keySet()) {
+                    bindings.put(name, additionalGlobals.get(name));
+                }
+            }
 
-        try (FileReader reader = new FileReader(script)) {
-            engine.eval(reader);
+            CompiledScript compiledScript = pooledEngine.compile(script);
+            if (compiledScript != null) {
+                compiledScript.eval(context);
+            }
+            else {
+                try (FileReader reader = new FileReader(script)) {
+                    engine.eval(reader, context);
+                }
+            }
+        }
+        finally {
+            pool.offer(pooledEngine);
         }
     }
 
     public void on(String event, Map<String, Object> globals) throws Exception {
-        Logger.trace("Scripting.on " + event);
+        Logger.trace("Scripting.on {}", event);
+        if (watcher == null) {
+            // Without the watcher the index can't be kept current, so scan every time.
+            indexEventScripts();
+        }
+        List<File> scripts = eventScripts.get(event);
+        if (scripts == null) {
+            return;
+        }
+        for (File script : scripts) {
+            Logger.trace("Scripting.on found {}", script.getName());
+            execute(script, globals);
+        }
+    }
+
+    private void indexEventScripts() {
+        Map<String, List<File>> eventScripts = new HashMap<>();
         for (File script : FileUtils.listFiles(eventsDirectory, extensions, false)) {
             if (!script.isFile()) {
                 continue;
             }
-            if (FilenameUtils.getBaseName(script.getName()).equals(event)) {
-                Logger.trace("Scripting.on found " + script.getName());
-                execute(script, globals);
+            eventScripts
+                    .computeIfAbsent(FilenameUtils.getBaseName(script.getName()),
+                            k -> new ArrayList<>())
+                    .add(script);
+        }
+        for (List<File> scripts : eventScripts.values()) {
+            Collections.sort(scripts);
+        }
+        this.eventScripts = eventScripts;
+    }
+
+    /**
+     * A script engine and the scripts compiled with it. Scripts are compiled again when the
+     * file has been modified since.
+     */
+    private static class PooledEngine {
+        final ScriptEngine engine;
+        final Map<File, CompiledScript> compiledScripts = new HashMap<>();
+        final Map<File, Long> compiledModified = new HashMap<>();
+
+        PooledEngine(ScriptEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Returns the compiled script, or null if the engine can't compile scripts.
+         */
+        CompiledScript compile(File script) throws Exception {
+            if (!(engine instanceof Compilable)) {
+                return null;
+            }
+            long modified = script.lastModified();
+            CompiledScript compiledScript = compiledScripts.get(script);
+            if (compiledScript == null || compiledModified.get(script) != modified) {
+                try (FileReader reader = new FileReader(script)) {
+                    // Set the file name so that compile errors name the script.
+                    engine.put(ScriptEngine.FILENAME, script.getName());
+                    compiledScript = ((Compilable) engine).compile(reader);
+                }
+                compiledScripts.put(script, compiledScript);
+                compiledModified.put(script, modified);
             }
+            return compiledScript;
         }
     }
 }
@@ -770,9 +770,7 @@ public class JobPanel extends JPanel {
             Board importedBoard = boardImporter.importBoard((Frame) getTopLevelAncestor());
             if (importedBoard != null) {
                 Board existingBoard = getSelection().getBoard();
-                for (Placement placement : importedBoard.getPlacements()) {
-                    existingBoard.addPlacement(placement);
-                }
+                existingBoard.addPlacements(importedBoard.getPlacements());
                 for (BoardPad pad : importedBoard.getSolderPastePads()) {
                     // TODO: This is a temporary hack until we redesign the
                     // importer
@@ -1569,9 +1567,9 @@ public class JobPanel extends JPanel {
 
     private final TextStatusListener textStatusListener = text -> {
         MainFrame.get().setStatus(text);
-        // Repainting here refreshes the tables, which contain status that needs to be updated.
-        // Would be better to have property notifiers but this is going to have to do for now.
-        repaint();
+        // The placements table updates its rows as placements are placed, but the completion
+        // totals cover all the boards of the job, so update them as the job progresses.
+        SwingUtilities.invokeLater(() -> getJobPlacementsPanel().updateActivePlacements());
     };
     
     boolean isAllPlaced() {
@@ -1579,16 +1577,11 @@ public class JobPanel extends JPanel {
     	    if (!boardLocation.isEnabled()) {
     	        continue;
     	    }
-        	for (Placement placement : boardLocation.getBoard().getPlacements()) {
-                if (placement.getType() != Type.Placement) {
-                    continue;
-                }
+        	for (Placement placement : boardLocation.getBoard().getPlacementIndex()
+        	            .getPlacements(boardLocation.getSide(), Type.Placement)) {
                 if (!placement.isEnabled()) {
                     continue;
                 }
-        	    if (placement.getSide() != boardLocation.getSide()) {
-        	        continue;
-        	    }
         		if (!boardLocation.getPlaced(placement.getId())) {
     				return false;
         		}
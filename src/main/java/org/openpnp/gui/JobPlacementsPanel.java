@@ -126,6 +126,9 @@ public class JobPlacementsPanel extends JPanel {
         tableSorter = new TableRowSorter<>(tableModel);
         
                 table = new AutoSelectTextTable(tableModel);
+        // Rows are updated one by one as placements change, and must be filtered again when
+        // they are.
+        tableSorter.setSortsOnUpdates(true);
         table.setRowSorter(tableSorter);
         table.getTableHeader().setDefaultRenderer(new MultisortTableHeaderCellRenderer());
         table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
@@ -183,8 +186,6 @@ public class JobPlacementsPanel extends JPanel {
                 if (e.getKeyChar() == ' ') {
                     Placement placement = getSelection();
                     placement.setEnabled(!placement.isEnabled());
-                    refreshSelectedRow();
-                    updateActivePlacements();
                 }
                 else {
                     super.keyTyped(e);
@@ -433,12 +434,10 @@ public class JobPlacementsPanel extends JPanel {
             }
             
             // Check if the new placement ID is unique
-            for(Placement compareplacement : boardLocation.getBoard().getPlacements()) {
-            	if (compareplacement.getId().equals(id)) {
-            		MessageBoxes.errorBox(getTopLevelAncestor(), "Error",
-                            "The ID for the new placement already exists");
-                    return;
-            	}
+            if (boardLocation.getBoard().getPlacementIndex().getPlacement(id) != null) {
+                MessageBoxes.errorBox(getTopLevelAncestor(), "Error",
+                        "The ID for the new placement already exists");
+                return;
             }
             
             Placement placement = new Placement(id);
@@ -631,8 +630,6 @@ public class JobPlacementsPanel extends JPanel {
         public void actionPerformed(ActionEvent arg0) {
             for (Placement placement : getSelections()) {
                 placement.setType(type);
-                tableModel.fireTableDataChanged();
-                updateActivePlacements();
             }
         }
     };
@@ -660,8 +657,6 @@ public class JobPlacementsPanel extends JPanel {
         public void actionPerformed(ActionEvent arg0) {
             for (Placement placement : getSelections()) {
                 placement.setSide(side);
-                tableModel.fireTableDataChanged();
-                updateActivePlacements();
             }
         }
     };
@@ -689,8 +684,6 @@ public class JobPlacementsPanel extends JPanel {
         public void actionPerformed(ActionEvent arg0) {
             for (Placement placement : getSelections()) {
                 placement.setErrorHandling(errorHandling);
-                tableModel.fireTableDataChanged();
-                updateActivePlacements();
             }
         }
     };
@@ -719,8 +712,6 @@ public class JobPlacementsPanel extends JPanel {
         public void actionPerformed(ActionEvent arg0) {
             for (Placement placement : getSelections()) {
                 boardLocation.setPlaced(placement.getId(), placed);
-                tableModel.fireTableDataChanged();   
-                updateActivePlacements();
             }
         }
     };
@@ -750,8 +741,6 @@ public class JobPlacementsPanel extends JPanel {
         public void actionPerformed(ActionEvent arg0) {
             for (Placement placement : getSelections()) {
                 placement.setEnabled(enabled);
-                tableModel.fireTableDataChanged();   
-                updateActivePlacements();
             }
         }
     };
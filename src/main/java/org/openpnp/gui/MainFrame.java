@@ -92,6 +92,7 @@ import org.openpnp.gui.support.OSXAdapter;
 import org.openpnp.gui.support.RotationCellValue;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.LengthUnit;
+import org.pmw.tinylog.Configurator;
 import org.pmw.tinylog.Logger;
 
 import com.jgoodies.forms.layout.ColumnSpec;
@@ -676,6 +677,7 @@ public class MainFrame extends JFrame {
 	                            + "<br/><br/>" //$NON-NLS-1$
 	                            + "If you would like to start with a fresh configuration, just delete the entire directory at the location above.<br/><br/>" //$NON-NLS-1$
 	                            + "Retry loading (else openpnp will exit) ?")) { //$NON-NLS-1$
+	            	Configurator.shutdownWritingThread(true);
 	            	System.exit(1);
 	            }
 	        }
@@ -875,23 +877,34 @@ public class MainFrame extends JFrame {
             MessageBoxes.errorBox(MainFrame.this, "Save Preferences", e); //$NON-NLS-1$
         }
         
+        // The files are written in the background, write errors are reported when they happen.
         try {
-            configuration.save();
+            configuration.saveAsync().whenComplete((v, t) -> {
+                if (t != null) {
+                    Throwable cause = (t.getCause() != null) ? t.getCause() : t;
+                    SwingUtilities.invokeLater(() -> showSaveConfigError(cause));
+                }
+                else {
+                    Logger.debug("Config saved successfully!"); //$NON-NLS-1$
+                }
+            });
         }
         catch (Exception e) {
-			String message = "There was a problem saving the configuration. The reason was:\n\n" + e.getMessage() //$NON-NLS-1$
-					+ "\n\n"; //$NON-NLS-1$
-			message = message.replaceAll("\n", "<br/>"); //$NON-NLS-1$ //$NON-NLS-2$
-			message = message.replaceAll("\r", ""); //$NON-NLS-1$ //$NON-NLS-2$
-			message = "<html><body width=\"400\">" + message + "</body></html>"; //$NON-NLS-1$ //$NON-NLS-2$
-			JOptionPane.showMessageDialog(this, message, "Configuration Save Error", JOptionPane.ERROR_MESSAGE); //$NON-NLS-1$
+            showSaveConfigError(e);
 			return false;
         }
-
-        Logger.debug("Config saved successfully!"); //$NON-NLS-1$
         return true;
     }
 
+    private void showSaveConfigError(Throwable e) {
+		String message = "There was a problem saving the configuration. The reason was:\n\n" + e.getMessage() //$NON-NLS-1$
+				+ "\n\n"; //$NON-NLS-1$
+		message = message.replaceAll("\n", "<br/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		message = message.replaceAll("\r", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		message = "<html><body width=\"400\">" + message + "</body></html>"; //$NON-NLS-1$ //$NON-NLS-2$
+		JOptionPane.showMessageDialog(this, message, "Configuration Save Error", JOptionPane.ERROR_MESSAGE); //$NON-NLS-1$
+    }
+
     public boolean quit() {
         Logger.info("Shutting down..."); //$NON-NLS-1$
         try {
@@ -935,6 +948,8 @@ public class MainFrame extends JFrame {
             e.printStackTrace();
         }
         Logger.info("Shutdown complete, exiting."); //$NON-NLS-1$
+        // Write out whatever is still queued for the log writing thread.
+        Configurator.shutdownWritingThread(true);
         System.exit(0);
         return true;
     }
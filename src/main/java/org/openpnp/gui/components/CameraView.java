@@ -53,6 +53,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.prefs.Preferences;
 
 import javax.imageio.ImageIO;
@@ -78,11 +79,19 @@ public class CameraView extends JComponent implements CameraListener {
     private static final String PREF_RETICLE = "CamerView.reticle";
     private static final String PREF_ZOOM_INCREMENT = "CamerView.zoomIncrement";
     private static final double DEFAULT_ZOOM_INCREMENT = 0.01;
+    private static final String PREF_MAXIMUM_FPS = "CamerView.maximumFps";
+    private static final double DEFAULT_MAXIMUM_FPS = 30;
 
     private static final String DEFAULT_RETICLE_KEY = "DEFAULT_RETICLE_KEY";
 
     private final static int HANDLE_DIAMETER = 8;
 
+    /**
+     * The histogram shown with the image info is sampled on a grid of at most this many pixels
+     * along each axis of the frame.
+     */
+    private final static int HISTOGRAM_SAMPLES = 256;
+
     private enum HandlePosition {
         NW,
         N,
@@ -110,6 +119,40 @@ public class CameraView extends JComponent implements CameraListener {
      */
     private BufferedImage lastFrame;
 
+    /**
+     * The last frame downscaled to the size it is painted at, built off the EDT by
+     * updatePreview(). Only the visible part of the frame is scaled, so paintComponent() just
+     * has to copy it.
+     */
+    private volatile Preview preview;
+
+    /**
+     * Incremented every time the scaling data is recalculated, so that a Preview built for an
+     * earlier size or zoom is not painted.
+     */
+    private int scalingDataVersion;
+
+    /**
+     * Set while an updatePreview() is scheduled. Frames received in the meantime are coalesced
+     * into that update, which always takes the latest one.
+     */
+    private final AtomicBoolean previewScheduled = new AtomicBoolean();
+
+    /**
+     * Cleared when a new Preview is published and set once paintComponent() has run. While it is
+     * clear no further previews are built, so that frames the EDT has no time to paint are
+     * skipped instead of queued up.
+     */
+    private final AtomicBoolean previewPainted = new AtomicBoolean(true);
+
+    private long lastPreviewTimeMs;
+
+    /**
+     * The maximum rate at which this view updates its preview, regardless of how fast the camera
+     * delivers frames.
+     */
+    private double maximumFps = DEFAULT_MAXIMUM_FPS;
+
     private LinkedHashMap<Object, Reticle> reticles = new LinkedHashMap<>();
 
     private JPopupMenu popupMenu;
@@ -241,6 +284,10 @@ public class CameraView extends JComponent implements CameraListener {
         return PREF_ZOOM_INCREMENT + "." + camera.getId();
     }
 
+    private String getMaximumFpsPrefKey() {
+        return PREF_MAXIMUM_FPS + "." + camera.getId();
+    }
+
     public void addActionListener(CameraViewActionListener listener) {
         if (!actionListeners.contains(listener)) {
             actionListeners.add(listener);
@@ -282,6 +329,9 @@ public class CameraView extends JComponent implements CameraListener {
         // load the zoom increment pref, if any
         zoomIncPerMouseWheelTick = prefs.getDouble(getZoomIncrementPrefKey(), DEFAULT_ZOOM_INCREMENT);
 
+        // load the maximum fps pref, if any
+        maximumFps = prefs.getDouble(getMaximumFpsPrefKey(), DEFAULT_MAXIMUM_FPS);
+
     }
 
     public Camera getCamera() {
@@ -353,6 +403,21 @@ public class CameraView extends JComponent implements CameraListener {
         prefs.putDouble(getZoomIncrementPrefKey(), zoomIncPerMouseWheelTick);
         this.zoomIncPerMouseWheelTick = zoomIncPerMouseWheelTick;
     }
+
+    public double getMaximumFps() {
+        return maximumFps;
+    }
+
+    /**
+     * Sets the maximum rate at which this view updates its preview. Frames the camera delivers
+     * faster than this are skipped. This does not change the camera's own frame rate.
+     * 
+     * @param maximumFps
+     */
+    public void setMaximumFps(double maximumFps) {
+        prefs.putDouble(getMaximumFpsPrefKey(), maximumFps);
+        this.maximumFps = maximumFps;
+    }
     
     /**
      * Causes a short flash in the CameraView to get the user's attention.
@@ -477,9 +542,113 @@ public class CameraView extends JComponent implements CameraListener {
         }
         fps = 1000.0 / fpsAverage.next(System.currentTimeMillis() - lastFrameReceivedTime);
         lastFrameReceivedTime = System.currentTimeMillis();
+        schedulePreview();
+    }
+
+    /**
+     * Schedules updatePreview() on the scheduledExecutor, no sooner than the maximum fps allows
+     * after the last preview. Does nothing if an update is already scheduled, as that update
+     * will pick up the latest frame anyway.
+     */
+    private void schedulePreview() {
+        if (!previewScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long intervalMs = maximumFps > 0 ? (long) (1000 / maximumFps) : 0;
+        long delayMs = Math.max(0, lastPreviewTimeMs + intervalMs - System.currentTimeMillis());
+        scheduledExecutor.schedule(this::updatePreview, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void updatePreview() {
+        previewScheduled.set(false);
+        if (!previewPainted.get()) {
+            // The EDT has not painted the last preview yet, so skip this frame.
+            // paintComponent() schedules another update once it gets to it.
+            return;
+        }
+        BufferedImage frame = lastFrame;
+        if (frame == null) {
+            return;
+        }
+        Preview preview = buildPreview(frame);
+        if (preview == null) {
+            return;
+        }
+        lastPreviewTimeMs = System.currentTimeMillis();
+        this.preview = preview;
+        previewPainted.set(false);
         repaint();
     }
 
+    /**
+     * Scales the visible part of the frame to the size it is painted at, using the current
+     * scaling data. The preview is never larger than the source pixels it covers; when zoomed in
+     * past 1:1 the remaining upscaling is left to paintComponent().
+     * 
+     * @param frame
+     * @return The Preview, or null if nothing of the frame is visible or the scaling data has not
+     *         caught up with the frame size yet.
+     */
+    private Preview buildPreview(BufferedImage frame) {
+        int version;
+        Rectangle visible;
+        double sx1, sy1, sx2, sy2;
+        synchronized (this) {
+            if (frame.getWidth() != lastSourceWidth || frame.getHeight() != lastSourceHeight) {
+                return null;
+            }
+            Insets ins = getInsets();
+            visible = new Rectangle(imageX, imageY, scaledWidth, scaledHeight)
+                    .intersection(new Rectangle(ins.left, ins.top, (int) lastWidth,
+                            (int) lastHeight));
+            if (visible.isEmpty()) {
+                return null;
+            }
+            version = scalingDataVersion;
+            sx1 = (visible.x - imageX) * scaleRatioX;
+            sy1 = (visible.y - imageY) * scaleRatioY;
+            sx2 = (visible.x + visible.width - imageX) * scaleRatioX;
+            sy2 = (visible.y + visible.height - imageY) * scaleRatioY;
+        }
+
+        int previewWidth = (int) Math.max(1, Math.min(visible.width, Math.ceil(sx2 - sx1)));
+        int previewHeight = (int) Math.max(1, Math.min(visible.height, Math.ceil(sy2 - sy1)));
+        BufferedImage image =
+                new BufferedImage(previewWidth, previewHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(frame, 0, 0, previewWidth, previewHeight, (int) Math.round(sx1),
+                (int) Math.round(sy1), (int) Math.round(sx2), (int) Math.round(sy2), null);
+        g2d.dispose();
+
+        long[][] histogram = showImageInfo ? calculateHistogram(frame) : null;
+
+        return new Preview(frame, image, visible, version, histogram);
+    }
+
+    /**
+     * Calculates the RGB histogram of the image on a grid of at most HISTOGRAM_SAMPLES pixels
+     * along each axis, which is plenty for the 50 pixel tall display in drawImageInfo().
+     */
+    private static long[][] calculateHistogram(BufferedImage image) {
+        long[][] histogram = new long[3][256];
+        int stepX = Math.max(1, image.getWidth() / HISTOGRAM_SAMPLES);
+        int stepY = Math.max(1, image.getHeight() / HISTOGRAM_SAMPLES);
+        for (int y = stepY / 2; y < image.getHeight(); y += stepY) {
+            for (int x = stepX / 2; x < image.getWidth(); x += stepX) {
+                int rgb = image.getRGB(x, y);
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = (rgb >> 0) & 0xff;
+                histogram[0][r]++;
+                histogram[1][g]++;
+                histogram[2][b]++;
+            }
+        }
+        return histogram;
+    }
+
     /**
      * Calculates a bunch of scaling data that we cache to speed up painting. This is recalculated
      * when the size of the component or the size of the source changes. This method is
@@ -531,10 +700,14 @@ public class CameraView extends JComponent implements CameraListener {
         scaledUnitsPerPixelX = lastUnitsPerPixel.getX() * scaleRatioX;
         scaledUnitsPerPixelY = lastUnitsPerPixel.getY() * scaleRatioY;
 
+        scalingDataVersion++;
+
         if (selectionEnabled && selection != null) {
             // setSelection() handles updating the scaled rectangle
             setSelection(selection);
         }
+
+        schedulePreview();
     }
 
     @Override
@@ -547,9 +720,18 @@ public class CameraView extends JComponent implements CameraListener {
         Graphics2D g2d = (Graphics2D) g;
         g.setColor(getBackground());
         g2d.fillRect(ins.left, ins.top, width, height);
+        Preview preview = this.preview;
         if (image != null) {
             // Only render if there is a valid image.
-            g2d.drawImage(lastFrame, imageX, imageY, scaledWidth, scaledHeight, null);
+            if (preview != null && preview.scalingDataVersion == scalingDataVersion) {
+                g2d.drawImage(preview.image, preview.x, preview.y, preview.width, preview.height,
+                        null);
+            }
+            else {
+                // The size or zoom changed since the preview was built, so draw the frame
+                // directly until the next one is ready.
+                g2d.drawImage(image, imageX, imageY, scaledWidth, scaledHeight, null);
+            }
 
             double c = MainFrame.get().getMachineControls().getSelectedTool().getLocation()
                     .getRotation();
@@ -570,7 +752,7 @@ public class CameraView extends JComponent implements CameraListener {
             }
 
             if (showImageInfo && text == null) {
-                drawImageInfo(g2d, 10, 10, image);
+                drawImageInfo(g2d, 10, 10, image, preview == null ? null : preview.histogram);
             }
 
             if (selectionEnabled && selection != null) {
@@ -595,6 +777,14 @@ public class CameraView extends JComponent implements CameraListener {
             g2d.setColor(new Color(1f, 1f, 1f, alpha));
             g2d.fillRect(0, 0, getWidth(), getHeight());
         }
+
+        previewPainted.set(true);
+        if (image != null && (preview == null || preview.frame != image
+                || preview.scalingDataVersion != scalingDataVersion
+                || (showImageInfo && preview.histogram == null))) {
+            // Frames were skipped while this paint was pending, or the preview is out of date.
+            schedulePreview();
+        }
     }
     
     private boolean isPointInsideRectangle(int pointX, int pointY, int rectX1, int rectY1, int rectX2, int rectY2) {
@@ -964,7 +1154,7 @@ public class CameraView extends JComponent implements CameraListener {
     }
 
     private void drawImageInfo(Graphics2D g2d, int topLeftX, int topLeftY,
-            BufferedImage image) {
+            BufferedImage image, long[][] histogram) {
         if (image == null) {
             return;
         }
@@ -1012,18 +1202,9 @@ public class CameraView extends JComponent implements CameraListener {
         g2d.setColor(new Color(1, 1, 1, 0.20f));
         g2d.fillRect(topLeftX + insets.left, yPen, histogramWidth, histogramHeight);
 
-        // Calculate the histogram
-        long[][] histogram = new long[3][256];
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xff;
-                int g = (rgb >> 8) & 0xff;
-                int b = (rgb >> 0) & 0xff;
-                histogram[0][r]++;
-                histogram[1][g]++;
-                histogram[2][b]++;
-            }
+        // The histogram is calculated along with the preview, so it may not be there yet
+        if (histogram == null) {
+            return;
         }
         // find the highest value in the histogram
         long maxVal = 0;
@@ -1179,6 +1360,10 @@ public class CameraView extends JComponent implements CameraListener {
 
     public void setShowImageInfo(boolean showImageInfo) {
         this.showImageInfo = showImageInfo;
+        if (showImageInfo) {
+            // Get the histogram calculated
+            schedulePreview();
+        }
     }
 
     public static Cursor getCursorForHandlePosition(HandlePosition handlePosition) {
@@ -1582,6 +1767,42 @@ public class CameraView extends JComponent implements CameraListener {
                 }
             };
             
+    /**
+     * A frame as prepared for painting by buildPreview().
+     */
+    private static class Preview {
+        /**
+         * The frame the preview was built from.
+         */
+        final BufferedImage frame;
+        /**
+         * The visible part of the frame, scaled down to at most the size it is painted at.
+         */
+        final BufferedImage image;
+        /**
+         * Where in the component the image is painted.
+         */
+        final int x, y, width, height;
+        final int scalingDataVersion;
+        /**
+         * The frame's RGB histogram, or null if image info was not shown when the preview was
+         * built.
+         */
+        final long[][] histogram;
+
+        Preview(BufferedImage frame, BufferedImage image, Rectangle bounds,
+                int scalingDataVersion, long[][] histogram) {
+            this.frame = frame;
+            this.image = image;
+            this.x = bounds.x;
+            this.y = bounds.y;
+            this.width = bounds.width;
+            this.height = bounds.height;
+            this.scalingDataVersion = scalingDataVersion;
+            this.histogram = histogram;
+        }
+    }
+
     // From https://stackoverflow.com/questions/3793400/is-there-a-function-in-java-to-get-moving-average/42407811#42407811
     static class MovingAverage {
         private long [] window;
@@ -45,6 +45,7 @@ import org.openpnp.model.LengthUnit;
 public class CameraViewPopupMenu extends JPopupMenu {
     private CameraView cameraView;
     private JMenu zoomIncMenu;
+    private JMenu maximumFpsMenu;
     private JMenu reticleMenu;
     private JMenu reticleOptionsMenu;
 
@@ -55,6 +56,10 @@ public class CameraViewPopupMenu extends JPopupMenu {
 
         add(zoomIncMenu);
 
+        maximumFpsMenu = createMaximumFpsMenu();
+
+        add(maximumFpsMenu);
+
         reticleMenu = createReticleMenu();
 
         add(reticleMenu);
@@ -147,6 +152,26 @@ public class CameraViewPopupMenu extends JPopupMenu {
         return subMenu;
     }
     
+    private JMenu createMaximumFpsMenu() {
+        JMenu subMenu = new JMenu("Maximum Preview FPS");
+        ButtonGroup buttonGroup = new ButtonGroup();
+        for (double fps : new double[] {1, 5, 10, 15, 30, 60}) {
+            JRadioButtonMenuItem menuItem = new JRadioButtonMenuItem(String.format("%.0f", fps));
+            buttonGroup.add(menuItem);
+            if (cameraView.getMaximumFps() == fps) {
+                menuItem.setSelected(true);
+            }
+            menuItem.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    cameraView.setMaximumFps(fps);
+                }
+            });
+            subMenu.add(menuItem);
+        }
+        return subMenu;
+    }
+
     private JMenu createReticleMenu() {
         JMenu menu = new JMenu("Reticle");
 
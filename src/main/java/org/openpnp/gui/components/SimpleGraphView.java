@@ -36,7 +36,6 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
-import java.util.Set;
 
 import javax.swing.JComponent;
 
@@ -214,13 +213,15 @@ public class SimpleGraphView extends JComponent implements MouseMotionListener,
 
                     }
                     for (DataRow dataRow : dataScale.getDataRows()) {
-                        Set<Double> xAxis = dataRow.getXAxis();
-                        if (xAxis != null) {
+                        g2d.setColor(dataRow.getColor());
+                        // the row may be recorded to while we draw it
+                        synchronized (dataRow) {
+                            int size = dataRow.size();
                             double y0 = Double.NaN;
                             double x0 = Double.NaN;
-                            g2d.setColor(dataRow.getColor());
-                            for (double x : xAxis) {
-                                double y = dataRow.getDataPoint(x);
+                            for (int i = 0; i < size; i++) {
+                                double x = dataRow.getX(i);
+                                double y = dataRow.getY(i);
                                 if (!Double.isNaN(x0)) {
                                     g2d.drawLine((int)(xOrigin+(x0-min.x)*xScale), (int)(yOrigin-(y0-min.y)*yScale), 
                                             (int)(xOrigin+(x-min.x)*xScale), (int)(yOrigin-(y-min.y)*yScale));
@@ -228,10 +229,10 @@ public class SimpleGraphView extends JComponent implements MouseMotionListener,
                                 x0 = x;
                                 y0 = y;
                             }
-                            if (selectedX != null) {
-                                drawYIndicator(g2d, dfm, fontAscent, w, min, yOrigin, yScale, yUnit, 
-                                        dataRow.getInterpolated(selectedX), dataRow.getColor());
-                            }
+                        }
+                        if (selectedX != null) {
+                            drawYIndicator(g2d, dfm, fontAscent, w, min, yOrigin, yScale, yUnit, 
+                                    dataRow.getInterpolated(selectedX), dataRow.getColor());
                         }
                     }
                 }
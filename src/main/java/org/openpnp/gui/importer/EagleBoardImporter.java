@@ -662,12 +662,11 @@ public class EagleBoardImporter implements BoardImporter {
 
                     placement.setSide(element_side);
                     placements.add(placement);
-                    board.addPlacement(placement); // this adds the placement to the Pick and Place
-                                                   // list
 
                 }
             }
         }
+        board.addPlacements(placements); // this adds the placements to the Pick and Place list
         if (boardToProcess.library != null) {
 
         }
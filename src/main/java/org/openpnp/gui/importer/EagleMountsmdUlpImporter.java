@@ -311,9 +311,7 @@ public class EagleMountsmdUlpImporter implements BoardImporter {
                     MessageBoxes.errorBox(Dlg.this, "Import Error", e1);
                     return;
                 }
-                for (Placement placement : placements) {
-                    board.addPlacement(placement);
-                }
+                board.addPlacements(placements);
                 setVisible(false);
             }
         }
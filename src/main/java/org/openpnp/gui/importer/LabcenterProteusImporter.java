@@ -308,9 +308,7 @@ public class LabcenterProteusImporter implements BoardImporter {
 							+ "ie: Include stock codes check box is not checked but file has stock codes");
                     return;
                 }
-                for (Placement placement : placements) {
-                    board.addPlacement(placement);
-                }
+                board.addPlacements(placements);
                 setVisible(false);
             }
         }
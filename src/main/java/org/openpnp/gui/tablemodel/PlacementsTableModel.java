@@ -19,12 +19,22 @@
 
 package org.openpnp.gui.tablemodel;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
 import org.openpnp.gui.JobPlacementsPanel;
 import org.openpnp.gui.support.LengthCellValue;
 import org.openpnp.gui.support.PartCellValue;
 import org.openpnp.gui.support.RotationCellValue;
+import org.openpnp.model.AbstractModelObject;
 import org.openpnp.model.Board;
 import org.openpnp.model.Board.Side;
 import org.openpnp.model.BoardLocation;
@@ -36,6 +46,7 @@ import org.openpnp.model.Placement;
 import org.openpnp.model.Placement.ErrorHandling;
 import org.openpnp.model.Placement.Type;
 import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Machine;
 
 public class PlacementsTableModel extends AbstractTableModel {
     final Configuration configuration;
@@ -59,6 +70,101 @@ public class PlacementsTableModel extends AbstractTableModel {
     private BoardLocation boardLocation;
     private JobPlacementsPanel jobPlacementsPanel;
 
+    /**
+     * The row of each placement of the board, for updating single rows.
+     */
+    private Map<Placement, Integer> rows = new HashMap<>();
+
+    /**
+     * The enabled feeders of each part, so the status of a placement does not need a scan of all
+     * the feeders. Dropped when a feeder is added, removed or changes part or enabled, and built
+     * again on the next lookup.
+     */
+    private Map<Part, List<Feeder>> enabledFeeders;
+    private Machine machine;
+
+    private boolean activePlacementsUpdatePending;
+
+    /*
+     * The table is kept up to date by listening for changes to the placements, the placed state
+     * of the board location and the feeders, instead of working it out while rendering. Changes
+     * may come from the job processor thread, so they are handed to the event dispatch thread.
+     */
+    private final PropertyChangeListener placementListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            Placement placement = (Placement) evt.getSource();
+            boolean countsChanged = evt.getPropertyName().equals("enabled")
+                    || evt.getPropertyName().equals("side")
+                    || evt.getPropertyName().equals("type");
+            onEventDispatchThread(() -> {
+                fireRowUpdated(placement);
+                if (countsChanged) {
+                    updateActivePlacements();
+                }
+            });
+        }
+    };
+
+    private final PropertyChangeListener boardListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (evt.getPropertyName().equals("placements")) {
+                onEventDispatchThread(() -> {
+                    listenToPlacements();
+                    fireTableDataChanged();
+                    updateActivePlacements();
+                });
+            }
+        }
+    };
+
+    private final PropertyChangeListener boardLocationListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (evt.getPropertyName().equals("placed")) {
+                // See BoardLocation.setPlaced().
+                String placementId = (String) evt.getNewValue();
+                onEventDispatchThread(() -> {
+                    if (placementId == null) {
+                        fireColumnUpdated(8);
+                    }
+                    else if (board != null) {
+                        fireRowUpdated(board.getPlacementIndex().getPlacement(placementId));
+                    }
+                    updateActivePlacements();
+                });
+            }
+        }
+    };
+
+    private final PropertyChangeListener feederListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (evt.getPropertyName().equals("part")) {
+                feedersChanged((Part) evt.getOldValue(), (Part) evt.getNewValue());
+            }
+            else if (evt.getPropertyName().equals("enabled")) {
+                feedersChanged(((Feeder) evt.getSource()).getPart(), null);
+            }
+        }
+    };
+
+    private final PropertyChangeListener machineListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (evt.getPropertyName().equals("feeders")) {
+                Feeder removed = (Feeder) evt.getOldValue();
+                Feeder added = (Feeder) evt.getNewValue();
+                if (removed instanceof AbstractModelObject) {
+                    ((AbstractModelObject) removed).removePropertyChangeListener(feederListener);
+                }
+                feedersChanged(removed == null ? null : removed.getPart(),
+                        added == null ? null : added.getPart());
+            }
+        }
+    };
+
     public PlacementsTableModel(Configuration configuration) {
         this.configuration = configuration;
     }
@@ -68,15 +174,128 @@ public class PlacementsTableModel extends AbstractTableModel {
     }
 
     public void setBoardLocation(BoardLocation boardLocation) {
+        if (this.boardLocation != null) {
+            this.boardLocation.removePropertyChangeListener(boardLocationListener);
+        }
+        if (this.board != null) {
+            this.board.removePropertyChangeListener(boardListener);
+        }
         this.boardLocation = boardLocation;
         if (boardLocation == null) {
             this.board = null;
         }
         else {
             this.board = boardLocation.getBoard();
+            boardLocation.addPropertyChangeListener(boardLocationListener);
+            board.addPropertyChangeListener(boardListener);
         }
+        listenToPlacements();
         fireTableDataChanged();
     }
+
+    /**
+     * Move the placement listener to the current placements of the board and index their rows.
+     */
+    private void listenToPlacements() {
+        for (Placement placement : rows.keySet()) {
+            placement.removePropertyChangeListener(placementListener);
+        }
+        rows = new HashMap<>();
+        if (board == null) {
+            return;
+        }
+        List<Placement> placements = board.getPlacements();
+        for (int i = 0; i < placements.size(); i++) {
+            Placement placement = placements.get(i);
+            if (placement != null && rows.putIfAbsent(placement, i) == null) {
+                placement.addPropertyChangeListener(placementListener);
+            }
+        }
+    }
+
+    private void fireRowUpdated(Placement placement) {
+        Integer row = rows.get(placement);
+        if (row != null) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    private void fireColumnUpdated(int column) {
+        if (getRowCount() > 0) {
+            fireTableChanged(new TableModelEvent(this, 0, getRowCount() - 1, column));
+        }
+    }
+
+    /**
+     * Drop the feeder index and update the status of the placements of the given parts.
+     */
+    private void feedersChanged(Part part1, Part part2) {
+        onEventDispatchThread(() -> {
+            enabledFeeders = null;
+            for (Part part : new Part[] {part1, part2}) {
+                if (part != null && board != null) {
+                    for (Placement placement : board.getPlacementIndex().getPlacements(part)) {
+                        Integer row = rows.get(placement);
+                        if (row != null) {
+                            fireTableCellUpdated(row, 9);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private Map<Part, List<Feeder>> getEnabledFeeders() {
+        if (enabledFeeders == null) {
+            Machine machine = Configuration.get().getMachine();
+            if (machine != this.machine) {
+                if (this.machine instanceof AbstractModelObject) {
+                    ((AbstractModelObject) this.machine).removePropertyChangeListener(machineListener);
+                }
+                if (machine instanceof AbstractModelObject) {
+                    ((AbstractModelObject) machine).addPropertyChangeListener(machineListener);
+                }
+                this.machine = machine;
+            }
+            Map<Part, List<Feeder>> enabledFeeders = new HashMap<>();
+            for (Feeder feeder : machine.getFeeders()) {
+                if (feeder instanceof AbstractModelObject) {
+                    // Remove first so a feeder is never listened to twice.
+                    ((AbstractModelObject) feeder).removePropertyChangeListener(feederListener);
+                    ((AbstractModelObject) feeder).addPropertyChangeListener(feederListener);
+                }
+                if (feeder.isEnabled() && feeder.getPart() != null) {
+                    enabledFeeders.computeIfAbsent(feeder.getPart(), p -> new ArrayList<>())
+                            .add(feeder);
+                }
+            }
+            this.enabledFeeders = enabledFeeders;
+        }
+        return enabledFeeders;
+    }
+
+    /**
+     * Update the active placement counts once for any number of changes.
+     */
+    private void updateActivePlacements() {
+        if (activePlacementsUpdatePending || jobPlacementsPanel == null) {
+            return;
+        }
+        activePlacementsUpdatePending = true;
+        SwingUtilities.invokeLater(() -> {
+            activePlacementsUpdatePending = false;
+            jobPlacementsPanel.updateActivePlacements();
+        });
+    }
+
+    private static void onEventDispatchThread(Runnable runnable) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            runnable.run();
+        }
+        else {
+            SwingUtilities.invokeLater(runnable);
+        }
+    }
     
     public Placement getPlacement(int index) {
         return board.getPlacements().get(index);
@@ -111,15 +330,12 @@ public class PlacementsTableModel extends AbstractTableModel {
             Placement placement = board.getPlacements().get(rowIndex);
             if (columnIndex == 0) {
                 placement.setEnabled((Boolean) aValue);
-                jobPlacementsPanel.updateActivePlacements();
             }
             else if (columnIndex == 2) {
                 placement.setPart((Part) aValue);
-                fireTableCellUpdated(rowIndex, 8);
             }
             else if (columnIndex == 3) {
                 placement.setSide((Side) aValue);
-                jobPlacementsPanel.updateActivePlacements();
             }
             else if (columnIndex == 4) {
                 LengthCellValue value = (LengthCellValue) aValue;
@@ -145,12 +361,9 @@ public class PlacementsTableModel extends AbstractTableModel {
             }
             else if (columnIndex == 7) {
                 placement.setType((Type) aValue);
-                fireTableCellUpdated(rowIndex, 8);
-                jobPlacementsPanel.updateActivePlacements();
             }
             else if (columnIndex == 8) {
                 boardLocation.setPlaced(placement.getId(), (Boolean) aValue);
-                jobPlacementsPanel.updateActivePlacements();
             }
             else if (columnIndex == 10) {
                 placement.setErrorHandling((ErrorHandling) aValue);
@@ -175,14 +388,7 @@ public class PlacementsTableModel extends AbstractTableModel {
                     
         }
         if (placement.getType() == Placement.Type.Placement && placement.isEnabled()) {
-            boolean found = false;
-            for (Feeder feeder : Configuration.get().getMachine().getFeeders()) {
-                if (feeder.getPart() == placement.getPart() && feeder.isEnabled()) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
+            if (!getEnabledFeeders().containsKey(placement.getPart())) {
                 return Status.MissingFeeder;
             }
 
@@ -214,10 +420,6 @@ public class PlacementsTableModel extends AbstractTableModel {
             case 7:
                 return placement.getType();
             case 8:
-                // TODO STOPSHIP: Both of these are huge performance hogs and do not belong
-                // in the render process. At the least we should cache this information but it
-                // would be better if the information was updated out of band by a listener.
-            	jobPlacementsPanel.updateActivePlacements();
             	return boardLocation.getPlaced(placement.getId());
             case 9:
                 return getPlacementStatus(placement);
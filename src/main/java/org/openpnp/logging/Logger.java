@@ -1,50 +1,202 @@
 package org.openpnp.logging;
 
 import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntryForwarder;
 
+/**
+ * Thin facade over tinylog. Every call is checked against the current level before anything is
+ * formatted, so disabled TRACE and DEBUG messages cost no more than a level comparison. The fixed
+ * arity overloads avoid allocating a varargs array for the common one to three argument cases.
+ *
+ * Entries are forwarded with one extra level of stack depth so that tinylog reports the caller,
+ * not this class, as the source of the message.
+ */
 public class Logger {
+    private static final int DEPTH = 1;
+
+    public void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public void error(String message, Object arg) {
+        log(Level.ERROR, message, arg);
+    }
+
+    public void error(String message, Object arg1, Object arg2) {
+        log(Level.ERROR, message, arg1, arg2);
+    }
+
+    public void error(String message, Object arg1, Object arg2, Object arg3) {
+        log(Level.ERROR, message, arg1, arg2, arg3);
+    }
+
     public void error(String message, Object... args) {
-        org.pmw.tinylog.Logger.info(message, args);
+        if (isEnabled(Level.ERROR)) {
+            LogEntryForwarder.forward(DEPTH, Level.ERROR, message, args);
+        }
     }
-    
+
     public void error(String message, Throwable t) {
-        org.pmw.tinylog.Logger.info(message, t);
+        log(Level.ERROR, message, t);
+    }
+
+    public void warn(String message) {
+        log(Level.WARNING, message);
+    }
+
+    public void warn(String message, Object arg) {
+        log(Level.WARNING, message, arg);
+    }
+
+    public void warn(String message, Object arg1, Object arg2) {
+        log(Level.WARNING, message, arg1, arg2);
+    }
+
+    public void warn(String message, Object arg1, Object arg2, Object arg3) {
+        log(Level.WARNING, message, arg1, arg2, arg3);
     }
-    
+
     public void warn(String message, Object... args) {
-        org.pmw.tinylog.Logger.info(message, args);
+        if (isEnabled(Level.WARNING)) {
+            LogEntryForwarder.forward(DEPTH, Level.WARNING, message, args);
+        }
     }
-    
+
     public void warn(String message, Throwable t) {
-        org.pmw.tinylog.Logger.info(message, t);
+        log(Level.WARNING, message, t);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public void info(String message, Object arg) {
+        log(Level.INFO, message, arg);
+    }
+
+    public void info(String message, Object arg1, Object arg2) {
+        log(Level.INFO, message, arg1, arg2);
     }
-    
+
+    public void info(String message, Object arg1, Object arg2, Object arg3) {
+        log(Level.INFO, message, arg1, arg2, arg3);
+    }
+
     public void info(String message, Object... args) {
-        org.pmw.tinylog.Logger.info(message, args);
+        if (isEnabled(Level.INFO)) {
+            LogEntryForwarder.forward(DEPTH, Level.INFO, message, args);
+        }
     }
-    
+
     public void info(String message, Throwable t) {
-        org.pmw.tinylog.Logger.info(message, t);
+        log(Level.INFO, message, t);
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public void debug(String message, Object arg) {
+        log(Level.DEBUG, message, arg);
     }
-    
+
+    public void debug(String message, Object arg1, Object arg2) {
+        log(Level.DEBUG, message, arg1, arg2);
+    }
+
+    public void debug(String message, Object arg1, Object arg2, Object arg3) {
+        log(Level.DEBUG, message, arg1, arg2, arg3);
+    }
+
     public void debug(String message, Object... args) {
-        org.pmw.tinylog.Logger.info(message, args);
+        if (isEnabled(Level.DEBUG)) {
+            LogEntryForwarder.forward(DEPTH, Level.DEBUG, message, args);
+        }
     }
-    
+
     public void debug(String message, Throwable t) {
-        org.pmw.tinylog.Logger.info(message, t);
+        log(Level.DEBUG, message, t);
+    }
+
+    public void trace(String message) {
+        log(Level.TRACE, message);
     }
-    
+
+    public void trace(String message, Object arg) {
+        log(Level.TRACE, message, arg);
+    }
+
+    public void trace(String message, Object arg1, Object arg2) {
+        log(Level.TRACE, message, arg1, arg2);
+    }
+
+    public void trace(String message, Object arg1, Object arg2, Object arg3) {
+        log(Level.TRACE, message, arg1, arg2, arg3);
+    }
+
     public void trace(String message, Object... args) {
-        org.pmw.tinylog.Logger.info(message, args);
+        if (isEnabled(Level.TRACE)) {
+            LogEntryForwarder.forward(DEPTH, Level.TRACE, message, args);
+        }
     }
-    
+
     public void trace(String message, Throwable t) {
-        org.pmw.tinylog.Logger.info(message, t);
-    }    
-    
+        log(Level.TRACE, message, t);
+    }
+
+    public boolean isTraceEnabled() {
+        return isEnabled(Level.TRACE);
+    }
+
     public boolean isDebugEnabled() {
-        return org.pmw.tinylog.Logger.getLevel() == Level.DEBUG ||
-                org.pmw.tinylog.Logger.getLevel() == Level.TRACE;
+        return isEnabled(Level.DEBUG);
+    }
+
+    public boolean isInfoEnabled() {
+        return isEnabled(Level.INFO);
+    }
+
+    /**
+     * Returns true if messages of the given level will be written with the current
+     * configuration. The level may be changed at runtime, e.g. from the LogPanel, so this is read
+     * from tinylog on every call rather than cached.
+     */
+    public static boolean isEnabled(Level level) {
+        return org.pmw.tinylog.Logger.getLevel().ordinal() <= level.ordinal();
+    }
+
+    /*
+     * The private helpers below are called from the public methods, so they forward with one
+     * more level of depth than the varargs methods above.
+     */
+    private static void log(Level level, String message) {
+        if (isEnabled(level)) {
+            LogEntryForwarder.forward(DEPTH + 1, level, message);
+        }
+    }
+
+    private static void log(Level level, String message, Object arg) {
+        if (isEnabled(level)) {
+            LogEntryForwarder.forward(DEPTH + 1, level, message, arg);
+        }
+    }
+
+    private static void log(Level level, String message, Object arg1, Object arg2) {
+        if (isEnabled(level)) {
+            LogEntryForwarder.forward(DEPTH + 1, level, message, arg1, arg2);
+        }
+    }
+
+    private static void log(Level level, String message, Object arg1, Object arg2,
+            Object arg3) {
+        if (isEnabled(level)) {
+            LogEntryForwarder.forward(DEPTH + 1, level, message, arg1, arg2, arg3);
+        }
+    }
+
+    private static void log(Level level, String message, Throwable t) {
+        if (isEnabled(level)) {
+            LogEntryForwarder.forward(DEPTH + 1, level, t, message);
+        }
     }
 }
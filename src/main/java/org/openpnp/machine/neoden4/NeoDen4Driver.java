@@ -1,5 +1,6 @@
 package org.openpnp.machine.neoden4;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
@@ -18,6 +19,7 @@ import org.openpnp.model.Location;
 import org.openpnp.model.Named;
 import org.openpnp.spi.Movable.MoveToOption;
 import org.openpnp.spi.Nozzle;
+import org.openpnp.util.LogUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Root;
@@ -112,7 +114,25 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
     @Attribute(required = false)
     protected double scaleFactorY = 1.04947526;
 
+    /**
+     * Interval between status polls while waiting for a move to finish.
+     */
+    @Attribute(required = false)
+    protected int statusPollMilliseconds = 5;
+
     private boolean connected;
+
+    /**
+     * The last move speed sent to the controller, so it is only sent again when it changes.
+     */
+    private double moveSpeed = Double.NaN;
+
+    /**
+     * Exponentially weighted sums for a least squares fit of the XY move time as a fixed overhead
+     * (handshake, acceleration, polling) plus a time per mm at full speed. Used to skip status
+     * polls while a move is certainly still running.
+     */
+    private double moveWeight, moveSumD, moveSumT, moveSumDD, moveSumDT;
     private Set<Nozzle> pickedNozzles = new HashSet<>();
 
 
@@ -210,6 +230,7 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         getCommunications().connect();
 
         connected = false;
+        moveSpeed = Double.NaN;
 
         // Disable the machine
         setEnabled(false);
@@ -240,7 +261,7 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         while (true) {
             try {
                 int d = getCommunications().read();
-                if (log) {
+                if (log && LogUtils.isTraceEnabled()) {
                     Logger.trace(String.format("< %02x", d & 0xff));
                 }
                 return d;
@@ -257,23 +278,20 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
     
     void write(int d, boolean log) throws Exception {
         d = d & 0xff;
-        if (log) {
+        if (log && LogUtils.isTraceEnabled()) {
             Logger.trace(String.format("> %02x", d));
         }
         getCommunications().write(d);
     }
     
     void writeWithChecksum(byte[] b) throws Exception {
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < b.length; i++) {
-            sb.append(String.format("%02x", b[i] & 0xff));
+        // Send the payload and its checksum in one write.
+        byte[] frame = Arrays.copyOf(b, b.length + 1);
+        frame[b.length] = (byte) (checksum(b) & 0xff);
+        if (LogUtils.isTraceEnabled()) {
+            Logger.trace("> " + toHex(frame));
         }
-        sb.append(String.format("%02x", checksum(b) & 0xff));
-        Logger.trace("> " + sb.toString());
-        for (int i = 0; i < b.length; i++) {
-            write(b[i], false);
-        }
-        getCommunications().write(checksum(b) & 0xff);
+        getCommunications().write(frame);
     }
     
     byte[] readWithChecksum(int length) throws Exception {
@@ -282,14 +300,41 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
             b[i] = (byte) (read(false) & 0xff);
         }
         int checksum = read(false);
-        // TODO STOPSHIP verify checksum
-        StringBuffer sb = new StringBuffer();
+        if (LogUtils.isTraceEnabled()) {
+            Logger.trace("< " + toHex(b) + String.format("%02x", checksum & 0xff));
+        }
+        if ((checksum & 0xff) != (checksum(b) & 0xff)) {
+            throw new Exception(String.format("Checksum error, expected %02x but received %02x.",
+                    checksum(b) & 0xff, checksum & 0xff));
+        }
+        return b;
+    }
+
+    /**
+     * Send a command frame. The controller acknowledges the command byte and the confirm byte,
+     * which is the command with the high bit set, with ack and confirmAck respectively. After
+     * the payload the command is polled, without the high bits, until the controller answers
+     * with pollResponse.
+     */
+    void sendFrame(int command, int ack, int confirmAck, byte[] payload, int pollResponse)
+            throws Exception {
+        write(command);
+        expect(ack);
+
+        write(command | 0x80);
+        expect(confirmAck);
+
+        writeWithChecksum(payload);
+
+        pollFor(command & 0x3f, pollResponse);
+    }
+
+    private static String toHex(byte[] b) {
+        StringBuilder sb = new StringBuilder();
         for (int i = 0; i < b.length; i++) {
             sb.append(String.format("%02x", b[i] & 0xff));
         }
-        sb.append(String.format("%02x", checksum & 0xff));
-        Logger.trace("< " + sb.toString());
-        return b;
+        return sb.toString();
     }
     
     int expect(int expected) throws Exception {
@@ -345,20 +390,12 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         moveZ(4, 0);
 
         /* Now, send home command */
-        write(0x47);
-        expect(0x0b);
-        
-        write(0xc7);
-        expect(0x03);
-
         byte[] b = new byte[8];
         putInt32(0x01, b, 0);
         putInt32(0x00, b, 4);
-        writeWithChecksum(b);
+        sendFrame(0x47, 0x0b, 0x03, b, 0x43);
         
-        pollFor(0x07, 0x43);
-        
-        if (! waitForStatusReady(100, 30000)) {
+        if (! waitForStatusReady(0, 30000)) {
             throw new Exception("home timeout while waiting for status==ready");
         }
 
@@ -385,23 +422,52 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         return new Location(units, x, y, 0, 0).add(hm.getHeadOffsets());
     }
     
-    private void moveXy(double x, double y) throws Exception {
-        write(0x48);
-        expect(0x05);
-      
-        write(0xc8);
-        expect(0x0d);
+    private void moveXy(double x, double y, double speed) throws Exception {
+        double distance = Math.hypot(x - this.x, y - this.y);
+        speed = Math.max(speed, 0.01);
+        long t = System.currentTimeMillis();
 
         byte[] b = new byte[8];
         putInt32((int) (x*scaleFactorX * 100), b, 0);
         putInt32((int) (y*scaleFactorY * 100), b, 4);
-        writeWithChecksum(b);
-      
-        pollFor(0x08, 0x4d);
+        sendFrame(0x48, 0x05, 0x0d, b, 0x4d);
 
-        if (! waitForStatusReady(100, 30000)) {
+        // Don't start polling before most of the expected move time has passed.
+        long expectedMilliS = (long) (0.8 * estimateMoveMilliS(distance / speed));
+        if (! waitForStatusReady(expectedMilliS, 30000)) {
             throw new Exception("moveXy timeout while waiting for status==ready");
         }
+
+        if (distance > 0) {
+            learnMoveMilliS(distance / speed, System.currentTimeMillis() - t);
+        }
+    }
+
+    private void learnMoveMilliS(double distance, double milliS) {
+        final double decay = 0.95;
+        moveWeight = decay * moveWeight + 1;
+        moveSumD = decay * moveSumD + distance;
+        moveSumT = decay * moveSumT + milliS;
+        moveSumDD = decay * moveSumDD + distance * distance;
+        moveSumDT = decay * moveSumDT + distance * milliS;
+    }
+
+    /**
+     * @param distance The move distance divided by the speed factor.
+     * @return The expected move time, or 0 as long as the moves seen so far do not tell the
+     *         overhead and the time per mm apart.
+     */
+    private double estimateMoveMilliS(double distance) {
+        double denominator = moveWeight * moveSumDD - moveSumD * moveSumD;
+        if (moveWeight < 2 || denominator <= 1e-6 * moveWeight * moveSumDD) {
+            return 0;
+        }
+        double milliSecondsPerMm = (moveWeight * moveSumDT - moveSumD * moveSumT) / denominator;
+        if (milliSecondsPerMm <= 0) {
+            return 0;
+        }
+        double overheadMilliS = Math.max(0, (moveSumT - milliSecondsPerMm * moveSumD) / moveWeight);
+        return overheadMilliS + milliSecondsPerMm * distance;
     }
 
     private Boolean isStatusReady() throws Exception {
@@ -421,17 +487,26 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         return false;
     }
 
-    private Boolean waitForStatusReady(int sleepMilliS, int maxMilliS) throws Exception {
-        int totalWaitMilliS = 0;
+    /**
+     * Poll the status every statusPollMilliseconds until the controller is ready.
+     * 
+     * @param initialMilliS Time to wait before the first poll, when the caller knows the
+     *        controller will be busy for at least that long. Capped to a quarter of maxMilliS.
+     * @param maxMilliS Time after which to give up.
+     * @return false if the controller did not become ready in time.
+     */
+    private Boolean waitForStatusReady(long initialMilliS, int maxMilliS) throws Exception {
+        long t = System.currentTimeMillis();
+        long sleepMilliS = Math.max(Math.min(initialMilliS, maxMilliS / 4), statusPollMilliseconds);
         do {
             Thread.sleep(sleepMilliS);
-            totalWaitMilliS += sleepMilliS;
+            sleepMilliS = statusPollMilliseconds;
 
-            if (totalWaitMilliS >= maxMilliS) {
-                return false;
+            if (isStatusReady()) {
+                return true;
             }
-        } while (! isStatusReady());
-        return true;
+        } while (System.currentTimeMillis() - t < maxMilliS);
+        return false;
     }
 
     private void moveZ(int nozzle, double z) throws Exception {
@@ -440,52 +515,32 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
       
         z = Math.abs(z) * 1000.;
         
-        write(0x42);
-        expect(0x0e);
-        
-        write(0xc2);
-        expect(0x06);
-
         byte[] b = new byte[8];
         putInt16((int) (z), b, 0);
         b[2] = 0x64;
         b[3] = (byte) nozzle;
-        writeWithChecksum(b);
-        
-        pollFor(0x02, 0x46);
+        sendFrame(0x42, 0x0e, 0x06, b, 0x46);
     }
     
     private void moveC(int nozzle, double c) throws Exception {
-        write(0x41);
-        expect(0x0d);
-        
-        write(0xc1);
-        expect(0x05);
-
         byte[] b = new byte[8];
         putInt16((int) (c * 10.), b, 0);
         b[2] = 0x32;
         b[3] = (byte) nozzle;
-        writeWithChecksum(b);
-        
-        pollFor(0x01, 0x45);
+        sendFrame(0x41, 0x0d, 0x05, b, 0x45);
     }
 
     private void setMoveSpeed(double speed) throws Exception {
-        write(0x46);
-        expect(0x0a);
-        
-        write(0xc6);
-        expect(0x02);
-
+        if (speed == moveSpeed) {
+            return;
+        }
         byte[] b = new byte[8];
         // Speed is percentage of max speed.  Speed is really 10-130
         putInt16((int) ((120. * speed)+10), b, 0);
         b[2] = 0x09;
         b[4] = (byte) 0xc8;
-        writeWithChecksum(b);
-        
-        pollFor(0x06, 0x42);
+        sendFrame(0x46, 0x0a, 0x02, b, 0x42);
+        moveSpeed = speed;
     }
 
     @Override
@@ -505,7 +560,7 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         y = Double.isNaN(y) ? this.y : y;
         if (x != this.x || y != this.y) {
             setMoveSpeed(speed);
-            moveXy(x, y);
+            moveXy(x, y, speed);
             
             this.x = x;
             this.y = y;
@@ -641,11 +696,6 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
 
     private void stopRail() throws Exception {
         byte[] b = new byte[8];
-        write(0x47);
-        expect(0x0b);
-        write(0xc7);
-        expect(0x03);
-
         b[0] = (byte)0x00;
         b[1] = (byte)0x02;
         b[2] = (byte)0x00;
@@ -654,18 +704,11 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         b[5] = (byte)0x00;
         b[6] = (byte)0x00;
         b[7] = (byte)0x00;
-
-        writeWithChecksum(b);
-        pollFor(0x07,  0x43);
+        sendFrame(0x47, 0x0b, 0x03, b, 0x43);
     }
 
     private void forwardRail() throws Exception {
         byte[] b = new byte[8];
-        write(0x49);
-        expect(0x04);
-        write(0xc9);
-        expect(0x0c);
-
         b[0] = (byte)0x00;
         b[1] = (byte)0x00;
         b[2] = (byte)0x00;
@@ -674,17 +717,11 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         b[5] = (byte)0x03;
         b[6] = (byte)0x0c;
         b[7] = (byte)0x00;
-        writeWithChecksum(b);
-        pollFor(0x09,  0x4c);
+        sendFrame(0x49, 0x04, 0x0c, b, 0x4c);
     }
 
     private void reverseRail()  throws Exception {
         byte[] b = new byte[8];
-        write(0x49);
-        expect(0x04);
-        write(0xc9);
-        expect(0x0c);
-
         b[0] = (byte)0x00;
         b[1] = (byte)0x00;
         b[2] = (byte)0x00;
@@ -693,8 +730,7 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         b[5] = (byte)0xfc;
         b[6] = (byte)0xf3;
         b[7] = (byte)0xff;
-        writeWithChecksum(b);
-        pollFor(0x09,  0x4c);
+        sendFrame(0x49, 0x04, 0x0c, b, 0x4c);
     }
 
     private void setRailSpeed(byte speed)  throws Exception {
@@ -707,11 +743,6 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         }
 
         byte[] b = new byte[8];
-        write(0x46);
-        expect(0x0a);
-        write(0xc6);
-        expect(0x02);
-
         b[0] = (byte)0x32;
         b[1] = (byte)0x09;
         b[2] = (byte)0x00;
@@ -720,23 +751,16 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         b[5] = (byte)0x00;
         b[6] = (byte)0x00;
         b[7] = (byte)0x00;
-        writeWithChecksum(b);
-        pollFor(0x06,  0x42);
+        sendFrame(0x46, 0x0a, 0x02, b, 0x42);
+        // The rail speed shares the command with the move speed, so send that again next time.
+        moveSpeed = Double.NaN;
     }
 
     private void setAirParameters(int nozzleNum, double value) throws Exception {
-        write(0x43);
-        expect(0x0f);
-
-        write(0xc3);
-        expect(0x07);
-
         byte[] b = new byte[8];
         b[0] = (byte) value;
         b[1] = (byte) nozzleNum;
-        writeWithChecksum(b);
-
-        pollFor(0x03,  0x47);
+        sendFrame(0x43, 0x0f, 0x07, b, 0x47);
     }
 
     @Override
@@ -763,31 +787,15 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
                 break;
             }
             case "Lights-Down": {
-                write(0x44);
-                expect(0x08);
-                
-                write(0xc4);
-                expect(0x00);
-                
                 byte[] b = new byte[8];
                 b[0] = (byte) value;
-                writeWithChecksum(b);
-                
-                pollFor(0x04,  0x40);
+                sendFrame(0x44, 0x08, 0x00, b, 0x40);
               break;
             }
             case "Lights-Up": {
-                write(0x47);
-                expect(0x0b);
-                
-                write(0xc7);
-                expect(0x03);
-                
                 byte[] b = new byte[8];
                 b[4] = (byte) value;
-                writeWithChecksum(b);
-                
-                pollFor(0x07,  0x43);
+                sendFrame(0x47, 0x0b, 0x03, b, 0x43);
                 break;
             }
             case "Rails": {
@@ -929,6 +937,14 @@ public class NeoDen4Driver extends AbstractReferenceDriver implements Named {
         return this.scaleFactorY;
     }
 
+    public int getStatusPollMilliseconds() {
+        return statusPollMilliseconds;
+    }
+
+    public void setStatusPollMilliseconds(int statusPollMilliseconds) {
+        this.statusPollMilliseconds = statusPollMilliseconds;
+    }
+
     public void setScaleFactorY(double scaleFactorY) {
         this.scaleFactorY = scaleFactorY;
     }
@@ -22,15 +22,26 @@ package org.openpnp.machine.neoden4;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.xml.soap.SOAPException;
 
 import com.mashape.unirest.http.Unirest;
@@ -73,9 +84,30 @@ public class Neoden4Camera extends ReferenceCamera implements Runnable {
     @Attribute(required = false)
     private int shiftY = 0;
 
+    /**
+     * When set the camera thread fetches frames back to back over a kept alive connection and
+     * capture waits for the first frame requested after the capture was asked for, instead of
+     * making its own request. If the bridge answers with a multipart/x-mixed-replace (MJPEG)
+     * stream the frames are read from that stream as they arrive. FPS then only limits how often
+     * frames are sent to the camera view.
+     */
+    @Attribute(required = false)
+    private boolean streaming = false;
+
     private Thread thread;
     private boolean dirty = false;
 
+    /**
+     * The newest frame fetched by the camera thread in streaming mode. Written only by that
+     * thread, read without locking by capture. frameLock is only used to wait for a new frame.
+     */
+    private final AtomicReference<Frame> latestFrame = new AtomicReference<>();
+    private final Object frameLock = new Object();
+    private long lastBroadcastNanos;
+
+    private final FrameReader streamReader = new FrameReader();
+    private final FrameReader captureReader = new FrameReader();
+
     //private String baseURL = "http://{hostname}:{hostport}/cameras/{cameraid}/{func}";
     private URL snapshotURI;
     private java.net.URI baseURI;
@@ -93,8 +125,16 @@ public class Neoden4Camera extends ReferenceCamera implements Runnable {
             if (snapshotURI == null) {
                 return null;
             }
-            BufferedImage img = ImageIO.read(snapshotURI);
-            return img;
+            if (streaming) {
+                BufferedImage img = awaitFrame(System.nanoTime());
+                if (img != null) {
+                    return img;
+                }
+                Logger.trace("No streamed frame from camera {}, requesting one.", cameraId);
+            }
+            synchronized (captureReader) {
+                return captureReader.read(openConnection());
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -118,9 +158,17 @@ public class Neoden4Camera extends ReferenceCamera implements Runnable {
 
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
-                if (image != null) { 
-                    broadcastCapture(captureForPreview());
+                if (streaming) {
+                    // Only returns on error or when interrupted.
+                    stream();
+                }
+                else {
+                    long t = System.nanoTime();
+                    BufferedImage image = internalCapture();
+                    if (image != null) { 
+                        pushFrame(image, t);
+                        broadcastCapture(transformImage(image));
+                    }
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -131,6 +179,218 @@ public class Neoden4Camera extends ReferenceCamera implements Runnable {
                 break;
             }
         }
+        clearFrames();
+    }
+
+    /**
+     * Fetch frames back to back until interrupted, either one per request over a kept alive
+     * connection or from a multipart stream if the bridge sends one.
+     */
+    private void stream() throws IOException {
+        while (!Thread.currentThread().isInterrupted()) {
+            long requestedNanos = System.nanoTime();
+            HttpURLConnection connection = openConnection();
+            String contentType = connection.getContentType();
+            if (contentType != null && contentType.startsWith("multipart/")) {
+                try (InputStream in = new BufferedInputStream(connection.getInputStream())) {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        int length = readPartHeaders(in);
+                        long arrivedNanos = System.nanoTime();
+                        // The frame may have been exposed up to a frame interval or more before
+                        // its headers arrived, so its arrival time is too late to go by. It was
+                        // exposed after the previous part arrived though, so a capture gets the
+                        // second part that arrives after it asked, never the first.
+                        publish(new Frame(streamReader.read(in, length), requestedNanos));
+                        requestedNanos = arrivedNanos;
+                    }
+                }
+                return;
+            }
+            publish(new Frame(streamReader.read(connection), requestedNanos));
+        }
+    }
+
+    private void publish(Frame frame) {
+        latestFrame.set(frame);
+        pushFrame(frame.image, frame.requestedNanos);
+        synchronized (frameLock) {
+            frameLock.notifyAll();
+        }
+        long now = System.nanoTime();
+        if (now - lastBroadcastNanos >= 1000000000L / Math.max(fps, 1)) {
+            lastBroadcastNanos = now;
+            broadcastCapture(transformImage(frame.image));
+        }
+    }
+
+    /**
+     * Wait for a streamed frame that was requested at or after the given time.
+     * 
+     * @return The frame, or null if the camera thread did not deliver one in time.
+     */
+    private BufferedImage awaitFrame(long nanos) throws InterruptedException {
+        Frame frame = latestFrame.get();
+        if (frame != null && frame.requestedNanos >= nanos) {
+            return frame.image;
+        }
+        long deadline = System.currentTimeMillis() + timeout + 1000;
+        synchronized (frameLock) {
+            while ((frame = latestFrame.get()) == null || frame.requestedNanos < nanos) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return null;
+                }
+                frameLock.wait(wait);
+            }
+        }
+        return frame.image;
+    }
+
+    private HttpURLConnection openConnection() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) snapshotURI.openConnection();
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(timeout + 1000);
+        connection.setReadTimeout(timeout + 1000);
+        return connection;
+    }
+
+    /**
+     * Read the headers of the next part of a multipart stream, skipping the boundary.
+     * 
+     * @return The Content-Length of the part.
+     */
+    private static int readPartHeaders(InputStream in) throws IOException {
+        int length = -1;
+        boolean headers = false;
+        String line;
+        while ((line = readLine(in)) != null) {
+            if (line.isEmpty()) {
+                if (!headers) {
+                    continue;
+                }
+                if (length < 0) {
+                    throw new IOException("Multipart frame without Content-Length.");
+                }
+                return length;
+            }
+            if (!headers && line.startsWith("--")) {
+                continue;
+            }
+            headers = true;
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                length = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        throw new EOFException();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = sb.length();
+                if (end > 0 && sb.charAt(end - 1) == '\r') {
+                    sb.setLength(end - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static class Frame {
+        final BufferedImage image;
+        final long requestedNanos;
+
+        Frame(BufferedImage image, long requestedNanos) {
+            this.image = image;
+            this.requestedNanos = requestedNanos;
+        }
+    }
+
+    /**
+     * Reads images from HTTP responses or multipart parts, reusing the byte buffer and the
+     * ImageReader from frame to frame and decoding from memory rather than through ImageIO's
+     * file cache. Decoded images are not reused since callers may hold on to them. Not thread
+     * safe, each thread uses its own.
+     */
+    private static class FrameReader {
+        private byte[] buffer = new byte[256 * 1024];
+        private ImageReader reader;
+
+        /**
+         * Read the image in the response. The body is always read to the end and closed so that
+         * the connection can be kept alive for the next request.
+         */
+        BufferedImage read(HttpURLConnection connection) throws IOException {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                InputStream error = connection.getErrorStream();
+                if (error != null) {
+                    try (InputStream in = error) {
+                        while (in.read(buffer) != -1) {
+                        }
+                    }
+                }
+                throw new IOException("Camera responded " + connection.getResponseCode() + " "
+                        + connection.getResponseMessage());
+            }
+            try (InputStream in = connection.getInputStream()) {
+                long contentLength = connection.getContentLengthLong();
+                if (contentLength >= 0) {
+                    return read(in, (int) contentLength);
+                }
+                int length = 0;
+                int n;
+                while ((n = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += n;
+                    if (length == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                }
+                return decode(length);
+            }
+        }
+
+        BufferedImage read(InputStream in, int length) throws IOException {
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            int offset = 0;
+            while (offset < length) {
+                int n = in.read(buffer, offset, length - offset);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                offset += n;
+            }
+            return decode(length);
+        }
+
+        private BufferedImage decode(int length) throws IOException {
+            try (ImageInputStream iis =
+                    new MemoryCacheImageInputStream(new ByteArrayInputStream(buffer, 0, length))) {
+                if (reader == null || !reader.getOriginatingProvider().canDecodeInput(iis)) {
+                    Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                    if (!readers.hasNext()) {
+                        throw new IOException("Unsupported image format from camera.");
+                    }
+                    if (reader != null) {
+                        reader.dispose();
+                    }
+                    reader = readers.next();
+                }
+                reader.setInput(iis, true, true);
+                try {
+                    return reader.read(0);
+                }
+                finally {
+                    reader.setInput(null);
+                }
+            }
+        }
     }
 
     private URL getImageReadAsyURL() throws MalformedURLException, URISyntaxException {
@@ -247,6 +507,7 @@ public class Neoden4Camera extends ReferenceCamera implements Runnable {
         try {
             setDirty(false);
             snapshotURI = null;
+            latestFrame.set(null);
             if ((hostIP != null) && (!hostIP.isEmpty())) {
                 try {
                     baseURI = new URIBuilder()
@@ -317,6 +578,14 @@ public class Neoden4Camera extends ReferenceCamera implements Runnable {
         this.fps = fps;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     public int getCameraId() {
         return cameraId;
     }
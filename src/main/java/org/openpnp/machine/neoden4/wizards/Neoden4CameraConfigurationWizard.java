@@ -22,6 +22,7 @@ package org.openpnp.machine.neoden4.wizards;
 import java.awt.Color;
 import java.util.List;
 
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -74,6 +75,8 @@ public class Neoden4CameraConfigurationWizard extends AbstractConfigurationWizar
         		FormSpecs.RELATED_GAP_ROWSPEC,
         		FormSpecs.DEFAULT_ROWSPEC,
         		FormSpecs.RELATED_GAP_ROWSPEC,
+        		FormSpecs.DEFAULT_ROWSPEC,
+        		FormSpecs.RELATED_GAP_ROWSPEC,
         		FormSpecs.DEFAULT_ROWSPEC,}));
 
         lblIP = new JLabel("Camera IP");
@@ -122,6 +125,13 @@ public class Neoden4CameraConfigurationWizard extends AbstractConfigurationWizar
 
         lbluseFor_fps = new JLabel("(refresh rate)");
         panelGeneral.add(lbluseFor_fps, "6, 8");
+
+        lblStreaming = new JLabel("Streaming?");
+        panelGeneral.add(lblStreaming, "2, 10, right, default");
+
+        streamingCheckBox = new JCheckBox("");
+        streamingCheckBox.setToolTipText("Fetch frames continuously so captures don't wait for a request.");
+        panelGeneral.add(streamingCheckBox, "4, 10");
                 
         panelImage = new JPanel();
         contentPanel.add(panelImage);
@@ -218,6 +228,7 @@ public class Neoden4CameraConfigurationWizard extends AbstractConfigurationWizar
         addWrappedBinding(camera, "gain", cameraGainTextField, "text", intConverter);
         addWrappedBinding(camera, "shiftX", shiftXTextField, "text", intConverter);
         addWrappedBinding(camera, "shiftY", shiftYTextField, "text", intConverter);
+        addWrappedBinding(camera, "streaming", streamingCheckBox, "selected");
     
         // Should always be last so that it doesn't trigger multiple camera reloads.
         addWrappedBinding(camera, "hostIP", ipTextField, "text");
@@ -245,6 +256,8 @@ public class Neoden4CameraConfigurationWizard extends AbstractConfigurationWizar
     private JTextField fpsTextField;
     private JLabel lbluseFor_ip;
     private JLabel lbluseFor_fps;
+    private JLabel lblStreaming;
+    private JCheckBox streamingCheckBox;
     private JPanel panelImage;
     private JLabel lblImageWidth;
     private JLabel lblImageHeight;
@@ -48,6 +48,7 @@ public class Neoden4DriverConfigurationWizard extends AbstractConfigurationWizar
     private JTextField homeCoordinateYTextField;
     private JTextField scaleFactorXTextField;
     private JTextField scaleFactorYTextField;
+    private JTextField statusPollTextField;
 
     public Neoden4DriverConfigurationWizard(NeoDen4Driver driver) {
         this.driver = driver;
@@ -72,6 +73,8 @@ public class Neoden4DriverConfigurationWizard extends AbstractConfigurationWizar
                     FormSpecs.DEFAULT_ROWSPEC,
                     FormSpecs.RELATED_GAP_ROWSPEC, 
                     FormSpecs.DEFAULT_ROWSPEC,
+                    FormSpecs.RELATED_GAP_ROWSPEC, 
+                    FormSpecs.DEFAULT_ROWSPEC,
                     FormSpecs.RELATED_GAP_ROWSPEC, }));
 
         JLabel lblHomeCoordinateX = new JLabel("Home Coordinate X");
@@ -102,6 +105,13 @@ public class Neoden4DriverConfigurationWizard extends AbstractConfigurationWizar
         scaleFactorYTextField.setColumns(10);
         panelMachineDetails.add(scaleFactorYTextField, "4, 8, fill, default");
 
+        JLabel lblStatusPoll = new JLabel("Status Poll Interval (ms)");
+        panelMachineDetails.add(lblStatusPoll, "2, 10, right, default");
+
+        statusPollTextField = new JTextField();
+        statusPollTextField.setColumns(10);
+        panelMachineDetails.add(statusPollTextField, "4, 10, fill, default");
+
     }
 
     @Override
@@ -111,5 +121,6 @@ public class Neoden4DriverConfigurationWizard extends AbstractConfigurationWizar
         addWrappedBinding(driver, "homeCoordinateY", homeCoordinateYTextField, "text", doubleConverter);
         addWrappedBinding(driver, "scaleFactorX", scaleFactorXTextField, "text", doubleConverter);
         addWrappedBinding(driver, "scaleFactorY", scaleFactorYTextField, "text", doubleConverter);
+        addWrappedBinding(driver, "statusPollMilliseconds", statusPollTextField, "text", new IntegerConverter());
     }
 }
\ No newline at end of file
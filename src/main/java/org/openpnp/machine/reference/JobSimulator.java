@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ *
+ * This file is part of OpenPnP.
+ *
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+package org.openpnp.machine.reference;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.openpnp.machine.reference.driver.NullDriver;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.PnpJobProcessor;
+
+/**
+ * Runs a job on a simulated machine in virtual time and reports the predicted time of every
+ * placement. The machine is loaded from a configuration directory, just like the GUI does, but
+ * driven by a NullDriver in virtual time mode, so that moves, dwells, camera settling and vacuum
+ * checks are accounted for without waiting. This makes it possible to compare job planners,
+ * feeder layouts and machine settings offline.
+ *
+ * Vision still runs on the configured cameras, so the configuration should use simulated cameras
+ * (as the default configuration does) or have vision disabled. Auto settling cameras still settle
+ * in real time.
+ *
+ * Usage: JobSimulator configurationDirectory jobFile [feedRateMmPerMinute
+ * [accelerationMmPerSecond2]]
+ */
+public class JobSimulator {
+    public static class PlacementTime {
+        public final BoardLocation boardLocation;
+        public final Placement placement;
+        /**
+         * The virtual time at which the placement was finished.
+         */
+        public final double timeMilliseconds;
+        /**
+         * The virtual time since the previous placement was finished, or since the job started
+         * for the first one.
+         */
+        public final double cycleTimeMilliseconds;
+
+        PlacementTime(BoardLocation boardLocation, Placement placement, double timeMilliseconds,
+                double cycleTimeMilliseconds) {
+            this.boardLocation = boardLocation;
+            this.placement = placement;
+            this.timeMilliseconds = timeMilliseconds;
+            this.cycleTimeMilliseconds = cycleTimeMilliseconds;
+        }
+    }
+
+    private final ReferenceMachine machine;
+    private final NullDriver driver;
+    private final List<PlacementTime> placementTimes = new ArrayList<>();
+    private double startTimeMilliseconds;
+    private double endTimeMilliseconds;
+
+    /**
+     * Replaces the machine's driver with a NullDriver in virtual time mode. If the machine already
+     * uses a NullDriver, it is kept along with its feed rate and acceleration.
+     *
+     * @param machine
+     * @throws Exception
+     */
+    public JobSimulator(ReferenceMachine machine) throws Exception {
+        this.machine = machine;
+        if (machine.getDriver() instanceof NullDriver) {
+            driver = (NullDriver) machine.getDriver();
+        }
+        else {
+            driver = new NullDriver();
+            machine.setDriver(driver);
+        }
+        driver.setVirtualTime(true);
+    }
+
+    public NullDriver getDriver() {
+        return driver;
+    }
+
+    /**
+     * Runs the job to completion and records the virtual time of every placement.
+     *
+     * @param job
+     * @throws Exception
+     */
+    public void run(Job job) throws Exception {
+        placementTimes.clear();
+        for (BoardLocation boardLocation : job.getBoardLocations()) {
+            boardLocation.addPropertyChangeListener("placed", e -> {
+                String placementId = (String) e.getNewValue();
+                if (placementId != null && boardLocation.getPlaced(placementId)) {
+                    recordPlacement(boardLocation, placementId);
+                }
+            });
+        }
+
+        machine.setEnabled(true);
+        machine.home();
+        PnpJobProcessor jobProcessor = machine.getPnpJobProcessor();
+        startTimeMilliseconds = driver.getVirtualTimeMilliseconds();
+        jobProcessor.initialize(job);
+        while (jobProcessor.next());
+        endTimeMilliseconds = driver.getVirtualTimeMilliseconds();
+        machine.setEnabled(false);
+    }
+
+    private void recordPlacement(BoardLocation boardLocation, String placementId) {
+        double time = driver.getVirtualTimeMilliseconds();
+        double previousTime = placementTimes.isEmpty() ? startTimeMilliseconds
+                : placementTimes.get(placementTimes.size() - 1).timeMilliseconds;
+        Placement placement = boardLocation.getBoard().getPlacementIndex().getPlacement(placementId);
+        placementTimes.add(new PlacementTime(boardLocation, placement, time, time - previousTime));
+    }
+
+    public List<PlacementTime> getPlacementTimes() {
+        return placementTimes;
+    }
+
+    /**
+     * @return The virtual time the whole job took, including the fiducial checks and the time
+     *         after the last placement.
+     */
+    public double getJobTimeMilliseconds() {
+        return endTimeMilliseconds - startTimeMilliseconds;
+    }
+
+    /**
+     * Prints the placement times, tab separated, followed by a summary.
+     *
+     * @param out
+     */
+    public void print(PrintStream out) {
+        out.println("Board\tPlacement\tPart\tTime [ms]\tCycle Time [ms]");
+        for (PlacementTime placementTime : placementTimes) {
+            Placement placement = placementTime.placement;
+            out.println(String.format(Locale.US, "%s\t%s\t%s\t%.1f\t%.1f",
+                    placementTime.boardLocation.getBoard().getName(),
+                    placement == null ? "" : placement.getId(),
+                    placement == null || placement.getPart() == null ? ""
+                            : placement.getPart().getId(),
+                    placementTime.timeMilliseconds - startTimeMilliseconds,
+                    placementTime.cycleTimeMilliseconds));
+        }
+        int count = placementTimes.size();
+        out.println(String.format(Locale.US, "%d placements in %.1f s, %.1f ms per placement.",
+                count, getJobTimeMilliseconds() / 1000.0,
+                count == 0 ? 0.0 : getJobTimeMilliseconds() / count));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: JobSimulator configurationDirectory jobFile [feedRateMmPerMinute [accelerationMmPerSecond2]]");
+            System.exit(1);
+        }
+        Configuration.initialize(new File(args[0]));
+        Configuration.get().load();
+        Job job = Configuration.get().loadJob(new File(args[1]));
+
+        JobSimulator simulator =
+                new JobSimulator((ReferenceMachine) Configuration.get().getMachine());
+        if (args.length > 2) {
+            simulator.getDriver().setFeedRateMmPerMinute(Double.parseDouble(args[2]));
+        }
+        if (args.length > 3) {
+            simulator.getDriver().setAccelerationMmPerSecond2(Double.parseDouble(args[3]));
+        }
+        simulator.run(job);
+        simulator.print(System.out);
+        // Cameras keep capture threads running.
+        System.exit(0);
+    }
+}
@@ -20,6 +20,7 @@
 package org.openpnp.machine.reference;
 
 import java.awt.event.ActionEvent;
+import java.util.function.Predicate;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -121,6 +122,22 @@ public class ReferenceActuator extends AbstractActuator implements ReferenceHead
         return value;
     }
 
+    /**
+     * Reads the actuator until the condition holds for a value read or the given time has
+     * elapsed. See ReferenceDriver.actuatorReadUntil().
+     * 
+     * @param milliseconds
+     * @param condition
+     * @return The last value read.
+     * @throws Exception
+     */
+    public String readUntil(long milliseconds, Predicate<String> condition) throws Exception {
+        String value = getDriver().actuatorReadUntil(this, milliseconds, condition);
+        Logger.debug("{}.readUntil({}): {}", getName(), milliseconds, value);
+        getMachine().fireMachineHeadActivity(head);
+        return value;
+    }
+
     @Override
     public void moveTo(Location location, double speed, MoveToOption... options) throws Exception {
         Logger.debug("{}.moveTo({}, {})", getName(), location, speed);
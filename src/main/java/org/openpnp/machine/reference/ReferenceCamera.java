@@ -24,7 +24,9 @@ import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.AbstractAction;
@@ -38,6 +40,7 @@ import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.openpnp.gui.MainFrame;
@@ -45,6 +48,7 @@ import org.openpnp.gui.support.Icons;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.wizards.CameraConfigurationWizard;
 import org.openpnp.gui.wizards.CameraVisionConfigurationWizard;
+import org.openpnp.machine.reference.camera.FrameRing;
 import org.openpnp.machine.reference.wizards.ReferenceCameraCalibrationConfigurationWizard;
 import org.openpnp.machine.reference.wizards.ReferenceCameraPositionConfigurationWizard;
 import org.openpnp.machine.reference.wizards.ReferenceCameraTransformsConfigurationWizard;
@@ -72,6 +76,12 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     }
 
     private static final int CAPTURE_RETRY_COUNT = 10;
+
+    /**
+     * How long captureAfter() waits at least for a frame from the capture thread before it
+     * captures one itself.
+     */
+    private static final long FRAME_TIMEOUT_MS = 1000;
     
     private static BufferedImage CAPTURE_ERROR_IMAGE = null;
     
@@ -121,7 +131,23 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     private Mat undistortionMap1;
     private Mat undistortionMap2;
 
+    /**
+     * The composed transform as a remap map pair, mapping each output pixel to its source pixel
+     * in the raw image, and the parameters it was built from.
+     */
+    private Mat transformMap1;
+    private Mat transformMap2;
+    private List<Object> transformMapKey;
+    private Mat transformedMat;
+    private final Object transformLock = new Object();
+
     private LensCalibration lensCalibration;
+
+    /**
+     * Recent raw frames pushed by the camera's capture thread, see pushFrame(). Stays empty for
+     * cameras that don't push frames.
+     */
+    private final FrameRing frames = new FrameRing(4);
     
     public ReferenceCamera() {
     }
@@ -132,24 +158,92 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
      */
     @Override
     public BufferedImage capture() {
+        fireCaptureEvent("Camera.BeforeCapture");
+        BufferedImage image = captureForPreview();
+        fireCaptureEvent("Camera.AfterCapture");
+        return image;
+    }
+
+    /**
+     * Like capture(), but uses the first frame from the capture thread that was taken at or after
+     * the given System.nanoTime(), so no frame taken before the machine settled is used and none
+     * is waited for longer than necessary. Captures directly if the camera has no capture thread
+     * pushing frames or it does not deliver in time.
+     */
+    @Override
+    public BufferedImage captureAfter(long nanos) {
+        if (frames.isEmpty()) {
+            return capture();
+        }
+        fireCaptureEvent("Camera.BeforeCapture");
+        // Switching a light from the script is reported as head activity, frames taken before
+        // that don't count either.
+        nanos = Math.max(nanos, getLastMotionNanos());
+        BufferedImage image = null;
         try {
-            Map<String, Object> globals = new HashMap<>();
-            globals.put("camera", this);
-            Configuration.get().getScripting().on("Camera.BeforeCapture", globals);
+            requestFrame();
+            long timeoutMs = Math.max(FRAME_TIMEOUT_MS, (long) (3 * frames.getFrameIntervalMs()));
+            FrameRing.Frame frame = frames.awaitAfter(nanos, timeoutMs);
+            if (frame != null) {
+                image = frame.image;
+                Logger.trace("Camera {} frame {} ms after requested time, average wait {} ms.",
+                        this, (frame.nanos - nanos) / 1000000, Math.round(frames.getWaitMs()));
+            }
+            else {
+                Logger.debug("Camera {} delivered no frame in {} ms, capturing directly.", this,
+                        timeoutMs);
+            }
         }
-        catch (Exception e) {
-            Logger.warn(e);
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        BufferedImage image = captureForPreview();
+        image = transformImage(image != null ? image : captureRaw());
+        fireCaptureEvent("Camera.AfterCapture");
+        return image;
+    }
+
+    private void fireCaptureEvent(String event) {
         try {
             Map<String, Object> globals = new HashMap<>();
             globals.put("camera", this);
-            Configuration.get().getScripting().on("Camera.AfterCapture", globals);
+            Configuration.get().getScripting().on(event, globals);
         }
         catch (Exception e) {
             Logger.warn(e);
         }
-        return image;
+    }
+
+    /**
+     * Called by the camera's capture thread for each raw frame it gets from the device, before
+     * any transformation.
+     * 
+     * @param image
+     * @param nanos System.nanoTime() when the frame was read from the device. Devices that
+     *        buffer frames may have taken it a little earlier, which the settle time has to cover.
+     */
+    protected void pushFrame(BufferedImage image, long nanos) {
+        frames.push(image, nanos);
+    }
+
+    /**
+     * Called when captureAfter() is waiting for a frame. Cameras whose capture thread sleeps
+     * between frames should wake it up.
+     */
+    protected void requestFrame() {
+    }
+
+    /**
+     * Call when the capture thread stops, so stale frames are not used.
+     */
+    protected void clearFrames() {
+        frames.clear();
+    }
+
+    /**
+     * @return Frame statistics for the capture thread, see FrameRing.
+     */
+    public FrameRing getFrames() {
+        return frames;
     }
     
     /**
@@ -349,8 +443,223 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
         this.deinterlace = deinterlace;
     }
 
-    // TODO Optimization: We could skip the convert to and from Mat if no transforms are needed.
+    /**
+     * Returns true if transformImage() would return the image unchanged.
+     */
+    protected boolean isIdentityTransform() {
+        return cropWidth == 0 && cropHeight == 0 && !calibrating && !calibration.isEnabled()
+                && (scaleWidth == 0 || scaleHeight == 0) && rotation == 0D && offsetX == 0
+                && offsetY == 0 && !deinterlace && !flipX && !flipY;
+    }
+
+    /**
+     * Applies crop, undistortion, scale, rotation, offset, deinterlacing and flipping to the
+     * image. All of these are composed into a single remap, which is only rebuilt when the image
+     * size or one of the properties changes. Identity cameras return the image as is.
+     */
     protected BufferedImage transformImage(BufferedImage image) {
+        if (isIdentityTransform()) {
+            if (image != null) {
+                width = image.getWidth();
+                height = image.getHeight();
+            }
+            return image;
+        }
+        if (calibrating) {
+            // The lens calibration looks at every frame, so use the step by step transform.
+            return transformImageSequentially(image);
+        }
+
+        Mat mat = OpenCvUtils.toMat(image);
+        synchronized (transformLock) {
+            // Changes to the calibration itself drop the maps in clearCalibrationCache().
+            List<Object> key = Arrays.asList(mat.cols(), mat.rows(), cropWidth, cropHeight,
+                    calibration.isEnabled(), scaleWidth, scaleHeight, rotation, offsetX, offsetY,
+                    deinterlace, flipX, flipY);
+            if (transformMap1 == null || !key.equals(transformMapKey)) {
+                buildTransformMaps(mat.size());
+                transformMapKey = key;
+            }
+            if (transformedMat == null) {
+                transformedMat = new Mat();
+            }
+            Imgproc.remap(mat, transformedMat, transformMap1, transformMap2, Imgproc.INTER_LINEAR);
+            mat.release();
+            image = OpenCvUtils.toBufferedImage(transformedMat);
+        }
+
+        if (image != null) { 
+            // save the new image dimensions
+            width = image.getWidth();
+            height = image.getHeight();
+        }
+        return image;
+    }
+
+    /**
+     * Compose the transforms into a map pair for Imgproc.remap(). Working backwards from the
+     * output, each output pixel is mapped through the inverse of every step to its position in
+     * the raw image, so the image is only interpolated once.
+     */
+    private void buildTransformMaps(Size rawSize) {
+        releaseTransformMaps();
+
+        // crop
+        int rawWidth = (int) rawSize.width;
+        int rawHeight = (int) rawSize.height;
+        int croppedWidth = (cropWidth != 0) ? cropWidth : rawWidth;
+        int croppedHeight = (cropHeight != 0) ? cropHeight : rawHeight;
+        double cropX = 0;
+        double cropY = 0;
+        if (cropWidth != 0 || cropHeight != 0) {
+            cropX = (int) ((rawSize.width / 2) - (croppedWidth / 2));
+            cropY = (int) ((rawSize.height / 2) - (croppedHeight / 2));
+        }
+
+        // scale
+        int scaledWidth = croppedWidth;
+        int scaledHeight = croppedHeight;
+        if (scaleWidth != 0 && scaleHeight != 0) {
+            scaledWidth = scaleWidth;
+            scaledHeight = scaleHeight;
+        }
+
+        // rotate, see rotate()
+        int rotatedWidth = scaledWidth;
+        int rotatedHeight = scaledHeight;
+        double[] inverseRotation = null;
+        if (rotation != 0D) {
+            Point center = new Point(scaledWidth / 2D, scaledHeight / 2D);
+            Mat mapMatrix = Imgproc.getRotationMatrix2D(center, rotation, 1.0);
+            Rect bbox = new RotatedRect(center, new Size(scaledWidth, scaledHeight), rotation)
+                    .boundingRect();
+            mapMatrix.put(0, 2, mapMatrix.get(0, 2)[0] + bbox.width / 2D - center.x);
+            mapMatrix.put(1, 2, mapMatrix.get(1, 2)[0] + bbox.height / 2D - center.y);
+            Mat inverse = new Mat();
+            Imgproc.invertAffineTransform(mapMatrix, inverse);
+            inverseRotation = new double[6];
+            inverse.get(0, 0, inverseRotation);
+            inverse.release();
+            mapMatrix.release();
+            rotatedWidth = bbox.width;
+            rotatedHeight = bbox.height;
+        }
+
+        int outputWidth = rotatedWidth;
+        int outputHeight = rotatedHeight;
+        int deinterlaceHalf = outputHeight / 2;
+
+        float[] mapX = new float[outputWidth * outputHeight];
+        float[] mapY = new float[outputWidth * outputHeight];
+        for (int v = 0; v < outputHeight; v++) {
+            for (int u = 0; u < outputWidth; u++) {
+                double x = u;
+                double y = v;
+                // flip
+                if (flipX) {
+                    y = outputHeight - 1 - y;
+                }
+                if (flipY) {
+                    x = outputWidth - 1 - x;
+                }
+                // deinterlace
+                if (deinterlace) {
+                    int row = (int) y;
+                    if (row >= deinterlaceHalf * 2) {
+                        y = -1;
+                    }
+                    else if (row % 2 == 0) {
+                        y = row / 2;
+                    }
+                    else {
+                        y = row / 2 + deinterlaceHalf;
+                    }
+                }
+                // offset
+                x -= offsetX;
+                y -= offsetY;
+                // rotate
+                if (inverseRotation != null) {
+                    double rx = inverseRotation[0] * x + inverseRotation[1] * y + inverseRotation[2];
+                    double ry = inverseRotation[3] * x + inverseRotation[4] * y + inverseRotation[5];
+                    x = rx;
+                    y = ry;
+                }
+                // scale, using the same pixel center convention as Imgproc.resize()
+                if (scaledWidth != croppedWidth || scaledHeight != croppedHeight) {
+                    x = (x + 0.5) * croppedWidth / scaledWidth - 0.5;
+                    y = (y + 0.5) * croppedHeight / scaledHeight - 0.5;
+                }
+                int i = v * outputWidth + u;
+                mapX[i] = (float) x;
+                mapY[i] = (float) y;
+            }
+        }
+        Mat map1 = new Mat(outputHeight, outputWidth, CvType.CV_32FC1);
+        Mat map2 = new Mat(outputHeight, outputWidth, CvType.CV_32FC1);
+        map1.put(0, 0, mapX);
+        map2.put(0, 0, mapY);
+
+        // undistort, by looking up the undistortion maps at the composed coordinates
+        if (calibration.isEnabled()) {
+            ensureUndistortionMaps(new Size(croppedWidth, croppedHeight));
+            Mat undistortedMap1 = new Mat();
+            Mat undistortedMap2 = new Mat();
+            Imgproc.remap(undistortionMap1, undistortedMap1, map1, map2, Imgproc.INTER_LINEAR,
+                    Core.BORDER_CONSTANT, new Scalar(-1));
+            Imgproc.remap(undistortionMap2, undistortedMap2, map1, map2, Imgproc.INTER_LINEAR,
+                    Core.BORDER_CONSTANT, new Scalar(-1));
+            map1.release();
+            map2.release();
+            map1 = undistortedMap1;
+            map2 = undistortedMap2;
+        }
+
+        // crop. Coordinates outside the cropped image, including the -1 markers of the steps
+        // above, must stay outside the raw image too. Otherwise they would pick up the raw pixels
+        // around the crop window where the step by step transform shows black.
+        if (cropX != 0 || cropY != 0) {
+            map1.get(0, 0, mapX);
+            map2.get(0, 0, mapY);
+            for (int i = 0; i < mapX.length; i++) {
+                if (mapX[i] < 0 || mapX[i] > croppedWidth - 1 || mapY[i] < 0
+                        || mapY[i] > croppedHeight - 1) {
+                    mapX[i] = -1;
+                    mapY[i] = -1;
+                }
+                else {
+                    mapX[i] += cropX;
+                    mapY[i] += cropY;
+                }
+            }
+            map1.put(0, 0, mapX);
+            map2.put(0, 0, mapY);
+        }
+
+        // Fixed point maps are considerably faster to apply.
+        transformMap1 = new Mat();
+        transformMap2 = new Mat();
+        Imgproc.convertMaps(map1, map2, transformMap1, transformMap2, CvType.CV_16SC2);
+        map1.release();
+        map2.release();
+    }
+
+    private void releaseTransformMaps() {
+        if (transformMap1 != null) {
+            transformMap1.release();
+            transformMap1 = null;
+        }
+        if (transformMap2 != null) {
+            transformMap2.release();
+            transformMap2 = null;
+        }
+        transformMapKey = null;
+    }
+
+    /**
+     * Applies the transforms one after another, as needed while calibrating the lens.
+     */
+    protected BufferedImage transformImageSequentially(BufferedImage image) {
         Mat mat = OpenCvUtils.toMat(image);
 
         mat = crop(mat);
@@ -484,22 +793,26 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
             return mat;
         }
 
+        ensureUndistortionMaps(mat.size());
+
+        Mat dst = mat.clone();
+        Imgproc.remap(mat, dst, undistortionMap1, undistortionMap2, Imgproc.INTER_LINEAR);
+        mat.release();
+
+        return dst;
+    }
+
+    private void ensureUndistortionMaps(Size size) {
         if (undistortionMap1 == null || undistortionMap2 == null) {
             undistortionMap1 = new Mat();
             undistortionMap2 = new Mat();
             Mat rectification = Mat.eye(3, 3, CvType.CV_32F);
             Calib3d.initUndistortRectifyMap(calibration.getCameraMatrixMat(),
                     calibration.getDistortionCoefficientsMat(), rectification,
-                    calibration.getCameraMatrixMat(), mat.size(), CvType.CV_32FC1, undistortionMap1,
+                    calibration.getCameraMatrixMat(), size, CvType.CV_32FC1, undistortionMap1,
                     undistortionMap2);
             rectification.release();
         }
-
-        Mat dst = mat.clone();
-        Imgproc.remap(mat, dst, undistortionMap1, undistortionMap2, Imgproc.INTER_LINEAR);
-        mat.release();
-
-        return dst;
     }
 
     private Mat calibrate(Mat mat) {
@@ -554,6 +867,9 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
             undistortionMap2.release();
             undistortionMap2 = null;
         }
+        synchronized (transformLock) {
+            releaseTransformMaps();
+        }
     }
 
     public void startCalibration(CalibrationCallback callback) {
@@ -640,6 +956,17 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     ReferenceDriver getDriver() {
         return getMachine().getDriver();
     }
+
+    @Override
+    protected void settleDwell(long milliseconds) throws Exception {
+        getDriver().dwell(milliseconds);
+    }
+
+    @Override
+    protected boolean isVirtualTime() {
+        ReferenceDriver driver = getDriver();
+        return driver != null && driver.isVirtualTime();
+    }
     
     ReferenceMachine getMachine() {
         return (ReferenceMachine) Configuration.get().getMachine();
@@ -20,6 +20,7 @@
 package org.openpnp.machine.reference;
 
 import java.io.Closeable;
+import java.util.function.Predicate;
 
 import org.openpnp.model.Location;
 import org.openpnp.spi.Movable.MoveToOption;
@@ -122,6 +123,54 @@ public interface ReferenceDriver extends WizardConfigurable, PropertySheetHolder
         return null;
     }
 
+    /**
+     * Reads String values from the given Actuator until the condition holds for one of them or
+     * the given time has elapsed, and returns the last value read. At least one value is always
+     * read, even if no time is given.
+     * 
+     * The default implementation calls actuatorRead(ReferenceActuator) in a loop. Drivers that
+     * can receive values without a blocking round trip for each should override it.
+     * 
+     * @param actuator
+     * @param milliseconds
+     * @param condition Called with every value read, returns true when done.
+     * @return
+     * @throws Exception
+     */
+    public default String actuatorReadUntil(ReferenceActuator actuator, long milliseconds,
+            Predicate<String> condition) throws Exception {
+        long timeout = System.currentTimeMillis() + milliseconds;
+        String value;
+        do {
+            value = actuatorRead(actuator);
+        }
+        while (!condition.test(value) && System.currentTimeMillis() < timeout);
+        return value;
+    }
+
+    /**
+     * Waits for the given time as part of a machine operation, e.g. to let the vacuum build up
+     * during a pick. Drivers that simulate the machine may account for the time without actually
+     * waiting.
+     * 
+     * @param milliseconds
+     * @throws Exception
+     */
+    public default void dwell(long milliseconds) throws Exception {
+        if (milliseconds > 0) {
+            Thread.sleep(milliseconds);
+        }
+    }
+
+    /**
+     * Returns true if the driver simulates the machine on a virtual clock, where dwell() and
+     * moves only account for the time. Anything timed against the real clock must then be
+     * charged to the driver in full.
+     */
+    public default boolean isVirtualTime() {
+        return false;
+    }
+
     /**
      * Attempts to enable the Driver, turning on all outputs.
      * 
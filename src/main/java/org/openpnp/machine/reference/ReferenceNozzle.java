@@ -3,6 +3,8 @@ package org.openpnp.machine.reference;
 import java.awt.event.ActionEvent;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -787,6 +789,40 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         return Double.parseDouble(getVacuumActuator().read());
     }
 
+    /**
+     * Reads the vacuum level until the condition holds or the milliseconds have elapsed,
+     * recording every reading in the graph. For a ReferenceActuator this is left to the driver,
+     * which may be able to take readings without a blocking round trip for each.
+     * 
+     * @param vacuumGraph
+     * @param milliseconds
+     * @param condition
+     * @return The last vacuum level read.
+     * @throws Exception
+     */
+    protected double monitorVacuumLevel(SimpleGraph vacuumGraph, long milliseconds,
+            DoublePredicate condition) throws Exception {
+        SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
+        Predicate<String> recordingCondition = (value) -> {
+            double vacuumLevel = Double.parseDouble(value);
+            vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
+            return condition.test(vacuumLevel);
+        };
+        Actuator actuator = getVacuumActuator();
+        String value;
+        if (actuator instanceof ReferenceActuator) {
+            value = ((ReferenceActuator) actuator).readUntil(milliseconds, recordingCondition);
+        }
+        else {
+            long timeout = System.currentTimeMillis() + milliseconds;
+            do {
+                value = actuator.read();
+            }
+            while (!recordingCondition.test(value) && System.currentTimeMillis() < timeout);
+        }
+        return Double.parseDouble(value);
+    }
+
     protected boolean isPartOnGraphEnabled() {
         ReferenceNozzleTip nt = getNozzleTip();
         return nt.getMethodPartOn() != VacuumMeasurementMethod.None
@@ -834,19 +870,10 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
             // valve is sure on
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 1);
-            long timeout = System.currentTimeMillis() + milliseconds;
-            SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-            double vacuumLevel;
-            do {
-                vacuumLevel = readVacuumLevel();
-                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-                if (nt.isEstablishPartOnLevel() 
-                        && vacuumLevel >= nt.getVacuumLevelPartOnLow() && vacuumLevel <= nt.getVacuumLevelPartOnHigh()) {
-                    // within range, we're done
-                    break;
-                }
-            }
-            while (System.currentTimeMillis() < timeout);
+            // read until the vacuum level is within range, or time is up
+            double vacuumLevel = monitorVacuumLevel(vacuumGraph, milliseconds,
+                    (level) -> nt.isEstablishPartOnLevel()
+                            && level >= nt.getVacuumLevelPartOnLow() && level <= nt.getVacuumLevelPartOnHigh());
             // valve is still on
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 1);
@@ -857,7 +884,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         }
         else {
             // simple method, just dwell
-            Thread.sleep(milliseconds);
+            getDriver().dwell(milliseconds);
         }
     }
 
@@ -868,19 +895,10 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
             // valve is sure off
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 0);
-            long timeout = System.currentTimeMillis() + milliseconds;
-            SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-            double vacuumLevel;
-            do {
-                vacuumLevel = readVacuumLevel();
-                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-                if (nt.isEstablishPartOffLevel() 
-                        && vacuumLevel >= nt.getVacuumLevelPartOffLow() && vacuumLevel <= nt.getVacuumLevelPartOffHigh()) {
-                    // within range, we're done
-                    break;
-                }
-            }
-            while (System.currentTimeMillis() < timeout);
+            // read until the vacuum level is within range, or time is up
+            double vacuumLevel = monitorVacuumLevel(vacuumGraph, milliseconds,
+                    (level) -> nt.isEstablishPartOffLevel()
+                            && level >= nt.getVacuumLevelPartOffLow() && level <= nt.getVacuumLevelPartOffHigh());
             // valve is still off
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 0);
@@ -891,7 +909,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         }
         else {
             // simple method, just dwell
-            Thread.sleep(milliseconds);
+            getDriver().dwell(milliseconds);
         }
     }
 
@@ -932,14 +950,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
                 vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 1);
                 // record the slope of the vacuum level
-                long timeout = System.currentTimeMillis() + probingMilliseconds;
-                SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-                double vacuumLevel;
-                do {
-                    vacuumLevel = readVacuumLevel();
-                    vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-                }
-                while (System.currentTimeMillis() < timeout);
+                double vacuumLevel = monitorVacuumLevel(vacuumGraph, probingMilliseconds, (level) -> false);
                 // record valve still on 
                 vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
                 .recordDataPoint(vacuumGraph.getT(), 1);
@@ -949,7 +960,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
             }
             else {
                 // simple method, just dwell 
-                Thread.sleep(probingMilliseconds);
+                getDriver().dwell(probingMilliseconds);
                 if (dwellMilliseconds <= 0) {
                     returnedVacuumLevel = readVacuumLevel();
                 }
@@ -965,14 +976,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 0);
             // record the slope of the vacuum level
-            long timeout = System.currentTimeMillis() + dwellMilliseconds;
-            SimpleGraph.DataRow vacuumData = vacuumGraph.getRow(ReferenceNozzleTip.PRESSURE, ReferenceNozzleTip.VACUUM);
-            double vacuumLevel;
-            do {
-                vacuumLevel = readVacuumLevel();
-                vacuumData.recordDataPoint(vacuumGraph.getT(), vacuumLevel);
-            }
-            while (System.currentTimeMillis() < timeout);
+            double vacuumLevel = monitorVacuumLevel(vacuumGraph, dwellMilliseconds, (level) -> false);
             // record valve still off
             vacuumGraph.getRow(ReferenceNozzleTip.BOOLEAN, ReferenceNozzleTip.VALVE_ON)
             .recordDataPoint(vacuumGraph.getT(), 0);
@@ -987,7 +991,7 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         else {
             // simple method, just dwell and then read the level
             if (dwellMilliseconds > 0) {
-                Thread.sleep(dwellMilliseconds);
+                getDriver().dwell(dwellMilliseconds);
                 returnedVacuumLevel = readVacuumLevel();
             }
             // return the vacuum level, either from before or after valve closed
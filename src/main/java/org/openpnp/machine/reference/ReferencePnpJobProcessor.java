@@ -21,16 +21,21 @@ package org.openpnp.machine.reference;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.feeder.ReferencePushPullFeeder;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
 import org.openpnp.machine.reference.wizards.ReferencePnpJobProcessorConfigurationWizard;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
@@ -40,6 +45,7 @@ import org.openpnp.model.Location;
 import org.openpnp.model.Panel;
 import org.openpnp.model.Part;
 import org.openpnp.model.Placement;
+import org.openpnp.model.PlacementIndex;
 import org.openpnp.spi.Feeder;
 import org.openpnp.spi.FiducialLocator;
 import org.openpnp.spi.Head;
@@ -48,6 +54,7 @@ import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PnpJobPlanner;
+import org.openpnp.spi.PnpJobPlanner.JobOrderHint;
 import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
 import org.openpnp.spi.base.AbstractJobProcessor;
@@ -67,11 +74,6 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         public Step step() throws JobProcessorException;
     }
     
-    public enum JobOrderHint {
-        PartHeight,
-        Part
-    }
-
     @Attribute(required = false)
     protected JobOrderHint jobOrder = JobOrderHint.PartHeight;
 
@@ -187,12 +189,11 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 
                 checkDuplicateRefs(boardLocation);
                 
-                for (Placement placement : boardLocation.getBoard().getPlacements()) {
-                    // Ignore placements that aren't placements
-                    if (placement.getType() != Placement.Type.Placement) {
-                        continue;
-                    }
-                    
+                // Only placements on the side of the board we're processing, ignoring
+                // fiducials.
+                PlacementIndex placementIndex = boardLocation.getBoard().getPlacementIndex();
+                for (Placement placement : placementIndex.getPlacements(boardLocation.getSide(),
+                        Placement.Type.Placement)) {
                     if (!placement.isEnabled()) {
                         continue;
                     }
@@ -202,11 +203,6 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                         continue;
                     }
 
-                    // Ignore placements that aren't on the side of the board we're processing.
-                    if (placement.getSide() != boardLocation.getSide()) {
-                        continue;
-                    }
-
                     JobPlacement jobPlacement = new JobPlacement(boardLocation, placement);
 
                     checkJobPlacement(jobPlacement);
@@ -368,16 +364,12 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
 
         private void checkDuplicateRefs(BoardLocation boardLocation) throws JobProcessorException {
             // Check for ID duplicates - throw error if any are found
-            HashSet<String> idlist = new HashSet<String>();
-            for (Placement placement : boardLocation.getBoard().getPlacements()) {
-                if (idlist.contains(placement.getId())) {
-                    throw new JobProcessorException(boardLocation, 
-                            String.format("This board contains at least one duplicate ID entry: %s ",
-                            placement.getId()));
-                } 
-                else {
-                    idlist.add(placement.getId());
-                }
+            Set<String> duplicateIds =
+                    boardLocation.getBoard().getPlacementIndex().getDuplicateIds();
+            if (!duplicateIds.isEmpty()) {
+                throw new JobProcessorException(boardLocation, 
+                        String.format("This board contains at least one duplicate ID entry: %s ",
+                        duplicateIds.iterator().next()));
             }       
         }
     }
@@ -462,9 +454,15 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 return new Finish();
             }
 
+            planner.setJobOrder(jobOrder);
+
             long t = System.currentTimeMillis();
             List<PlannedPlacement> plannedPlacements = planner.plan(head, jobPlacements);
             Logger.debug("Planner complete in {}ms: {}", (System.currentTimeMillis() - t), plannedPlacements);
+            if (planner.getEstimatedJobTime() >= 0) {
+                Logger.debug("Estimated remaining job time {}s.",
+                        Math.round(planner.getEstimatedJobTime()));
+            }
 
             if (plannedPlacements.isEmpty()) {
                 throw new JobProcessorException(planner, "Planner failed to plan any placements. Please contact support.");
@@ -712,6 +710,18 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     }
 
     protected class Align extends PlannedPlacementStep {
+        /**
+         * Offsets found by aligning several nozzles together, used up as the planned placements
+         * are stepped through. Null until the first step.
+         */
+        private Map<Nozzle, PartAlignment.PartAlignmentOffset> batchOffsets;
+
+        /**
+         * Alignments whose images were captured ahead and are still being processed, see
+         * alignAhead().
+         */
+        private Map<Nozzle, Future<PartAlignment.PartAlignmentOffset>> pendingOffsets;
+
         public Align(List<PlannedPlacement> plannedPlacements) {
             super(plannedPlacements);
         }
@@ -735,12 +745,144 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 return this;
             }
 
-            align(plannedPlacement, partAlignment);
+            if (batchOffsets == null) {
+                batchOffsets = alignTogether(partAlignment);
+                pendingOffsets = alignAhead();
+            }
+            PartAlignment.PartAlignmentOffset offsets = batchOffsets.remove(nozzle);
+            if (offsets == null) {
+                offsets = awaitAlignedAhead(nozzle);
+            }
+            if (offsets != null) {
+                plannedPlacement.alignmentOffsets = offsets;
+                Logger.debug("Align {} with {}, offsets {}", part, nozzle, offsets);
+            }
+            else {
+                align(plannedPlacement, partAlignment);
+            }
             
             checkPartOn(nozzle);
 
             return this;
         }
+
+        /**
+         * If the aligner is bottom vision and it can see all the nozzles that use it in this cycle
+         * at once, align them from one camera frame. Any nozzle left out of the result, e.g.
+         * because its part was not found, is aligned on its own afterwards.
+         */
+        private Map<Nozzle, PartAlignment.PartAlignmentOffset> alignTogether(
+                PartAlignment partAlignment) {
+            Map<Nozzle, PartAlignment.PartAlignmentOffset> offsets = new HashMap<>();
+            if (!(partAlignment instanceof ReferenceBottomVision)) {
+                return offsets;
+            }
+            ReferenceBottomVision bottomVision = (ReferenceBottomVision) partAlignment;
+            List<Nozzle> nozzles = new ArrayList<>();
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                if (plannedPlacement.jobPlacement.getStatus() == Status.Processing
+                        && findPartAligner(machine, plannedPlacement.jobPlacement.getPlacement()
+                                .getPart()) == bottomVision) {
+                    nozzles.add(plannedPlacement.nozzle);
+                }
+            }
+            if (!bottomVision.canAlignTogether(nozzles)) {
+                return offsets;
+            }
+
+            fireTextStatus("Aligning %d parts together.", nozzles.size());
+            for (Nozzle nozzle : nozzles) {
+                fireAlignmentScript("Vision.PartAlignment.Before", nozzle, null);
+            }
+            try {
+                offsets.putAll(bottomVision.findOffsets(nozzles));
+            }
+            catch (Exception e) {
+                Logger.warn("Aligning parts together failed, aligning one at a time: {}", e);
+            }
+            for (Nozzle nozzle : nozzles) {
+                fireAlignmentScript("Vision.PartAlignment.After", nozzle, offsets.get(nozzle));
+            }
+            return offsets;
+        }
+
+        /**
+         * Start bottom vision for every nozzle in the cycle that was not aligned together. Each
+         * nozzle is moved over the camera and captured in turn, and its image is processed on the
+         * vision workers while the next nozzle moves. Nozzles that can't be started this way are
+         * left out and aligned one at a time.
+         * 
+         * Vision.PartAlignment.Before fires for each nozzle just before it is captured, but
+         * Vision.PartAlignment.After only fires once its offsets are known, in awaitAlignedAhead().
+         * So with several nozzles the Before events of the later nozzles come before the After
+         * event of the first one, as they do when aligning together.
+         */
+        private Map<Nozzle, Future<PartAlignment.PartAlignmentOffset>> alignAhead() {
+            Map<Nozzle, Future<PartAlignment.PartAlignmentOffset>> futures = new HashMap<>();
+            for (PlannedPlacement plannedPlacement : plannedPlacements) {
+                final Nozzle nozzle = plannedPlacement.nozzle;
+                final JobPlacement jobPlacement = plannedPlacement.jobPlacement;
+                final Placement placement = jobPlacement.getPlacement();
+                final Part part = placement.getPart();
+                if (jobPlacement.getStatus() != Status.Processing
+                        || batchOffsets.containsKey(nozzle)) {
+                    continue;
+                }
+                PartAlignment partAlignment = findPartAligner(machine, part);
+                if (!(partAlignment instanceof ReferenceBottomVision)) {
+                    continue;
+                }
+                fireTextStatus("Aligning %s for %s.", part.getId(), placement.getId());
+                fireAlignmentScript("Vision.PartAlignment.Before", nozzle, null);
+                try {
+                    futures.put(nozzle, ((ReferenceBottomVision) partAlignment).findOffsetsAsync(
+                            part, jobPlacement.getBoardLocation(), placement.getLocation(), nozzle));
+                }
+                catch (Exception e) {
+                    Logger.debug("Aligning {} ahead failed, aligning on its own: {}", part.getId(), e);
+                    fireAlignmentScript("Vision.PartAlignment.After", nozzle, null);
+                }
+            }
+            return futures;
+        }
+
+        /**
+         * Wait for the alignment of the nozzle started by alignAhead(), if any. Returns null if
+         * there was none or it failed, so the nozzle is aligned on its own.
+         */
+        private PartAlignment.PartAlignmentOffset awaitAlignedAhead(Nozzle nozzle) {
+            Future<PartAlignment.PartAlignmentOffset> future = pendingOffsets.remove(nozzle);
+            if (future == null) {
+                return null;
+            }
+            PartAlignment.PartAlignmentOffset offsets = null;
+            try {
+                offsets = future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                Logger.debug("Aligning {} ahead failed, aligning on its own: {}",
+                        nozzle.getPart().getId(), e.getCause());
+            }
+            fireAlignmentScript("Vision.PartAlignment.After", nozzle, offsets);
+            return offsets;
+        }
+
+        private void fireAlignmentScript(String event, Nozzle nozzle,
+                PartAlignment.PartAlignmentOffset offsets) {
+            try {
+                Map<String, Object> globals = new HashMap<>();
+                globals.put("part", nozzle.getPart());
+                globals.put("nozzle", nozzle);
+                globals.put("offsets", offsets);
+                Configuration.get().getScripting().on(event, globals);
+            }
+            catch (Exception e) {
+                Logger.warn(e);
+            }
+        }
         
         private void align(PlannedPlacement plannedPlacement, PartAlignment partAlignment) throws JobProcessorException {
             final Nozzle nozzle = plannedPlacement.nozzle;
@@ -1400,4 +1542,422 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             return null;
         }
     }
+
+    /**
+     * A planner that plans the whole remaining job up front and then hands it out one cycle at a
+     * time. Cycles are filled by estimating the cost in seconds of each possible assignment of a
+     * placement to a free nozzle and taking the cheapest one, until all nozzles are used. The cost
+     * includes head travel to the feeder and the placement, a feeder visit unless the same part is
+     * already being picked in the cycle, and a nozzle tip change if the loaded tip can't handle
+     * the part.
+     * 
+     * A nozzle tip change is spread over the remaining placements the new tip can serve, up to
+     * lookAheadPlacements, and the tip that can serve the most of them is chosen. This makes the
+     * planner avoid changes that will only be undone in the next cycle.
+     * 
+     * The job order is kept by filling cycles from the first group of placements in job order,
+     * i.e. those with the lowest part height or the first part. Only if no free nozzle can handle
+     * any of them are placements of the next group taken. The picks and places of each cycle are
+     * ordered by travel time, for the PartHeight job order without putting a placement ahead of
+     * one with a lower part height. Placements that no nozzle can handle are left unplanned.
+     * 
+     * If the placements passed to plan() don't match what is left of the plan, e.g. because a
+     * placement errored, the remaining job is planned again.
+     */
+    @Root
+    public static class CostPnpJobPlanner implements PnpJobPlanner {
+        /**
+         * Average head speed used to estimate travel time, in mm/s.
+         */
+        @Attribute(required = false)
+        protected double travelSpeed = 250;
+
+        /**
+         * Time for one feeder visit, i.e. feed and pick, in seconds.
+         */
+        @Attribute(required = false)
+        protected double feederVisitTime = 0.5;
+
+        /**
+         * Time for alignment and placement of one part, not including travel, in seconds.
+         */
+        @Attribute(required = false)
+        protected double placementTime = 1.0;
+
+        /**
+         * Time for one nozzle tip change, in seconds.
+         */
+        @Attribute(required = false)
+        protected double nozzleTipChangeTime = 10;
+
+        /**
+         * The most remaining placements a nozzle tip change is spread over.
+         */
+        @Attribute(required = false)
+        protected int lookAheadPlacements = 4;
+
+        /**
+         * Cycles with at most this many placements have their order solved exactly. Larger ones
+         * keep the order in which they were filled.
+         */
+        private static final int maxPermutedCycleSize = 6;
+
+        private JobOrderHint jobOrder = JobOrderHint.PartHeight;
+
+        private Head plannedHead;
+        private JobOrderHint plannedJobOrder;
+        private final List<JobPlacement> unplannable = new ArrayList<>();
+        private final List<List<PlannedPlacement>> cycles = new ArrayList<>();
+        private final List<Double> cycleTimes = new ArrayList<>();
+        private double estimatedJobTime = -1;
+
+        @Override
+        public synchronized List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements) {
+            if (head != plannedHead || jobOrder != plannedJobOrder || !isPlanned(jobPlacements)) {
+                planJob(head, jobPlacements);
+            }
+            estimatedJobTime = 0;
+            for (double cycleTime : cycleTimes) {
+                estimatedJobTime += cycleTime;
+            }
+            if (cycles.isEmpty()) {
+                return new ArrayList<>();
+            }
+            cycleTimes.remove(0);
+            return cycles.remove(0);
+        }
+
+        /**
+         * The estimated time in seconds to finish the placements passed to the last call of
+         * plan(), including the cycle it returned.
+         */
+        @Override
+        public synchronized double getEstimatedJobTime() {
+            return estimatedJobTime;
+        }
+
+        private boolean isPlanned(List<JobPlacement> jobPlacements) {
+            Set<JobPlacement> planned = new HashSet<>();
+            for (List<PlannedPlacement> cycle : cycles) {
+                for (PlannedPlacement plannedPlacement : cycle) {
+                    planned.add(plannedPlacement.jobPlacement);
+                }
+            }
+            if (planned.isEmpty()) {
+                return false;
+            }
+            planned.addAll(unplannable);
+            return planned.equals(new HashSet<>(jobPlacements));
+        }
+
+        protected void planJob(Head head, List<JobPlacement> jobPlacements) {
+            long t = System.currentTimeMillis();
+            plannedHead = head;
+            plannedJobOrder = jobOrder;
+            cycles.clear();
+            cycleTimes.clear();
+            unplannable.clear();
+
+            Planning planning = new Planning(head, jobPlacements);
+            while (!planning.remaining.isEmpty()) {
+                List<PlannedPlacement> cycle = planning.planCycle();
+                if (cycle.isEmpty()) {
+                    // Nothing left that any nozzle can handle.
+                    unplannable.addAll(planning.remaining);
+                    Logger.warn("No nozzle can handle {}, they are left unplanned.", unplannable);
+                    break;
+                }
+                double travelTime = planning.orderCycle(cycle);
+                cycles.add(cycle);
+                cycleTimes.add(planning.cycleTime(cycle, travelTime));
+            }
+            Logger.debug("Planned {} placements in {} cycles in {}ms.",
+                    jobPlacements.size() - planning.remaining.size(), cycles.size(),
+                    System.currentTimeMillis() - t);
+        }
+
+        /**
+         * The state of one run of planJob(): the remaining placements, the nozzle tips the
+         * nozzles will have loaded and where the head will be after the cycles planned so far.
+         */
+        private class Planning {
+            final Head head;
+            final List<JobPlacement> remaining;
+            final Map<Nozzle, NozzleTip> loadedTips = new HashMap<>();
+            final Map<JobPlacement, Location> placementLocations = new HashMap<>();
+            final Map<Part, Location> feederLocations = new HashMap<>();
+            final Map<NozzleTip, Integer> tipDemand = new HashMap<>();
+            final Comparator<JobPlacement> order;
+            Location location;
+            int tipChanges;
+
+            Planning(Head head, List<JobPlacement> jobPlacements) {
+                this.head = head;
+                if (jobOrder == JobOrderHint.Part) {
+                    order = Comparator.comparing(JobPlacement::getPartId);
+                }
+                else {
+                    order = Comparator.comparing(JobPlacement::getPartHeight);
+                }
+                this.remaining = new ArrayList<>(jobPlacements);
+                // Stable, so the given order is kept within each group.
+                remaining.sort(order);
+                for (Nozzle nozzle : head.getNozzles()) {
+                    loadedTips.put(nozzle, nozzle.getNozzleTip());
+                }
+                try {
+                    location = head.getDefaultCamera().getLocation()
+                            .convertToUnits(LengthUnit.Millimeters);
+                }
+                catch (Exception e) {
+                    location = null;
+                }
+                for (JobPlacement jobPlacement : remaining) {
+                    Placement placement = jobPlacement.getPlacement();
+                    placementLocations.put(jobPlacement,
+                            Utils2D.calculateBoardPlacementLocation(
+                                    jobPlacement.getBoardLocation(), placement.getLocation())
+                                    .convertToUnits(LengthUnit.Millimeters));
+                    Part part = placement.getPart();
+                    if (!feederLocations.containsKey(part)) {
+                        feederLocations.put(part, getFeederLocation(head.getMachine(), part));
+                    }
+                    for (NozzleTip nozzleTip : part.getPackage().getCompatibleNozzleTips()) {
+                        tipDemand.merge(nozzleTip, 1, Integer::sum);
+                    }
+                }
+            }
+
+            /**
+             * Fill one cycle by repeatedly taking the cheapest assignment of a remaining placement
+             * to a free nozzle. Only the first group of placements in job order is considered,
+             * unless none of them can go on a free nozzle.
+             */
+            List<PlannedPlacement> planCycle() {
+                List<PlannedPlacement> cycle = new ArrayList<>();
+                List<Nozzle> freeNozzles = new ArrayList<>(head.getNozzles());
+                Set<Part> cycleParts = new HashSet<>();
+                Location lastFeeder = location;
+                Location lastPlacement = null;
+
+                while (!freeNozzles.isEmpty() && !remaining.isEmpty()) {
+                    double bestCost = Double.POSITIVE_INFINITY;
+                    PlannedPlacement best = null;
+                    JobPlacement group = null;
+                    for (JobPlacement jobPlacement : remaining) {
+                        if (group == null || order.compare(group, jobPlacement) != 0) {
+                            if (best != null) {
+                                break;
+                            }
+                            group = jobPlacement;
+                        }
+                        Part part = jobPlacement.getPlacement().getPart();
+                        Location feederLocation = feederLocations.get(part);
+                        Location placementLocation = placementLocations.get(jobPlacement);
+                        double cost = travelTime(lastPlacement == null ? feederLocation : lastPlacement,
+                                placementLocation);
+                        if (!cycleParts.contains(part)) {
+                            cost += feederVisitTime + travelTime(lastFeeder, feederLocation);
+                        }
+                        for (Nozzle nozzle : freeNozzles) {
+                            NozzleTip nozzleTip = chooseNozzleTip(nozzle, part);
+                            if (nozzleTip == null) {
+                                continue;
+                            }
+                            double nozzleCost = cost;
+                            if (nozzleTip != loadedTips.get(nozzle)) {
+                                nozzleCost += nozzleTipChangeTime / Math.max(1,
+                                        Math.min(tipDemand.getOrDefault(nozzleTip, 0), lookAheadPlacements));
+                            }
+                            if (nozzleCost < bestCost) {
+                                bestCost = nozzleCost;
+                                best = new PlannedPlacement(nozzle, nozzleTip, jobPlacement);
+                            }
+                        }
+                    }
+                    if (best == null) {
+                        break;
+                    }
+                    Part part = best.jobPlacement.getPlacement().getPart();
+                    if (best.nozzleTip != loadedTips.get(best.nozzle)) {
+                        loadedTips.put(best.nozzle, best.nozzleTip);
+                        tipChanges++;
+                    }
+                    for (NozzleTip nozzleTip : part.getPackage().getCompatibleNozzleTips()) {
+                        tipDemand.merge(nozzleTip, -1, Integer::sum);
+                    }
+                    cycleParts.add(part);
+                    lastFeeder = feederLocations.get(part);
+                    lastPlacement = placementLocations.get(best.jobPlacement);
+                    remaining.remove(best.jobPlacement);
+                    freeNozzles.remove(best.nozzle);
+                    cycle.add(best);
+                }
+                return cycle;
+            }
+
+            /**
+             * Use the loaded nozzle tip if it can handle the part. Otherwise choose the compatible
+             * tip that is not loaded on another nozzle and can serve the most remaining
+             * placements.
+             */
+            NozzleTip chooseNozzleTip(Nozzle nozzle, Part part) {
+                Set<NozzleTip> compatible = part.getPackage().getCompatibleNozzleTips();
+                NozzleTip loaded = loadedTips.get(nozzle);
+                if (loaded != null && compatible.contains(loaded)) {
+                    return loaded;
+                }
+                NozzleTip best = null;
+                int bestDemand = -1;
+                for (NozzleTip nozzleTip : compatible) {
+                    if (!nozzle.getCompatibleNozzleTips().contains(nozzleTip)
+                            || loadedTips.containsValue(nozzleTip)) {
+                        continue;
+                    }
+                    int demand = tipDemand.getOrDefault(nozzleTip, 0);
+                    if (demand > bestDemand) {
+                        best = nozzleTip;
+                        bestDemand = demand;
+                    }
+                }
+                return best;
+            }
+
+            /**
+             * Put the cycle in the order with the shortest travel: all picks first, then all
+             * places, which is how the job processor runs a cycle. For the PartHeight job order
+             * placements stay sorted by part height. Moves the planning location to the last
+             * placement and returns the travel time.
+             */
+            double orderCycle(List<PlannedPlacement> cycle) {
+                List<PlannedPlacement> best = new ArrayList<>(cycle);
+                double bestTime = cycleTravelTime(best);
+                if (cycle.size() <= maxPermutedCycleSize) {
+                    List<List<PlannedPlacement>> orders = new ArrayList<>();
+                    permute(new ArrayList<>(cycle), 0, orders);
+                    for (List<PlannedPlacement> order : orders) {
+                        double time = cycleTravelTime(order);
+                        if (time < bestTime) {
+                            best = order;
+                            bestTime = time;
+                        }
+                    }
+                }
+                cycle.clear();
+                cycle.addAll(best);
+                location = placementLocations.get(best.get(best.size() - 1).jobPlacement);
+                return bestTime;
+            }
+
+            void permute(List<PlannedPlacement> order, int k, List<List<PlannedPlacement>> orders) {
+                if (k == order.size()) {
+                    orders.add(new ArrayList<>(order));
+                    return;
+                }
+                for (int i = k; i < order.size(); i++) {
+                    Collections.swap(order, k, i);
+                    if (k == 0 || jobOrder != JobOrderHint.PartHeight
+                            || order.get(k - 1).jobPlacement.getPartHeight() <= order.get(k)
+                                    .jobPlacement.getPartHeight()) {
+                        permute(order, k + 1, orders);
+                    }
+                    Collections.swap(order, k, i);
+                }
+            }
+
+            double cycleTravelTime(List<PlannedPlacement> order) {
+                double time = 0;
+                Location from = location;
+                for (PlannedPlacement plannedPlacement : order) {
+                    Location to = feederLocations.get(plannedPlacement.jobPlacement.getPlacement().getPart());
+                    time += travelTime(from, to);
+                    from = to;
+                }
+                for (PlannedPlacement plannedPlacement : order) {
+                    Location to = placementLocations.get(plannedPlacement.jobPlacement);
+                    time += travelTime(from, to);
+                    from = to;
+                }
+                return time;
+            }
+
+            double cycleTime(List<PlannedPlacement> cycle, double travelTime) {
+                Set<Part> parts = new HashSet<>();
+                for (PlannedPlacement plannedPlacement : cycle) {
+                    parts.add(plannedPlacement.jobPlacement.getPlacement().getPart());
+                }
+                double time = travelTime + parts.size() * feederVisitTime
+                        + cycle.size() * placementTime + tipChanges * nozzleTipChangeTime;
+                tipChanges = 0;
+                return time;
+            }
+
+            double travelTime(Location from, Location to) {
+                if (from == null || to == null) {
+                    return 0;
+                }
+                return from.getLinearDistanceTo(to) / travelSpeed;
+            }
+        }
+
+        private static Location getFeederLocation(Machine machine, Part part) {
+            try {
+                return findFeeder(machine, part).getPickLocation()
+                        .convertToUnits(LengthUnit.Millimeters);
+            }
+            catch (Exception e) {
+                // No usable feeder yet; plan without the feeder leg and let Pick report it.
+                return null;
+            }
+        }
+
+        public double getTravelSpeed() {
+            return travelSpeed;
+        }
+
+        public void setTravelSpeed(double travelSpeed) {
+            this.travelSpeed = travelSpeed;
+        }
+
+        public double getFeederVisitTime() {
+            return feederVisitTime;
+        }
+
+        public void setFeederVisitTime(double feederVisitTime) {
+            this.feederVisitTime = feederVisitTime;
+        }
+
+        public double getPlacementTime() {
+            return placementTime;
+        }
+
+        public void setPlacementTime(double placementTime) {
+            this.placementTime = placementTime;
+        }
+
+        public double getNozzleTipChangeTime() {
+            return nozzleTipChangeTime;
+        }
+
+        public void setNozzleTipChangeTime(double nozzleTipChangeTime) {
+            this.nozzleTipChangeTime = nozzleTipChangeTime;
+        }
+
+        public int getLookAheadPlacements() {
+            return lookAheadPlacements;
+        }
+
+        public void setLookAheadPlacements(int lookAheadPlacements) {
+            this.lookAheadPlacements = lookAheadPlacements;
+        }
+
+        public JobOrderHint getJobOrder() {
+            return jobOrder;
+        }
+
+        @Override
+        public void setJobOrder(JobOrderHint jobOrder) {
+            this.jobOrder = jobOrder;
+        }
+    }
 }
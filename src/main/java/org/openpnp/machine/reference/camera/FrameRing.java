@@ -0,0 +1,164 @@
+package org.openpnp.machine.reference.camera;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small ring of the most recent frames of a camera, each stamped with the System.nanoTime()
+ * it was taken at. A camera's capture thread pushes frames in, readers look them up without
+ * locking. Readers that need a frame that has not arrived yet can wait for it.
+ *
+ * Also keeps a few statistics about the frame rate and how long captures had to wait for their
+ * frame, for tuning settle times.
+ */
+public class FrameRing {
+    public static class Frame {
+        public final BufferedImage image;
+        public final long nanos;
+        final long sequence;
+
+        Frame(BufferedImage image, long nanos, long sequence) {
+            this.image = image;
+            this.nanos = nanos;
+            this.sequence = sequence;
+        }
+    }
+
+    private final AtomicReferenceArray<Frame> frames;
+    /**
+     * Number of frames pushed so far. Written only while holding pushLock.
+     */
+    private volatile long count;
+    private final Object pushLock = new Object();
+    private final Object waitLock = new Object();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private volatile double frameIntervalMs;
+    private volatile double waitMs;
+    private volatile double maxWaitMs;
+
+    public FrameRing(int size) {
+        frames = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Add a frame. May be called from several threads, but frames should be pushed in the order
+     * they were taken.
+     */
+    public void push(BufferedImage image, long nanos) {
+        synchronized (pushLock) {
+            long sequence = count;
+            Frame previous = latest();
+            if (previous != null && nanos > previous.nanos) {
+                double interval = (nanos - previous.nanos) / 1e6;
+                frameIntervalMs = (frameIntervalMs == 0) ? interval
+                        : (0.9 * frameIntervalMs + 0.1 * interval);
+            }
+            frames.set((int) (sequence % frames.length()), new Frame(image, nanos, sequence));
+            count = sequence + 1;
+        }
+        if (waiting.get() > 0) {
+            synchronized (waitLock) {
+                waitLock.notifyAll();
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return The newest frame, or null if there is none.
+     */
+    public Frame latest() {
+        long count = this.count;
+        if (count == 0) {
+            return null;
+        }
+        return frames.get((int) ((count - 1) % frames.length()));
+    }
+
+    /**
+     * @return The oldest frame in the ring taken at or after the given System.nanoTime(), or null
+     *         if there is none yet.
+     */
+    public Frame firstAfter(long nanos) {
+        long count = this.count;
+        for (long sequence = Math.max(0, count - frames.length()); sequence < count; sequence++) {
+            Frame frame = frames.get((int) (sequence % frames.length()));
+            // Skip slots that were overwritten while we looked, the newer frames follow.
+            if (frame != null && frame.sequence == sequence && frame.nanos >= nanos) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wait for the first frame taken at or after the given System.nanoTime().
+     *
+     * @return The frame, or null if none arrived within the timeout.
+     */
+    public Frame awaitAfter(long nanos, long timeoutMs) throws InterruptedException {
+        long t = System.nanoTime();
+        Frame frame = firstAfter(nanos);
+        if (frame == null) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            waiting.incrementAndGet();
+            try {
+                synchronized (waitLock) {
+                    while ((frame = firstAfter(nanos)) == null) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            return null;
+                        }
+                        waitLock.wait(wait);
+                    }
+                }
+            }
+            finally {
+                waiting.decrementAndGet();
+            }
+        }
+        double waited = (System.nanoTime() - t) / 1e6;
+        waitMs = (waitMs == 0) ? waited : (0.9 * waitMs + 0.1 * waited);
+        maxWaitMs = Math.max(maxWaitMs, waited);
+        return frame;
+    }
+
+    public long getFrameCount() {
+        return count;
+    }
+
+    /**
+     * @return The average time between frames, in milliseconds.
+     */
+    public double getFrameIntervalMs() {
+        return frameIntervalMs;
+    }
+
+    /**
+     * @return The average time awaitAfter() waited for its frame, in milliseconds.
+     */
+    public double getWaitMs() {
+        return waitMs;
+    }
+
+    /**
+     * @return The longest time awaitAfter() waited for its frame, in milliseconds.
+     */
+    public double getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public void clear() {
+        synchronized (pushLock) {
+            for (int i = 0; i < frames.length(); i++) {
+                frames.set(i, null);
+            }
+            count = 0;
+        }
+    }
+}
@@ -63,6 +63,9 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
     private Thread thread;
     private boolean dirty = false;
 
+    // Calling notifyAll on this object wakes the capture thread to read a frame right away.
+    private final Object captureNotifier = new Object();
+
     public OpenCvCamera() {}
 
     @Override
@@ -96,18 +99,33 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                broadcastCapture(captureForPreview());
+                long t = System.nanoTime();
+                BufferedImage image = internalCapture();
+                if (image != null) {
+                    pushFrame(image, t);
+                    broadcastCapture(transformImage(image));
+                }
             }
             catch (Exception e) {
                 e.printStackTrace();
             }
             try {
-                Thread.sleep(1000 / fps);
+                synchronized (captureNotifier) {
+                    captureNotifier.wait(1000 / fps);
+                }
             }
             catch (InterruptedException e) {
                 break;
             }
         }
+        clearFrames();
+    }
+
+    @Override
+    protected void requestFrame() {
+        synchronized (captureNotifier) {
+            captureNotifier.notifyAll();
+        }
     }
 
     private void initCamera() {
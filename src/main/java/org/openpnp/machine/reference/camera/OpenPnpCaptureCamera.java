@@ -163,6 +163,7 @@ public class OpenPnpCaptureCamera extends ReferenceCamera implements Runnable {
              * The timeout is only needed if the stream is somehow in error and not producing frames (anymore) 
              * which can happen, if you disconnect the USB port and then try to capture from a pipeline.  
              */
+            long t = System.nanoTime();
             long timeout = System.currentTimeMillis()+500;
             while (!stream.hasNewFrame()) {
                 Thread.yield();
@@ -171,6 +172,7 @@ public class OpenPnpCaptureCamera extends ReferenceCamera implements Runnable {
                 }
             }
             BufferedImage img = stream.capture();
+            pushFrame(img, t);
             /**
              * We don't ever want to "waste" an image. So even if the thread is running at a low
              * frame rate, if we've been forced to capture an image we broadcast it.
@@ -208,7 +210,9 @@ public class OpenPnpCaptureCamera extends ReferenceCamera implements Runnable {
             try {
                 ensureOpen();
                 if (stream.hasNewFrame()) {
+                    long t = System.nanoTime();
                     BufferedImage img = stream.capture();
+                    pushFrame(img, t);
                     img = transformImage(img);
                     broadcastCapture(img);
                 }
@@ -230,6 +234,14 @@ public class OpenPnpCaptureCamera extends ReferenceCamera implements Runnable {
                 break;
             }
         }
+        clearFrames();
+    }
+
+    @Override
+    protected void requestFrame() {
+        synchronized(captureNotifier) {
+            captureNotifier.notifyAll();
+        }
     }
     
     public synchronized void ensureOpen() {
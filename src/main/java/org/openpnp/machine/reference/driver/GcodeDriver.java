@@ -2,16 +2,24 @@ package org.openpnp.machine.reference.driver;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,6 +49,7 @@ import org.openpnp.spi.Movable.MoveToOption;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PropertySheetHolder;
 import org.openpnp.spi.base.SimplePropertySheetHolder;
+import org.openpnp.util.LogUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -106,6 +115,42 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         }
     }
 
+    /**
+     * The classification of a line received from the controller. Each line is classified once,
+     * by the reader thread, so that waiting callers don't have to match it again.
+     */
+    public enum ResponseType {
+        Confirm,
+        Error,
+        Other
+    }
+
+    protected static class Response {
+        final String line;
+        final ResponseType type;
+
+        Response(String line, ResponseType type) {
+            this.line = line;
+            this.type = type;
+        }
+    }
+
+    /**
+     * An actuatorReadUntil() in progress. The reader thread offers it every value matching the
+     * actuator's ACTUATOR_READ_REGEX, whether it was requested or reported by the controller on
+     * its own.
+     */
+    private static class ActuatorReadMonitor {
+        final Pattern pattern;
+        final BlockingQueue<String> values = new LinkedBlockingQueue<>();
+
+        ActuatorReadMonitor(Pattern pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
+
     public static class Command {
         @Attribute(required = false)
         public String headMountableId;
@@ -116,6 +161,12 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         @ElementList(required = false, inline = true, entry = "text", data = true)
         public ArrayList<String> commands = new ArrayList<>();
 
+        /**
+         * The joined command text, cached so that the same String instance (and its hash)
+         * is reused for every lookup.
+         */
+        private String text;
+
         public Command(String headMountableId, CommandType type, String text) {
             this.headMountableId = headMountableId;
             this.type = type;
@@ -123,6 +174,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         }
 
         public void setCommand(String text) {
+            this.text = null;
             this.commands.clear();
             if (text != null) {
                 text = text.trim();
@@ -133,7 +185,10 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         }
 
         public String getCommand() {
-            return Joiner.on('\n').join(commands);
+            if (text == null) {
+                text = Joiner.on('\n').join(commands);
+            }
+            return text;
         }
 
         private Command() {
@@ -177,6 +232,22 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     @Attribute(required = false)
     protected boolean backslashEscapedCharactersEnabled = false;
 
+    /**
+     * When enabled, commands that are not synchronization points (moves without a
+     * MOVE_TO_COMPLETE_REGEX, actuator commands and pre-move commands) are streamed to the
+     * controller without waiting for their acknowledgement. Up to maxUnacknowledgedCommands
+     * lines (and, if non-zero, maxUnacknowledgedCharacters characters) may be in flight at once.
+     * Any command that needs its responses waits for the in-flight window to drain first.
+     */
+    @Attribute(required = false)
+    protected boolean streamingEnabled = false;
+
+    @Attribute(required = false)
+    protected int maxUnacknowledgedCommands = 4;
+
+    @Attribute(required = false)
+    protected int maxUnacknowledgedCharacters = 0;
+
     @Element(required = false)
     protected Location homingFiducialLocation = new Location(LengthUnit.Millimeters);
 
@@ -195,7 +266,25 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     private Thread readerThread;
     private boolean disconnectRequested;
     private boolean connected;
-    private LinkedBlockingQueue<String> responseQueue = new LinkedBlockingQueue<>();
+    private LinkedBlockingQueue<Response> responseQueue = new LinkedBlockingQueue<>();
+    /**
+     * Compiled regexes keyed by their source text, so a received line is never matched against
+     * a freshly compiled pattern. Cleared whenever the commands are edited.
+     */
+    private final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+    /**
+     * The commands grouped by type, built lazily from the commands list and dropped whenever
+     * the commands are edited.
+     */
+    private volatile Map<CommandType, List<Command>> commandsByType;
+    /**
+     * Streamed commands that have been written but not yet acknowledged, in the order they
+     * were sent. Guarded by its own monitor, which is also used to signal acknowledgements.
+     */
+    private final Deque<String> unacknowledgedCommands = new ArrayDeque<>();
+    private int unacknowledgedCharacters;
+    private String streamingErrorResponse;
+    private final List<ActuatorReadMonitor> actuatorReadMonitors = new CopyOnWriteArrayList<>();
     private GcodeDriver parent = null;
     
     @Commit
@@ -204,6 +293,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         for (GcodeDriver driver : subDrivers) {
             driver.parent = this;
         }
+        invalidateCommandCache();
     }
     
     public void createDefaults() {
@@ -233,6 +323,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         commands.add(new Command(null, CommandType.HOME_COMMAND, "G28 ; Home all axes"));
         commands.add(new Command(null, CommandType.MOVE_TO_COMMAND, "G0 {X:X%.4f} {Y:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} F{FeedRate:%.0f} ; Send standard Gcode move"));
         commands.add(new Command(null, CommandType.MOVE_TO_COMPLETE_COMMAND, "M400 ; Wait for moves to complete before returning"));
+        invalidateCommandCache();
     }
 
     public synchronized void connect() throws Exception {
@@ -414,11 +505,12 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     }
 
     public Command getCommand(HeadMountable hm, CommandType type, boolean checkDefaults) {
+        List<Command> commands = getCommandsByType(type);
         // If a HeadMountable is specified, see if we can find a match
         // for both the HeadMountable ID and the command type.
         if (type.headMountable && hm != null) {
             for (Command c : commands) {
-                if (hm.getId().equals(c.headMountableId) && type == c.type) {
+                if (hm.getId().equals(c.headMountableId)) {
                     return c;
                 }
             }
@@ -429,7 +521,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         // If not, see if we can find a match for the command type with a
         // null or * HeadMountable ID.
         for (Command c : commands) {
-            if ((c.headMountableId == null || c.headMountableId.equals("*")) && type == c.type) {
+            if (c.headMountableId == null || c.headMountableId.equals("*")) {
                 return c;
             }
         }
@@ -437,6 +529,60 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         return null;
     }
 
+    private List<Command> getCommandsByType(CommandType type) {
+        Map<CommandType, List<Command>> commandsByType = this.commandsByType;
+        if (commandsByType == null) {
+            commandsByType = new EnumMap<>(CommandType.class);
+            for (CommandType t : CommandType.values()) {
+                commandsByType.put(t, new ArrayList<>());
+            }
+            for (Command c : commands) {
+                commandsByType.get(c.type).add(c);
+            }
+            this.commandsByType = commandsByType;
+        }
+        return commandsByType.get(type);
+    }
+
+    /**
+     * Drop the command index and the compiled patterns. Must be called whenever the commands
+     * list is changed.
+     */
+    protected void invalidateCommandCache() {
+        commandsByType = null;
+        patternCache.clear();
+    }
+
+    /**
+     * Returns the compiled Pattern for the given regex, compiling it only on first use.
+     */
+    protected Pattern getPattern(String regex) {
+        if (regex == null) {
+            return null;
+        }
+        return patternCache.computeIfAbsent(regex, Pattern::compile);
+    }
+
+    protected Pattern getPattern(HeadMountable hm, CommandType type) {
+        return getPattern(getCommand(hm, type));
+    }
+
+    /**
+     * Classify a received line as a confirmation, an error or anything else. Confirmation wins
+     * over error, as in sendCommandNoFlush().
+     */
+    protected ResponseType classifyResponse(String line) {
+        Pattern confirmPattern = getPattern(null, CommandType.COMMAND_CONFIRM_REGEX);
+        if (confirmPattern != null && confirmPattern.matcher(line).matches()) {
+            return ResponseType.Confirm;
+        }
+        Pattern errorPattern = getPattern(null, CommandType.COMMAND_ERROR_REGEX);
+        if (errorPattern != null && errorPattern.matcher(line).matches()) {
+            return ResponseType.Error;
+        }
+        return ResponseType.Other;
+    }
+
     public String getCommand(HeadMountable hm, CommandType type) {
         Command c = getCommand(hm, type, true);
         if (c == null) {
@@ -461,32 +607,33 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 c.setCommand(text);
             }
         }
+        invalidateCommandCache();
     }
 
-    @Override
-    public Location getLocation(ReferenceHeadMountable hm) {
+    /**
+     * Returns the axis that moves the HeadMountable, looking at the sub-drivers too. A sub-driver
+     * axis takes precedence over one of the main driver.
+     */
+    public Axis getEffectiveAxis(HeadMountable hm, Axis.Type type) {
         // according main driver
-        Axis xAxis = getAxis(hm, Axis.Type.X);
-        Axis yAxis = getAxis(hm, Axis.Type.Y);
-        Axis zAxis = getAxis(hm, Axis.Type.Z);
-        Axis rotationAxis = getAxis(hm, Axis.Type.Rotation);
+        Axis axis = getAxis(hm, type);
 
         // additional info might be on subdrivers (note that subdrivers can only be one level deep)
         for (ReferenceDriver driver : subDrivers) {
             GcodeDriver d = (GcodeDriver) driver;
-            if (d.getAxis(hm, Axis.Type.X) != null) {
-                xAxis = d.getAxis(hm, Axis.Type.X);
-            }
-            if (d.getAxis(hm, Axis.Type.Y) != null) {
-                yAxis = d.getAxis(hm, Axis.Type.Y);
-            }
-            if (d.getAxis(hm, Axis.Type.Z) != null) {
-                zAxis = d.getAxis(hm, Axis.Type.Z);
-            }
-            if (d.getAxis(hm, Axis.Type.Rotation) != null) {
-                rotationAxis = d.getAxis(hm, Axis.Type.Rotation);
+            if (d.getAxis(hm, type) != null) {
+                axis = d.getAxis(hm, type);
             }
         }
+        return axis;
+    }
+
+    @Override
+    public Location getLocation(ReferenceHeadMountable hm) {
+        Axis xAxis = getEffectiveAxis(hm, Axis.Type.X);
+        Axis yAxis = getEffectiveAxis(hm, Axis.Type.Y);
+        Axis zAxis = getEffectiveAxis(hm, Axis.Type.Z);
+        Axis rotationAxis = getEffectiveAxis(hm, Axis.Type.Rotation);
 
         Location location =
                 new Location(units, xAxis == null ? 0 : xAxis.getTransformedCoordinate(hm),
@@ -660,7 +807,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 if (xAxis.getPreMoveCommand() != null) {
                     String preMoveCommand = xAxis.getPreMoveCommand();
                     preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", xAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcodeStreamed(preMoveCommand);
                 }
                 xAxis.setCoordinate(x);
             }
@@ -681,7 +828,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 if (yAxis.getPreMoveCommand() != null) {
                     String preMoveCommand = yAxis.getPreMoveCommand();
                     preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", yAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcodeStreamed(preMoveCommand);
                 }
             }
             else {
@@ -701,7 +848,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 if (zAxis.getPreMoveCommand() != null) {
                     String preMoveCommand = zAxis.getPreMoveCommand();
                     preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", zAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcodeStreamed(preMoveCommand);
                 }
             }
             else {
@@ -721,7 +868,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 if (rotationAxis.getPreMoveCommand() != null) {
                     String preMoveCommand = rotationAxis.getPreMoveCommand();
                     preMoveCommand = substituteVariable(preMoveCommand, "Coordinate", rotationAxis.getCoordinate());
-                    sendGcode(preMoveCommand);
+                    sendGcodeStreamed(preMoveCommand);
                 }
             }
             else {
@@ -734,8 +881,18 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
             // Only give a command when move is necessary
             if (includeX || includeY || includeZ || includeRotation) {
+                String moveToCompleteRegex = getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
+                String commandErrorRegex = getCommand(hm, CommandType.COMMAND_ERROR_REGEX);
 
-                List<String> responses = sendGcode(command);
+                // Without a completion regex nobody looks at the responses, so the move can be
+                // streamed.
+                List<String> responses;
+                if (moveToCompleteRegex == null) {
+                    responses = sendGcodeStreamed(command);
+                }
+                else {
+                    responses = sendGcode(command);
+                }
 
                 /*
                  * If moveToCompleteRegex is specified we need to wait until we match the regex in a
@@ -745,8 +902,6 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                  * matched we continue. If it's not matched within the timeout or the controller
                  * reports an error, we throw an Exception.
                  */
-                String moveToCompleteRegex = getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
-                String commandErrorRegex = getCommand(hm, CommandType.COMMAND_ERROR_REGEX);
                 if (moveToCompleteRegex != null) {
                     if (!containsMatch(responses, moveToCompleteRegex)) {
                         long t = System.currentTimeMillis();
@@ -807,8 +962,9 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     }
 
     private boolean containsMatch(List<String> responses, String regex) {
+        Pattern pattern = getPattern(regex);
         for (String response : responses) {
-            if (response.matches(regex)) {
+            if (pattern.matcher(response).matches()) {
                 return true;
             }
         }
@@ -824,7 +980,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         command = substituteVariable(command, "BooleanValue", on);
         command = substituteVariable(command, "True", on ? on : null);
         command = substituteVariable(command, "False", on ? null : on);
-        sendGcode(command);
+        sendGcodeStreamed(command);
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, on);
@@ -839,7 +995,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         command = substituteVariable(command, "Index", actuator.getIndex());
         command = substituteVariable(command, "DoubleValue", value);
         command = substituteVariable(command, "IntegerValue", (int) value);
-        sendGcode(command);
+        sendGcodeStreamed(command);
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, value);
@@ -853,7 +1009,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         command = substituteVariable(command, "Name", actuator.getName());
         command = substituteVariable(command, "Index", actuator.getIndex());
         command = substituteVariable(command, "StringValue", value);
-        sendGcode(command);
+        sendGcodeStreamed(command);
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, value);
@@ -898,7 +1054,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
             List<String> responses = sendGcode(command);
 
-            Pattern pattern = Pattern.compile(regex);
+            Pattern pattern = getPattern(regex);
             for (String line : responses) {
                 Matcher matcher = pattern.matcher(line);
                 if (matcher.matches()) {
@@ -965,10 +1121,99 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         return actuatorRead(actuator, (Double) parameter);
     }
 
+    /**
+     * Serviced by the same (sub)driver as actuatorRead(), i.e. the first one that has both an
+     * ACTUATOR_READ_COMMAND and an ACTUATOR_READ_REGEX for the actuator. Only if there is none,
+     * the first (sub)driver that has just the ACTUATOR_READ_REGEX services it and waits for values
+     * the controller reports on its own, e.g. after enabling an auto report in the
+     * CONNECT_COMMAND.
+     * 
+     * With a command, one read is requested at a time and the next one as soon as its value has
+     * been received. The command is streamed, so other commands keep flowing and nothing waits
+     * for the controller's acknowledgement.
+     */
+    @Override
+    public String actuatorReadUntil(ReferenceActuator actuator, long milliseconds,
+            Predicate<String> condition) throws Exception {
+        GcodeDriver driver = getActuatorReadDriver(actuator, true);
+        if (driver == null) {
+            driver = getActuatorReadDriver(actuator, false);
+        }
+        if (driver == null) {
+            throw new Exception(String.format("Actuator \"%s\" read error: Driver configuration is missing ACTUATOR_READ_REGEX.", actuator.getName()));
+        }
+        return driver.monitorActuatorReads(actuator, milliseconds, condition);
+    }
+
+    private GcodeDriver getActuatorReadDriver(ReferenceActuator actuator, boolean withCommand) {
+        if (getCommand(actuator, CommandType.ACTUATOR_READ_REGEX) != null && (!withCommand
+                || getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND) != null)) {
+            return this;
+        }
+        for (GcodeDriver driver : subDrivers) {
+            GcodeDriver readDriver = driver.getActuatorReadDriver(actuator, withCommand);
+            if (readDriver != null) {
+                return readDriver;
+            }
+        }
+        return null;
+    }
+
+    private String monitorActuatorReads(ReferenceActuator actuator, long milliseconds,
+            Predicate<String> condition) throws Exception {
+        String command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND);
+        if (command != null) {
+            command = substituteVariable(command, "Id", actuator.getId());
+            command = substituteVariable(command, "Name", actuator.getName());
+            command = substituteVariable(command, "Index", actuator.getIndex());
+        }
+        ActuatorReadMonitor monitor = new ActuatorReadMonitor(
+                getPattern(actuator, CommandType.ACTUATOR_READ_REGEX));
+        actuatorReadMonitors.add(monitor);
+        try {
+            long t = System.currentTimeMillis();
+            String value = null;
+            boolean requested = false;
+            while (true) {
+                if (command != null && !requested) {
+                    sendGcodeStreamed(command);
+                    requested = true;
+                }
+                long remaining = milliseconds - (System.currentTimeMillis() - t);
+                if (value == null) {
+                    // Like a plain read, always wait for at least one value.
+                    remaining = Math.max(remaining, timeoutMilliseconds);
+                }
+                String received = monitor.values.poll(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                if (received == null) {
+                    if (value == null) {
+                        throw new Exception(String.format("Actuator \"%s\" read error: No matching responses found.", actuator.getName()));
+                    }
+                    return value;
+                }
+                value = received;
+                requested = false;
+                if (condition.test(value)
+                        || System.currentTimeMillis() - t >= milliseconds) {
+                    return value;
+                }
+            }
+        }
+        finally {
+            actuatorReadMonitors.remove(monitor);
+        }
+    }
+
     public synchronized void disconnect() {
         disconnectRequested = true;
         connected = false;
 
+        synchronized (unacknowledgedCommands) {
+            unacknowledgedCommands.clear();
+            unacknowledgedCharacters = 0;
+            unacknowledgedCommands.notifyAll();
+        }
+
         try {
             if (readerThread != null && readerThread.isAlive()) {
                 readerThread.join(3000);
@@ -1021,6 +1266,153 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         return responses;
     }
 
+    /**
+     * Send the given Gcode without waiting for it to be acknowledged, if streaming is enabled.
+     * Otherwise this is the same as sendGcode(String). Since the responses of a streamed command
+     * are consumed by the reader thread, the returned list is empty when streaming.
+     */
+    protected List<String> sendGcodeStreamed(String gCode) throws Exception {
+        if (!streamingEnabled) {
+            return sendGcode(gCode);
+        }
+        if (gCode == null) {
+            return new ArrayList<>();
+        }
+        List<String> commands = new ArrayList<>();
+        for (String command : gCode.split("\n")) {
+            command = command.trim();
+            if (command.length() == 0) {
+                continue;
+            }
+            commands.add(command);
+        }
+        streamCommands(commands, timeoutMilliseconds);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Write the commands and return as soon as they have been written. As many of them as fit
+     * in the in-flight window are written together in one write. If the window is full, block
+     * until the controller has acknowledged enough of the previously streamed commands.
+     */
+    protected void streamCommands(List<String> commands, long timeout) throws Exception {
+        if (backslashEscapedCharactersEnabled) {
+            List<String> unescaped = new ArrayList<>();
+            for (String command : commands) {
+                unescaped.add(unescape(command));
+            }
+            commands = unescaped;
+        }
+        int lineEndingLength = getCommunications().getLineEndingType().getLineEnding().length();
+        if (timeout == -1) {
+            timeout = Long.MAX_VALUE;
+        }
+        int next = 0;
+        while (next < commands.size()) {
+            List<String> batch = new ArrayList<>();
+            synchronized (unacknowledgedCommands) {
+                long t = System.currentTimeMillis();
+                while (!fitsInFlight(commands.get(next).length() + lineEndingLength)) {
+                    long remaining = timeout - (System.currentTimeMillis() - t);
+                    if (remaining <= 0) {
+                        throw new Exception("Timeout waiting for response to " + unacknowledgedCommands.peekFirst());
+                    }
+                    unacknowledgedCommands.wait(remaining);
+                }
+                checkStreamingError();
+                // Register the commands before writing them, so the acknowledgements can't
+                // overtake them.
+                do {
+                    String command = commands.get(next++);
+                    unacknowledgedCommands.addLast(command);
+                    unacknowledgedCharacters += command.length() + lineEndingLength;
+                    batch.add(command);
+                } while (next < commands.size()
+                        && fitsInFlight(commands.get(next).length() + lineEndingLength));
+            }
+            if (LogUtils.isTraceEnabled()) {
+                for (String command : batch) {
+                    Logger.trace("[{}] >> {}", getCommunications().getConnectionName(), command);
+                }
+            }
+            try {
+                getCommunications().writeLines(batch);
+            }
+            catch (IOException ex) {
+                Logger.error("Failed to write commands: {}", batch);
+                disconnect();
+                Configuration.get().getMachine().setEnabled(false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the lock on unacknowledgedCommands.
+     */
+    private boolean fitsInFlight(int length) {
+        return unacknowledgedCommands.isEmpty()
+                || (unacknowledgedCommands.size() < Math.max(1, maxUnacknowledgedCommands)
+                        && (maxUnacknowledgedCharacters <= 0
+                                || unacknowledgedCharacters + length <= maxUnacknowledgedCharacters));
+    }
+
+    /**
+     * Block until all streamed commands have been acknowledged by the controller. This is called
+     * before any command that needs its own responses, which makes it a synchronization point.
+     */
+    protected void waitForStreamedCommands(long timeout) throws Exception {
+        if (timeout == -1) {
+            timeout = Long.MAX_VALUE;
+        }
+        synchronized (unacknowledgedCommands) {
+            long t = System.currentTimeMillis();
+            while (!unacknowledgedCommands.isEmpty()) {
+                long remaining = timeout - (System.currentTimeMillis() - t);
+                if (remaining <= 0) {
+                    throw new Exception("Timeout waiting for response to " + unacknowledgedCommands.peekFirst());
+                }
+                unacknowledgedCommands.wait(remaining);
+            }
+            checkStreamingError();
+        }
+    }
+
+    private void checkStreamingError() throws Exception {
+        if (streamingErrorResponse != null) {
+            String errorResponse = streamingErrorResponse;
+            streamingErrorResponse = null;
+            throw new Exception("Controller raised an error: " + errorResponse);
+        }
+    }
+
+    /**
+     * Called by the reader thread for every received line. If streamed commands are in flight
+     * and the line is an acknowledgement or error, the oldest streamed command is retired and
+     * true is returned, meaning the line must not be queued as a response.
+     */
+    private boolean processStreamedResponse(Response response) {
+        if (response.type == ResponseType.Other) {
+            return false;
+        }
+        synchronized (unacknowledgedCommands) {
+            if (unacknowledgedCommands.isEmpty()) {
+                return false;
+            }
+            String line = response.line;
+            boolean error = (response.type == ResponseType.Error);
+            String command = unacknowledgedCommands.pollFirst();
+            unacknowledgedCharacters = Math.max(0, unacknowledgedCharacters - command.length()
+                    - getCommunications().getLineEndingType().getLineEnding().length());
+            if (error && streamingErrorResponse == null) {
+                Logger.error("Controller raised an error for streamed command {}: {}", command, line);
+                streamingErrorResponse = line;
+            }
+            unacknowledgedCommands.notifyAll();
+            return true;
+        }
+    }
+
     public List<String> sendCommand(String command) throws Exception {
         return sendCommand(command, timeoutMilliseconds);
     }
@@ -1030,8 +1422,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
 
         // Read any responses that might be queued up so that when we wait
         // for a response to a command we actually wait for the one we expect.
-        responseQueue.drainTo(responses);
-        responses.clear();
+        responseQueue.clear();
         
         return sendCommandNoFlush(command, timeout);
     }
@@ -1039,19 +1430,26 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
     protected List<String> sendCommandNoFlush(String command, long timeout) throws Exception {
         List<String> responses = new ArrayList<>();
 
-        Logger.debug("sendCommand({}, {})...", command, timeout);
+        if (LogUtils.isDebugEnabled()) {
+            Logger.debug("sendCommand({}, {})...", command, timeout);
+        }
 
         // Send the command, if one was specified
         if (command != null) {
+            // Any streamed commands must be acknowledged before we can tell which responses
+            // belong to this one.
+            waitForStreamedCommands(timeout);
             if (backslashEscapedCharactersEnabled) {
                 command = unescape(command);
             }
-            Logger.trace("[{}] >> {}", getCommunications().getConnectionName(), command);
+            if (LogUtils.isTraceEnabled()) {
+                Logger.trace("[{}] >> {}", getCommunications().getConnectionName(), command);
+            }
             try {
                 getCommunications().writeLine(command);
             }
             catch (IOException ex) {
-                Logger.error("Failed to write command: ", command);
+                Logger.error("Failed to write command: {}", command);
                 disconnect();
                 Configuration.get().getMachine().setEnabled(false);
             }
@@ -1070,26 +1468,23 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         while (System.currentTimeMillis() - t < timeout) {
             // Wait to see if a response came in. We wait up until the number of millis remaining
             // in the timeout.
-            String response = responseQueue.poll(timeout - (System.currentTimeMillis() - t),
+            Response response = responseQueue.poll(timeout - (System.currentTimeMillis() - t),
                     TimeUnit.MILLISECONDS);
             // If no response yet, try again.
             if (response == null) {
                 continue;
             }
             // Store the response that was received
-            responses.add(response);
+            responses.add(response.line);
             // If the response is an ok or error we're done
-            if (response.matches(getCommand(null, CommandType.COMMAND_CONFIRM_REGEX))) {
+            if (response.type == ResponseType.Confirm) {
                 found = true;
                 break;
             }
-
-            if (getCommand(null, CommandType.COMMAND_ERROR_REGEX) != null) {
-                if (response.matches(getCommand(null, CommandType.COMMAND_ERROR_REGEX))) {
-                    foundError = true;
-                    errorResponse = response;
-                    break;
-                }
+            if (response.type == ResponseType.Error) {
+                foundError = true;
+                errorResponse = response.line;
+                break;
             }
         }
         // If a command was specified and no confirmation was found it's a timeout error.
@@ -1101,10 +1496,15 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         }
 
         // Read any additional responses that came in after the initial one.
-        responseQueue.drainTo(responses);
+        Response response;
+        while ((response = responseQueue.poll()) != null) {
+            responses.add(response.line);
+        }
 
-        Logger.debug("sendCommand({} {}, {}) => {}",
-                new Object[] {getCommunications().getConnectionName(), command, timeout == Long.MAX_VALUE ? -1 : timeout, responses});
+        if (LogUtils.isDebugEnabled()) {
+            Logger.debug("sendCommand({} {}, {}) => {}",
+                    new Object[] {getCommunications().getConnectionName(), command, timeout == Long.MAX_VALUE ? -1 : timeout, responses});
+        }
         return responses;
     }
 
@@ -1128,28 +1528,54 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
                 return;
             }
             line = line.trim();
-            Logger.trace("[{}] << {}", getCommunications().getConnectionName(), line);
+            if (LogUtils.isTraceEnabled()) {
+                Logger.trace("[{}] << {}", getCommunications().getConnectionName(), line);
+            }
             // extract a position report, if present
             processPositionReport(line);
+            // hand actuator values to any actuatorReadUntil() in progress
+            processActuatorReads(line);
+            // classify the line once, so waiting callers don't have to match it again
+            Response response = new Response(line, classifyResponse(line));
+            // acknowledgements of streamed commands are consumed here, nobody is waiting on them
+            if (processStreamedResponse(response)) {
+                continue;
+            }
             // add to the responseQueue (even if it happens to be a position report, it might still also contain the "ok"
             // acknowledgment e.g. on Smoothieware)
-            responseQueue.offer(line);
+            responseQueue.offer(response);
+        }
+    }
+
+    private void processActuatorReads(String line) {
+        for (ActuatorReadMonitor monitor : actuatorReadMonitors) {
+            Matcher matcher = monitor.pattern.matcher(line);
+            if (!matcher.matches()) {
+                continue;
+            }
+            try {
+                monitor.values.offer(matcher.group("Value"));
+            }
+            catch (IllegalArgumentException e) {
+                Logger.warn("Actuator read regex is missing \"Value\" capturing group: {}", monitor.pattern);
+            }
         }
     }
 
     private boolean processPositionReport(String line) {
-        if (getCommand(null, CommandType.POSITION_REPORT_REGEX) == null) {
+        Pattern pattern = getPattern(null, CommandType.POSITION_REPORT_REGEX);
+        if (pattern == null) {
             return false;
         }
 
-        if (!line.matches(getCommand(null, CommandType.POSITION_REPORT_REGEX))) {
+        Matcher matcher = pattern.matcher(line);
+        if (!matcher.matches()) {
             return false;
         }
 
-        Logger.trace("Position report: {}", line);
-        Matcher matcher =
-                Pattern.compile(getCommand(null, CommandType.POSITION_REPORT_REGEX)).matcher(line);
-        matcher.matches();
+        if (LogUtils.isTraceEnabled()) {
+            Logger.trace("Position report: {}", line);
+        }
         for (Axis axis : axes) {
             try {
                 String s = matcher.group(axis.getName());
@@ -1178,7 +1604,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
             return command;
         }
         StringBuffer sb = new StringBuffer();
-        Matcher matcher = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}").matcher(command);
+        Matcher matcher = VARIABLE_PATTERN.matcher(command);
         while (matcher.find()) {
             String n = matcher.group(1);
             if (!n.equals(name)) {
@@ -1204,7 +1630,7 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         if (command == null) {
             return false;
         }
-        Matcher matcher = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}").matcher(command);
+        Matcher matcher = VARIABLE_PATTERN.matcher(command);
         while (matcher.find()) {
             String n = matcher.group(1);
             if (!n.equals(name)) {
@@ -1391,6 +1817,30 @@ public class GcodeDriver extends AbstractReferenceDriver implements Named, Runna
         this.backslashEscapedCharactersEnabled = backslashEscapedCharactersEnabled;
     }
 
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+    }
+
+    public int getMaxUnacknowledgedCommands() {
+        return maxUnacknowledgedCommands;
+    }
+
+    public void setMaxUnacknowledgedCommands(int maxUnacknowledgedCommands) {
+        this.maxUnacknowledgedCommands = maxUnacknowledgedCommands;
+    }
+
+    public int getMaxUnacknowledgedCharacters() {
+        return maxUnacknowledgedCharacters;
+    }
+
+    public void setMaxUnacknowledgedCharacters(int maxUnacknowledgedCharacters) {
+        this.maxUnacknowledgedCharacters = maxUnacknowledgedCharacters;
+    }
+
     public static class Axis {
         public enum Type {
             X,
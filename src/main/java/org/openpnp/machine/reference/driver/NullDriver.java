@@ -21,6 +21,7 @@ package org.openpnp.machine.reference.driver;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.function.Predicate;
 
 import javax.swing.Action;
 import javax.swing.Icon;
@@ -45,6 +46,10 @@ import org.simpleframework.xml.Attribute;
  * An example of the simplest possible driver that can support multiple heads. This driver maintains
  * a set of coordinates for each Head that it is asked to handle and simply logs all commands sent
  * to it.
+ * 
+ * In virtual time mode the driver does not wait at all. Instead moves, dwells and vacuum checks
+ * advance a virtual clock by the time they would take on a real machine, which makes it possible
+ * to estimate the cycle time of a job faster than real time. See JobSimulator.
  */
 public class NullDriver implements ReferenceDriver {
 
@@ -52,6 +57,18 @@ public class NullDriver implements ReferenceDriver {
     @Attribute(required = false)
     private double feedRateMmPerMinute = 5000;
 
+    /**
+     * The acceleration used to calculate move times in virtual time mode. 0 means moves are
+     * done at the full feed rate from start to end.
+     */
+    @Attribute(required = false)
+    private double accelerationMmPerSecond2 = 0;
+
+    @Attribute(required = false)
+    private boolean virtualTime = false;
+
+    private double virtualTimeMilliseconds;
+
     private HashMap<Head, Location> headLocations = new HashMap<>();
 
     private boolean enabled;
@@ -115,7 +132,10 @@ public class NullDriver implements ReferenceDriver {
         // Get the current location of the Head that we'll move
         Location hl = getHeadLocation(hm.getHead());
 
-        if (feedRateMmPerMinute > 0) {
+        if (virtualTime) {
+            advanceVirtualTime(getMoveTimeMilliseconds(location, hl, speed));
+        }
+        else if (feedRateMmPerMinute > 0) {
             simulateMovement(hm, location, hl, speed);
         }
 
@@ -130,6 +150,52 @@ public class NullDriver implements ReferenceDriver {
                 Double.isNaN(location.getRotation()) ? null : location.getRotation());
 
         setHeadLocation(hm.getHead(), hl);
+
+        if (virtualTime) {
+            ((ReferenceMachine) Configuration.get().getMachine())
+                    .fireMachineHeadActivity(hm.getHead());
+        }
+    }
+
+    /**
+     * Calculates the time a move takes, with the XY, Z and C moves done at the same time. Each
+     * one accelerates to the feed rate, or as far as it gets, and decelerates to a stop. As in
+     * simulateMovement(), C moves ten times as fast as the linear axes.
+     * 
+     * @param location
+     * @param hl
+     * @param speed
+     * @return
+     */
+    protected double getMoveTimeMilliseconds(Location location, Location hl, double speed) {
+        double vx = Double.isNaN(location.getX()) ? 0 : location.getX() - hl.getX();
+        double vy = Double.isNaN(location.getY()) ? 0 : location.getY() - hl.getY();
+        double vz = Double.isNaN(location.getZ()) ? 0 : location.getZ() - hl.getZ();
+        double vc = Double.isNaN(location.getRotation()) ? 0
+                : (location.getRotation() % 360.0) - hl.getRotation();
+
+        double feedRate = feedRateMmPerMinute * speed / 60.0;
+        double txy = getMoveTimeSeconds(Math.sqrt(vx * vx + vy * vy), feedRate,
+                accelerationMmPerSecond2);
+        double tz = getMoveTimeSeconds(Math.abs(vz), feedRate, accelerationMmPerSecond2);
+        double tc = getMoveTimeSeconds(Math.abs(vc), feedRate * 10, accelerationMmPerSecond2 * 10);
+        return Math.max(txy, Math.max(tz, tc)) * 1000.0;
+    }
+
+    private static double getMoveTimeSeconds(double distance, double feedRate,
+            double acceleration) {
+        if (distance <= 0 || feedRate <= 0) {
+            return 0;
+        }
+        if (acceleration <= 0) {
+            return distance / feedRate;
+        }
+        if (distance >= feedRate * feedRate / acceleration) {
+            // trapezoidal, reaches the feed rate
+            return distance / feedRate + feedRate / acceleration;
+        }
+        // triangular, turns around half way
+        return 2 * Math.sqrt(distance / acceleration);
     }
 
     /**
@@ -224,7 +290,7 @@ public class NullDriver implements ReferenceDriver {
     public void actuate(ReferenceActuator actuator, double value) throws Exception {
         Logger.debug("actuate({}, {})", actuator, value);
         checkEnabled();
-        if (feedRateMmPerMinute > 0) {
+        if (feedRateMmPerMinute > 0 && !virtualTime) {
             Thread.sleep(500);
         }
     }
@@ -233,7 +299,7 @@ public class NullDriver implements ReferenceDriver {
     public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
         Logger.debug("actuate({}, {})", actuator, on);
         checkEnabled();
-        if (feedRateMmPerMinute > 0) {
+        if (feedRateMmPerMinute > 0 && !virtualTime) {
             Thread.sleep(500);
         }
     }
@@ -242,7 +308,7 @@ public class NullDriver implements ReferenceDriver {
     public void actuate(ReferenceActuator actuator, String value) throws Exception {
         Logger.debug("actuate({}, {})", actuator, value);
         checkEnabled();
-        if (feedRateMmPerMinute > 0) {
+        if (feedRateMmPerMinute > 0 && !virtualTime) {
             Thread.sleep(500);
         }
     }
@@ -252,6 +318,39 @@ public class NullDriver implements ReferenceDriver {
         return Math.random() + "";
     }
 
+    /**
+     * In virtual time mode a single value is read, and if it doesn't satisfy the condition the
+     * whole time is accounted for, as if the condition never held.
+     */
+    @Override
+    public String actuatorReadUntil(ReferenceActuator actuator, long milliseconds,
+            Predicate<String> condition) throws Exception {
+        if (!virtualTime) {
+            return ReferenceDriver.super.actuatorReadUntil(actuator, milliseconds, condition);
+        }
+        String value = actuatorRead(actuator);
+        if (!condition.test(value)) {
+            advanceVirtualTime(milliseconds);
+        }
+        return value;
+    }
+
+    @Override
+    public void dwell(long milliseconds) throws Exception {
+        if (virtualTime) {
+            advanceVirtualTime(milliseconds);
+        }
+        else {
+            ReferenceDriver.super.dwell(milliseconds);
+        }
+    }
+
+    protected void advanceVirtualTime(double milliseconds) {
+        if (milliseconds > 0) {
+            virtualTimeMilliseconds += milliseconds;
+        }
+    }
+
     @Override
     public void setEnabled(boolean enabled) throws Exception {
         Logger.debug("setEnabled({})", enabled);
@@ -302,6 +401,31 @@ public class NullDriver implements ReferenceDriver {
         this.feedRateMmPerMinute = feedRateMmPerMinute;
     }
 
+    public double getAccelerationMmPerSecond2() {
+        return accelerationMmPerSecond2;
+    }
+
+    public void setAccelerationMmPerSecond2(double accelerationMmPerSecond2) {
+        this.accelerationMmPerSecond2 = accelerationMmPerSecond2;
+    }
+
+    @Override
+    public boolean isVirtualTime() {
+        return virtualTime;
+    }
+
+    public void setVirtualTime(boolean virtualTime) {
+        this.virtualTime = virtualTime;
+    }
+
+    /**
+     * @return The time the machine operations took in virtual time mode, in milliseconds since
+     *         the driver was created.
+     */
+    public double getVirtualTimeMilliseconds() {
+        return virtualTimeMilliseconds;
+    }
+
     @Override
     public void close() throws IOException {
 
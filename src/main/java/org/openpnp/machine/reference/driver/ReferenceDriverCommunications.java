@@ -20,6 +20,11 @@
 package org.openpnp.machine.reference.driver;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 
 import org.simpleframework.xml.Attribute;
@@ -29,6 +34,11 @@ import org.simpleframework.xml.Attribute;
  *
  * This Driver interface is intended to model the minimum required functions to transfer
  * data from OpenPnP to a hardware controller.
+ * 
+ * Reading is buffered: implementations only provide readAvailable(), which transfers whatever
+ * bytes the transport has ready in one call, and lines and single bytes are then served from a
+ * reusable receive buffer. Writing goes through writeBytes(), so a line and its line ending, or
+ * several lines, are sent in a single write.
  */
 public abstract class ReferenceDriverCommunications {
     public enum LineEndingType {
@@ -50,16 +60,171 @@ public abstract class ReferenceDriverCommunications {
     @Attribute(required=false)
     protected LineEndingType lineEndingType = LineEndingType.LF;
 
+    /**
+     * Lines are transferred as single byte characters, as the controllers speak ASCII.
+     */
+    protected static final Charset charset = StandardCharsets.ISO_8859_1;
+
+    private final ByteBuffer receiveBuffer = (ByteBuffer) ByteBuffer.allocate(4096).limit(0);
+    private byte[] lineBuffer = new byte[256];
+    private int lineLength;
+    /**
+     * Guards the receive buffer. This is deliberately not the instance monitor, which
+     * implementations use for connect() and disconnect(): a reader blocked in readAvailable()
+     * must not keep disconnect() from closing the transport that would unblock it.
+     */
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+
     abstract public void connect() throws Exception;
     abstract public void disconnect() throws Exception;
 
     abstract public String getConnectionName();
 
-    abstract public String readLine() throws TimeoutException, IOException;
-    abstract public void writeLine(String data) throws IOException;
+    /**
+     * Read up to length bytes into buffer, starting at index 0. Blocks until at least one byte
+     * is available or the transport's timeout expires.
+     * 
+     * @return the number of bytes read, which is at least 1, or -1 if the connection was closed.
+     * @throws TimeoutException if no byte became available within the timeout.
+     * @throws IOException
+     */
+    abstract protected int readAvailable(byte[] buffer, int length) throws TimeoutException, IOException;
+
+    /**
+     * Write length bytes from data in as few transport writes as possible.
+     * 
+     * @throws IOException
+     */
+    abstract protected void writeBytes(byte[] data, int length) throws IOException;
+
+    /**
+     * Make sure the receive buffer has data, reading from the transport if it is empty.
+     * 
+     * @return false if the connection was closed.
+     */
+    private boolean fillReceiveBuffer() throws TimeoutException, IOException {
+        if (receiveBuffer.hasRemaining()) {
+            return true;
+        }
+        receiveBuffer.clear();
+        int l = readAvailable(receiveBuffer.array(), receiveBuffer.capacity());
+        if (l < 0) {
+            receiveBuffer.limit(0);
+            return false;
+        }
+        receiveBuffer.limit(l);
+        return true;
+    }
+
+    /**
+     * Drop any buffered data. Should be called by implementations when (re)connecting.
+     */
+    protected void clearReceiveBuffer() {
+        synchronized (readLock) {
+            receiveBuffer.clear();
+            receiveBuffer.limit(0);
+            lineLength = 0;
+        }
+    }
+
+    /**
+     * Read a line. Blocks for the default timeout. If the read times out a TimeoutException is
+     * thrown and any partially received line is kept for the next call. Any other failure to
+     * read results in an IOExeption.
+     * 
+     * @return the line without the line ending, or null if the connection was closed.
+     * @throws TimeoutException
+     * @throws IOException
+     */
+    public String readLine() throws TimeoutException, IOException {
+        synchronized (readLock) {
+            while (true) {
+                if (!fillReceiveBuffer()) {
+                    return null;
+                }
+                byte[] data = receiveBuffer.array();
+                int position = receiveBuffer.position();
+                int limit = receiveBuffer.limit();
+                for (int i = position; i < limit; i++) {
+                    byte b = data[i];
+                    if (b == '\n' || b == '\r') {
+                        if (lineLength > 0) {
+                            receiveBuffer.position(i + 1);
+                            String line = new String(lineBuffer, 0, lineLength, charset);
+                            lineLength = 0;
+                            return line;
+                        }
+                    }
+                    else {
+                        if (lineLength == lineBuffer.length) {
+                            lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+                        }
+                        lineBuffer[lineLength++] = b;
+                    }
+                }
+                receiveBuffer.position(limit);
+            }
+        }
+    }
+
+    /**
+     * Read a single byte. Blocks for the default timeout.
+     * 
+     * @return the byte as an unsigned value, or -1 if the connection was closed.
+     * @throws TimeoutException
+     * @throws IOException
+     */
+    public int read() throws TimeoutException, IOException {
+        synchronized (readLock) {
+            if (!fillReceiveBuffer()) {
+                return -1;
+            }
+            return receiveBuffer.get() & 0xff;
+        }
+    }
+
+    public void writeLine(String data) throws IOException {
+        byte[] b = (data + getLineEndingType().getLineEnding()).getBytes(charset);
+        synchronized (writeLock) {
+            writeBytes(b, b.length);
+        }
+    }
+
+    /**
+     * Write several lines in a single write, each followed by the line ending.
+     * 
+     * @throws IOException
+     */
+    public void writeLines(List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line);
+            sb.append(getLineEndingType().getLineEnding());
+        }
+        byte[] b = sb.toString().getBytes(charset);
+        synchronized (writeLock) {
+            writeBytes(b, b.length);
+        }
+    }
 
-    abstract public int read() throws TimeoutException, IOException;
-    abstract public void write(int d) throws IOException;
+    public void write(int d) throws IOException {
+        byte[] b = new byte[] { (byte) d };
+        synchronized (writeLock) {
+            writeBytes(b, 1);
+        }
+    }
+
+    /**
+     * Write binary data in a single write.
+     * 
+     * @throws IOException
+     */
+    public void write(byte[] data) throws IOException {
+        synchronized (writeLock) {
+            writeBytes(data, data.length);
+        }
+    }
     
     public void setLineEndingType(LineEndingType lineEndingType) {
         this.lineEndingType = lineEndingType;
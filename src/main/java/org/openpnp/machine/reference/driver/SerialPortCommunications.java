@@ -111,6 +111,7 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         }
         serialPort.setComPortTimeouts(
                 SerialPort.TIMEOUT_READ_SEMI_BLOCKING | SerialPort.TIMEOUT_WRITE_BLOCKING, 500, 0);
+        clearReceiveBuffer();
     }
 
     public synchronized void disconnect() throws Exception {
@@ -136,58 +137,21 @@ public class SerialPortCommunications extends ReferenceDriverCommunications {
         return portNames.toArray(new String[] {});
     }
 
-    /**
-     * Read a line from the serial port. Blocks for the default timeout. If the read times out a
-     * TimeoutException is thrown. Any other failure to read results in an IOExeption;
-     * 
-     * @return
-     * @throws TimeoutException
-     * @throws IOException
-     */
-    public String readLine() throws TimeoutException, IOException {
-        StringBuffer line = new StringBuffer();
-        while (true) {
-            int ch = read();
-            if (ch == '\n' || ch == '\r') {
-                if (line.length() > 0) {
-                    return line.toString();
-                }
-            }
-            else {
-                line.append((char) ch);
-            }
-        }
-    }
-
-    public void writeLine(String data) throws IOException
-    {
-        byte[] b = data.getBytes();
-        int l = serialPort.writeBytes(b, b.length);
-        if (l == -1) {
-            throw new IOException("Write error.");
-        }
-        b = getLineEndingType().getLineEnding().getBytes();
-        l = serialPort.writeBytes(b, b.length);
-        if (l == -1) {
-            throw new IOException("Write error.");
-        }
-    }
-
-    public int read() throws TimeoutException, IOException {
-        byte[] b = new byte[1];
-        int l = serialPort.readBytes(b, 1);
+    protected int readAvailable(byte[] buffer, int length) throws TimeoutException, IOException {
+        // In semi-blocking mode this returns as soon as any bytes are available, with as many
+        // of them as fit, so a whole burst of responses is taken in one native call.
+        int l = serialPort.readBytes(buffer, length);
         if (l == -1) {
             throw new IOException("Read error.");
         }
         if (l == 0) {
             throw new TimeoutException("Read timeout.");
         }
-        return b[0];
+        return l;
     }
-    
-    public void write(int d) throws IOException {
-        byte[] b = new byte[] { (byte) d };
-        int l = serialPort.writeBytes(b, 1);
+
+    protected void writeBytes(byte[] data, int length) throws IOException {
+        int l = serialPort.writeBytes(data, length);
         if (l == -1) {
             throw new IOException("Write error.");
         }
@@ -1,9 +1,8 @@
 package org.openpnp.machine.reference.driver;
 
-import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.concurrent.TimeoutException;
@@ -27,14 +26,15 @@ public class TcpCommunications extends ReferenceDriverCommunications {
 
 
     protected Socket clientSocket;
-    protected BufferedReader input;
+    protected InputStream input;
     protected DataOutputStream output;
 
     public synchronized void connect() throws Exception {
         disconnect();
         clientSocket = new Socket(ipAddress,port);
-        input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        input = clientSocket.getInputStream();
         output = new DataOutputStream(clientSocket.getOutputStream());
+        clearReceiveBuffer();
     }
 
     public synchronized void disconnect() throws Exception {
@@ -50,54 +50,12 @@ public class TcpCommunications extends ReferenceDriverCommunications {
         return "tcp://" + ipAddress + ":" + port;
     }
 
-    /**
-     * Read a line from the socket. Blocks for the default timeout. If the read times out a
-     * TimeoutException is thrown. Any other failure to read results in an IOExeption;
-     * 
-     * @return
-     * @throws TimeoutException
-     * @throws IOException
-     */
-    public String readLine() throws TimeoutException, IOException {
-        StringBuffer line = new StringBuffer();
-        while (true) {
-            try {
-                int ch = input.read();
-                if (ch == -1) {
-                    return null;
-                }
-                else if (ch == '\n' || ch == '\r') {
-                    if (line.length() > 0) {
-                        return line.toString();
-                    }
-                }
-                else {
-                    line.append((char) ch);
-                }
-            }
-            catch (IOException ex) {
-                if (ex.getCause() instanceof SocketTimeoutException) {
-                    throw new TimeoutException(ex.getMessage());
-                }
-                throw ex;
-            }
-        }
-    }
-
-    public void writeLine(String data) throws IOException
-    {
+    protected int readAvailable(byte[] buffer, int length) throws TimeoutException, IOException {
         try {
-            output.write(data.getBytes());
-            output.write(getLineEndingType().getLineEnding().getBytes());
+            return input.read(buffer, 0, length);
         }
-        catch (IOException ex) {
-            throw ex;
-        }
-    }
-    
-    public int read() throws TimeoutException, IOException {
-        try {
-            return input.read();
+        catch (SocketTimeoutException ex) {
+            throw new TimeoutException(ex.getMessage());
         }
         catch (IOException ex) {
             if (ex.getCause() instanceof SocketTimeoutException) {
@@ -106,9 +64,10 @@ public class TcpCommunications extends ReferenceDriverCommunications {
             throw ex;
         }
     }
-    
-    public void write(int d) throws IOException {
-        output.write(d);
+
+    protected void writeBytes(byte[] data, int length) throws IOException {
+        output.write(data, 0, length);
+        output.flush();
     }
 
     public String getIpAddress() {
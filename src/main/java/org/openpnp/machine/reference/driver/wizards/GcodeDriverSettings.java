@@ -76,6 +76,10 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
         
         JLabel lblUnits = new JLabel("Units");
@@ -173,6 +177,29 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
                 + "where xxxx is four hexidecimal characters.  Also permits \\t for tab, \\b for backspace, \\n for line "
                 + "feed, \\r for carriage return, and \\f for form feed.");
         settingsPanel.add(backslashEscapedCharacters, "4, 14");
+        
+        JLabel lblStreaming = new JLabel("Streaming");
+        lblStreaming.setToolTipText("Send moves and actuator commands without waiting for each acknowledgement. "
+                + "Commands that need a response still wait for all streamed commands to be acknowledged.");
+        settingsPanel.add(lblStreaming, "6, 14, right, default");
+        
+        streaming = new JCheckBox("");
+        settingsPanel.add(streaming, "8, 14");
+        
+        JLabel lblMaxUnacknowledgedCommands = new JLabel("Max. Unacknowledged Commands");
+        settingsPanel.add(lblMaxUnacknowledgedCommands, "2, 16, right, default");
+        
+        maxUnacknowledgedCommandsTf = new JTextField();
+        settingsPanel.add(maxUnacknowledgedCommandsTf, "4, 16, fill, default");
+        maxUnacknowledgedCommandsTf.setColumns(5);
+        
+        JLabel lblMaxUnacknowledgedCharacters = new JLabel("Max. Unacknowledged Characters");
+        lblMaxUnacknowledgedCharacters.setToolTipText("Size of the controller's receive buffer, e.g. 128 on GRBL. 0 disables the limit.");
+        settingsPanel.add(lblMaxUnacknowledgedCharacters, "6, 16, right, default");
+        
+        maxUnacknowledgedCharactersTf = new JTextField();
+        settingsPanel.add(maxUnacknowledgedCharactersTf, "8, 16, fill, default");
+        maxUnacknowledgedCharactersTf.setColumns(5);
     }
 
     @Override
@@ -195,6 +222,9 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         addWrappedBinding(driver, "name", driverName, "text");
         addWrappedBinding(driver, "visualHomingEnabled", visualHoming, "selected");
         addWrappedBinding(driver, "backslashEscapedCharactersEnabled", backslashEscapedCharacters, "selected");
+        addWrappedBinding(driver, "streamingEnabled", streaming, "selected");
+        addWrappedBinding(driver, "maxUnacknowledgedCommands", maxUnacknowledgedCommandsTf, "text", intConverter);
+        addWrappedBinding(driver, "maxUnacknowledgedCharacters", maxUnacknowledgedCharactersTf, "text", intConverter);
         
         ComponentDecorators.decorateWithAutoSelect(maxFeedRateTf);
         ComponentDecorators.decorateWithAutoSelect(backlashOffsetXTf);
@@ -206,6 +236,8 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         ComponentDecorators.decorateWithAutoSelect(commandTimeoutTf);
         ComponentDecorators.decorateWithAutoSelect(connectWaitTimeTf);
         ComponentDecorators.decorateWithAutoSelect(driverName);
+        ComponentDecorators.decorateWithAutoSelect(maxUnacknowledgedCommandsTf);
+        ComponentDecorators.decorateWithAutoSelect(maxUnacknowledgedCharactersTf);
     }
 
     public final Action exportProfileAction = new AbstractAction() {
@@ -347,6 +379,9 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
     private JTextField driverName;
     private JCheckBox visualHoming;
     private JCheckBox backslashEscapedCharacters;
+    private JCheckBox streaming;
+    private JTextField maxUnacknowledgedCommandsTf;
+    private JTextField maxUnacknowledgedCharactersTf;
 
     static class HeadMountableItem {
         private HeadMountable hm;
@@ -1,20 +1,36 @@
 package org.openpnp.machine.reference.vision;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.swing.Action;
 import javax.swing.Icon;
 
 import org.apache.commons.io.IOUtils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.ReferenceDriver;
+import org.openpnp.machine.reference.ReferenceHeadMountable;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.driver.GcodeDriver;
+import org.openpnp.machine.reference.driver.GcodeDriver.Axis;
 import org.openpnp.machine.reference.vision.wizards.ReferenceBottomVisionConfigurationWizard;
 import org.openpnp.machine.reference.vision.wizards.ReferenceBottomVisionPartConfigurationWizard;
 import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
 import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
@@ -27,8 +43,11 @@ import org.openpnp.util.MovableUtils;
 import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
+import org.openpnp.vision.VisionWorkerPool;
 import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvStage;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.ImageCapture;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -57,6 +76,9 @@ public class ReferenceBottomVision implements PartAlignment {
     @Attribute(required = false)
     protected double maxAngularOffset = 10;
 
+    @Attribute(required = false)
+    protected boolean batchAlignment = false;
+
     @ElementMap(required = false)
     protected Map<String, PartSettings> partSettingsByPartId = new HashMap<>();
 
@@ -69,17 +91,11 @@ public class ReferenceBottomVision implements PartAlignment {
             return new PartAlignmentOffset(new Location(LengthUnit.Millimeters), false);
         }
 
-        if (part == null || nozzle.getPart() == null) {
-            throw new Exception("No part on nozzle.");
-        }
-        if (part != nozzle.getPart()) {
-            throw new Exception("Part mismatch with part on nozzle.");
-        }
+        checkPartOnNozzle(part, nozzle);
 
         Camera camera = VisionUtils.getBottomVisionCamera();
 
-        if ((partSettings.getPreRotateUsage() == PreRotateUsage.Default && preRotate)
-                || (partSettings.getPreRotateUsage() == PreRotateUsage.AlwaysOn)) {
+        if (isPreRotate(partSettings)) {
             return findOffsetsPreRotate(part, boardLocation, placementLocation, nozzle, camera,
                     partSettings);
         }
@@ -88,6 +104,71 @@ public class ReferenceBottomVision implements PartAlignment {
                     partSettings);
         }
     }
+
+    /**
+     * Like {@link #findOffsets(Part, BoardLocation, Location, Nozzle)}, but returns as soon as
+     * the image has been captured and runs the pipeline on the {@link VisionWorkerPool}, so the
+     * machine can move on while it is processed. Pre-rotate alignment needs each result for its
+     * next move, and a pipeline that averages several captures can't work from one image; both
+     * of these are done before returning.
+     */
+    public Future<PartAlignmentOffset> findOffsetsAsync(Part part, BoardLocation boardLocation,
+            Location placementLocation, Nozzle nozzle) throws Exception {
+        PartSettings partSettings = getPartSettings(part);
+        ImageCapture imageCapture = getSingleImageCapture(partSettings.getPipeline());
+        if (!isEnabled() || !partSettings.isEnabled() || isPreRotate(partSettings)
+                || imageCapture == null) {
+            return VisionWorkerPool
+                    .completed(findOffsets(part, boardLocation, placementLocation, nozzle));
+        }
+
+        checkPartOnNozzle(part, nozzle);
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        MovableUtils.moveToLocationAtSafeZ(nozzle,
+                getCameraLocationAtPartHeight(part, camera, nozzle, 0.));
+        Mat image = OpenCvUtils.toMat(
+                imageCapture.isSettleFirst() ? camera.settleAndCapture() : camera.capture());
+
+        // The part settings may be shared, and changed while the copy runs.
+        CvPipeline pipeline = partSettings.getPipeline().clone();
+        pipeline.setProperty("ImageCapture.image", image);
+        return VisionWorkerPool.submit(() -> {
+            try {
+                return getPostRotateOffsets(pipeline, camera, part, nozzle, partSettings);
+            }
+            finally {
+                pipeline.close();
+                image.release();
+            }
+        });
+    }
+
+    private static void checkPartOnNozzle(Part part, Nozzle nozzle) throws Exception {
+        if (part == null || nozzle.getPart() == null) {
+            throw new Exception("No part on nozzle.");
+        }
+        if (part != nozzle.getPart()) {
+            throw new Exception("Part mismatch with part on nozzle.");
+        }
+    }
+
+    /**
+     * Returns the pipeline's only enabled ImageCapture stage, or null if it has none, several,
+     * or one that averages several images.
+     */
+    private static ImageCapture getSingleImageCapture(CvPipeline pipeline) {
+        ImageCapture imageCapture = null;
+        for (CvStage stage : pipeline.getStages()) {
+            if (stage instanceof ImageCapture && stage.isEnabled()) {
+                if (imageCapture != null || ((ImageCapture) stage).getCount() > 1) {
+                    return null;
+                }
+                imageCapture = (ImageCapture) stage;
+            }
+        }
+        return imageCapture;
+    }
     
     public Location getCameraLocationAtPartHeight(Part part, Camera camera, Nozzle nozzle, double angle) {
         return camera.getLocation(nozzle)
@@ -200,35 +281,277 @@ public class ReferenceBottomVision implements PartAlignment {
         MovableUtils.moveToLocationAtSafeZ(nozzle, wantedLocation);
 
         try (CvPipeline pipeline = partSettings.getPipeline()) {
-            RotatedRect rect = processPipelineAndGetResult(pipeline, camera, part, nozzle);
-            camera=(Camera)pipeline.getProperty("camera");
-
-            Logger.debug("Bottom vision part {} result rect {}", part.getId(), rect);
-
-            // Create the offsets object. This is the physical distance from
-            // the center of the camera to the located part.
-            Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
-
-            double angleOffset = VisionUtils.getPixelAngle(camera, rect.angle);
-            // Most OpenCV Pipelines can only tell us the angle of the recognized rectangle in a   
-            // wrapping-around range of 0° .. 90° as it has no notion of which rectangle side 
-            // is which. We can assume that the part is never picked more than +/-45º rotated.
-            // So we change the range wrapping-around to -45° .. +45°. See angleNorm():
-            if (partSettings.getMaxRotation() == MaxRotation.Adjust ) {
-                angleOffset = angleNorm(angleOffset);
-            } else {
-                // turning more than 180° in one direction makes no sense
-                angleOffset = angleNorm(angleOffset, 180);
+            return getPostRotateOffsets(pipeline, camera, part, nozzle, partSettings);
+        }
+    }
+
+    /**
+     * Run the pipeline on the part as it is over the camera and return its offsets, for
+     * post-rotate alignment.
+     */
+    private static PartAlignmentOffset getPostRotateOffsets(CvPipeline pipeline, Camera camera,
+            Part part, Nozzle nozzle, PartSettings partSettings) throws Exception {
+        RotatedRect rect = processPipelineAndGetResult(pipeline, camera, part, nozzle);
+        camera=(Camera)pipeline.getProperty("camera");
+
+        Logger.debug("Bottom vision part {} result rect {}", part.getId(), rect);
+
+        // Create the offsets object. This is the physical distance from
+        // the center of the camera to the located part.
+        Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
+
+        double angleOffset = VisionUtils.getPixelAngle(camera, rect.angle);
+        // Most OpenCV Pipelines can only tell us the angle of the recognized rectangle in a   
+        // wrapping-around range of 0° .. 90° as it has no notion of which rectangle side 
+        // is which. We can assume that the part is never picked more than +/-45º rotated.
+        // So we change the range wrapping-around to -45° .. +45°. See angleNorm():
+        if (partSettings.getMaxRotation() == MaxRotation.Adjust ) {
+            angleOffset = angleNorm(angleOffset);
+        } else {
+            // turning more than 180° in one direction makes no sense
+            angleOffset = angleNorm(angleOffset, 180);
+        }
+
+        // Set the angle on the offsets.
+        offsets = offsets.derive(null, null, null, angleOffset);
+        Logger.debug("Final offsets {}", offsets);
+
+        displayResult(pipeline, part, offsets, camera);
+
+        return new PartAlignmentOffset(offsets, false);
+    }
+
+    /**
+     * Returns true if the parts on the given nozzles can be aligned together from one camera
+     * frame using {@link #findOffsets(List)}. This needs batch alignment to be turned on, at least
+     * two nozzles, post-rotate alignment for every part, and all nozzles to fit in the camera
+     * view at once, each with room for its part. Nozzles that share a Z axis, e.g. see-saw
+     * nozzles, can't be lowered to their part heights at the same time.
+     */
+    public boolean canAlignTogether(List<Nozzle> nozzles) {
+        if (!isEnabled() || !isBatchAlignment() || nozzles.size() < 2 || sharesZAxis(nozzles)) {
+            return false;
+        }
+        for (Nozzle nozzle : nozzles) {
+            Part part = nozzle.getPart();
+            if (part == null || !(nozzle instanceof ReferenceHeadMountable)) {
+                return false;
             }
+            PartSettings partSettings = getPartSettings(part);
+            if (!partSettings.isEnabled() || isPreRotate(partSettings)) {
+                return false;
+            }
+        }
+        try {
+            return getBatchPixelOffsets(VisionUtils.getBottomVisionCamera(), nozzles) != null;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
 
-            // Set the angle on the offsets.
-            offsets = offsets.derive(null, null, null, angleOffset);
-            Logger.debug("Final offsets {}", offsets);
+    /**
+     * Align the parts on all the given nozzles from a single camera frame. The head is moved so
+     * that the nozzles are centered around the camera, and each nozzle is lowered to its part's
+     * height. One frame is captured and, for each nozzle, shifted so that the nozzle is in the
+     * center and masked to the region around it. The part pipelines then run concurrently on
+     * these images, so they see the same geometry as when the nozzle is aligned on its own.
+     * 
+     * Only use this when {@link #canAlignTogether(List)} returns true.
+     * 
+     * @return The offsets by nozzle. Nozzles where the part could not be found are left out so
+     *         that the caller can align them one at a time.
+     */
+    public Map<Nozzle, PartAlignmentOffset> findOffsets(List<Nozzle> nozzles) throws Exception {
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        Map<Nozzle, Point> pixelOffsets = getBatchPixelOffsets(camera, nozzles);
+        if (pixelOffsets == null) {
+            throw new Exception("The nozzles don't fit in the bottom camera view together.");
+        }
 
-            displayResult(pipeline, part, offsets, camera);
+        // Move the first nozzle such that the center of all nozzles is over the camera, then
+        // bring the others down to their part height where they are.
+        Nozzle first = nozzles.get(0);
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        Point firstOffset = pixelOffsets.get(first);
+        Location shift = new Location(unitsPerPixel.getUnits(),
+                firstOffset.x * unitsPerPixel.getX(), -firstOffset.y * unitsPerPixel.getY(), 0, 0);
+        Map<Nozzle, Location> partHeights = new HashMap<>();
+        Location firstLocation =
+                getCameraLocationAtPartHeight(first.getPart(), camera, first, 0.).add(shift);
+        partHeights.put(first, firstLocation);
+        MovableUtils.moveToLocationAtSafeZ(first, firstLocation);
+        for (Nozzle nozzle : nozzles) {
+            if (nozzle != first) {
+                Location location = getCameraLocationAtPartHeight(nozzle.getPart(), camera, nozzle, 0.);
+                partHeights.put(nozzle, location);
+                nozzle.moveTo(nozzle.getLocation()
+                        .convertToUnits(location.getUnits())
+                        .derive(null, null, location.getZ(), 0.));
+            }
+        }
+        // Lowering a nozzle may have moved another one that shares its Z axis in a way the
+        // driver configuration does not show. Its part would be imaged at the wrong height.
+        for (Nozzle nozzle : nozzles) {
+            Location location = partHeights.get(nozzle);
+            double z = nozzle.getLocation().convertToUnits(location.getUnits()).getZ();
+            if (Math.abs(z - location.getZ()) > new Length(0.01, LengthUnit.Millimeters)
+                    .convertToUnits(location.getUnits()).getValue()) {
+                throw new Exception(String.format(
+                        "Nozzle %s is not at its part height after lowering the other nozzles.",
+                        nozzle.getName()));
+            }
+        }
+
+        Mat frame = OpenCvUtils.toMat(camera.settleAndCapture());
+        Map<Nozzle, Future<PartAlignmentOffset>> futures = new LinkedHashMap<>();
+        Map<Nozzle, CvPipeline> pipelines = new HashMap<>();
+        try {
+            double radius = getBatchRegionRadius(pixelOffsets);
+            for (Nozzle nozzle : nozzles) {
+                // Use where the nozzle actually is, which includes any runout compensation.
+                Location offset = nozzle.getLocation().subtract(camera.getLocation(nozzle))
+                        .convertToUnits(unitsPerPixel.getUnits());
+                Point center = new Point(frame.cols() / 2. + offset.getX() / unitsPerPixel.getX(),
+                        frame.rows() / 2. - offset.getY() / unitsPerPixel.getY());
+                Mat region = centerRegion(frame, center, radius);
+                // Parts may share settings, so each nozzle gets its own copy of the pipeline.
+                PartSettings partSettings = getPartSettings(nozzle.getPart());
+                CvPipeline pipeline = partSettings.getPipeline().clone();
+                pipeline.setProperty("ImageCapture.image", region);
+                pipelines.put(nozzle, pipeline);
+                futures.put(nozzle, VisionWorkerPool.submit(() -> {
+                    try {
+                        return getPostRotateOffsets(pipeline, camera, nozzle.getPart(), nozzle,
+                                partSettings);
+                    }
+                    finally {
+                        region.release();
+                    }
+                }));
+            }
+
+            Map<Nozzle, PartAlignmentOffset> results = new LinkedHashMap<>();
+            for (Nozzle nozzle : nozzles) {
+                try {
+                    results.put(nozzle, futures.get(nozzle).get());
+                }
+                catch (Exception e) {
+                    Logger.debug("Batch bottom vision failed for part {} on {}: {}",
+                            nozzle.getPart().getId(), nozzle.getName(),
+                            e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            return results;
+        }
+        finally {
+            for (Nozzle nozzle : futures.keySet()) {
+                try {
+                    futures.get(nozzle).get();
+                }
+                catch (Exception e) {
+                    // Already reported above, only waiting so the pipeline can be closed.
+                }
+            }
+            for (CvPipeline pipeline : pipelines.values()) {
+                pipeline.close();
+            }
+            frame.release();
+        }
+    }
 
-            return new PartAlignmentOffset(offsets, false);
+    private static boolean sharesZAxis(List<Nozzle> nozzles) {
+        ReferenceDriver driver =
+                ((ReferenceMachine) Configuration.get().getMachine()).getDriver();
+        if (!(driver instanceof GcodeDriver)) {
+            return false;
+        }
+        Set<Axis> zAxes = new HashSet<>();
+        for (Nozzle nozzle : nozzles) {
+            Axis zAxis = ((GcodeDriver) driver).getEffectiveAxis(nozzle, Axis.Type.Z);
+            if (zAxis != null && !zAxes.add(zAxis)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPreRotate(PartSettings partSettings) {
+        return (partSettings.getPreRotateUsage() == PreRotateUsage.Default && preRotate)
+                || (partSettings.getPreRotateUsage() == PreRotateUsage.AlwaysOn);
+    }
+
+    /**
+     * Work out where each nozzle appears in the camera image, in pixels from the image center,
+     * when the head is centered over the camera. Returns null if any nozzle, together with the
+     * region around it, does not fit in the image.
+     */
+    private static Map<Nozzle, Point> getBatchPixelOffsets(Camera camera, List<Nozzle> nozzles) {
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        double centerX = 0;
+        double centerY = 0;
+        for (Nozzle nozzle : nozzles) {
+            Location headOffsets = ((ReferenceHeadMountable) nozzle).getHeadOffsets()
+                    .convertToUnits(unitsPerPixel.getUnits());
+            centerX += headOffsets.getX() / nozzles.size();
+            centerY += headOffsets.getY() / nozzles.size();
         }
+        Map<Nozzle, Point> pixelOffsets = new LinkedHashMap<>();
+        for (Nozzle nozzle : nozzles) {
+            Location headOffsets = ((ReferenceHeadMountable) nozzle).getHeadOffsets()
+                    .convertToUnits(unitsPerPixel.getUnits());
+            pixelOffsets.put(nozzle, new Point((headOffsets.getX() - centerX) / unitsPerPixel.getX(),
+                    -(headOffsets.getY() - centerY) / unitsPerPixel.getY()));
+        }
+        double radius = getBatchRegionRadius(pixelOffsets);
+        if (radius < 16) {
+            return null;
+        }
+        for (Point offset : pixelOffsets.values()) {
+            if (Math.abs(offset.x) + radius > camera.getWidth() / 2.
+                    || Math.abs(offset.y) + radius > camera.getHeight() / 2.) {
+                return null;
+            }
+        }
+        return pixelOffsets;
+    }
+
+    /**
+     * Each nozzle gets the circular region that reaches half way to its nearest neighbor, so
+     * that no part shows up in another nozzle's region.
+     */
+    private static double getBatchRegionRadius(Map<Nozzle, Point> pixelOffsets) {
+        double radius = Double.POSITIVE_INFINITY;
+        List<Point> points = new ArrayList<>(pixelOffsets.values());
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = i + 1; j < points.size(); j++) {
+                double dx = points.get(i).x - points.get(j).x;
+                double dy = points.get(i).y - points.get(j).y;
+                radius = Math.min(radius, Math.sqrt(dx * dx + dy * dy) / 2);
+            }
+        }
+        return radius;
+    }
+
+    /**
+     * Create an image of the same size as the frame with the given point shifted to the center
+     * and everything further than radius from it blacked out.
+     */
+    private static Mat centerRegion(Mat frame, Point center, double radius) {
+        Mat transform = new Mat(2, 3, CvType.CV_64F);
+        transform.put(0, 0, 1, 0, frame.cols() / 2. - center.x, 0, 1, frame.rows() / 2. - center.y);
+        Mat shifted = new Mat();
+        Imgproc.warpAffine(frame, shifted, transform, frame.size());
+        transform.release();
+
+        Mat mask = Mat.zeros(frame.size(), CvType.CV_8UC1);
+        Imgproc.circle(mask, new Point(frame.cols() / 2., frame.rows() / 2.), (int) radius,
+                new Scalar(255), -1);
+        Mat region = Mat.zeros(frame.size(), frame.type());
+        shifted.copyTo(region, mask);
+        shifted.release();
+        mask.release();
+        return region;
     }
 
     private static void displayResult(CvPipeline pipeline, Part part, Location offsets, Camera camera) {
@@ -367,6 +690,14 @@ public class ReferenceBottomVision implements PartAlignment {
         this.maxLinearOffset = maxLinearOffset;
     }
 
+    public boolean isBatchAlignment() {
+        return batchAlignment;
+    }
+
+    public void setBatchAlignment(boolean batchAlignment) {
+        this.batchAlignment = batchAlignment;
+    }
+
     public double getMaxAngularOffset() {
         return maxAngularOffset;
     }
@@ -455,10 +455,9 @@ public class ReferenceFiducialLocator implements FiducialLocator {
     private static IdentifiableList<Placement> getFiducials(BoardLocation boardLocation) {
         Board board = boardLocation.getBoard();
         IdentifiableList<Placement> fiducials = new IdentifiableList<>();
-        for (Placement placement : board.getPlacements()) {
-            if (placement.getType() == Type.Fiducial
-                    && placement.getSide() == boardLocation.getSide()
-                    && placement.isEnabled()) {
+        for (Placement placement : board.getPlacementIndex()
+                .getPlacements(boardLocation.getSide(), Type.Fiducial)) {
+            if (placement.isEnabled()) {
                 fiducials.add(placement);
             }
         }
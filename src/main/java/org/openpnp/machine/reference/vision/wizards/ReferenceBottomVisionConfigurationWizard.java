@@ -39,6 +39,7 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
     private final ReferenceBottomVision bottomVision;
     private JCheckBox enabledCheckbox;
     private JCheckBox preRotCheckbox;
+    private JCheckBox batchAlignmentCheckbox;
     private JTextField textFieldMaxVisionPasses;
     private JTextField textFieldMaxLinearOffset;
     private JTextField textFieldMaxAngularOffset;
@@ -70,6 +71,8 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblEnabled = new JLabel("Enabled?");
@@ -155,6 +158,13 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
         panel.add(textFieldMaxAngularOffset, "8, 10, fill, default");
         textFieldMaxAngularOffset.setColumns(10);
 
+        JLabel lblBatchAlignment = new JLabel("Align nozzles together?");
+        lblBatchAlignment.setToolTipText("<html>Align the parts on all nozzles from one camera image when they fit in the<br/>camera view together. Not used for nozzles that share a Z axis or for<br/>pre-rotated parts.</html>");
+        panel.add(lblBatchAlignment, "2, 12");
+
+        batchAlignmentCheckbox = new JCheckBox("");
+        panel.add(batchAlignmentCheckbox, "4, 12");
+
         preRotCheckbox.addActionListener(new ActionListener()
         {
             @Override
@@ -193,6 +203,7 @@ public class ReferenceBottomVisionConfigurationWizard extends AbstractConfigurat
     public void createBindings() {
         addWrappedBinding(bottomVision, "enabled", enabledCheckbox, "selected");
         addWrappedBinding(bottomVision, "preRotate", preRotCheckbox, "selected");
+        addWrappedBinding(bottomVision, "batchAlignment", batchAlignmentCheckbox, "selected");
         
         LengthConverter lengthConverter = new LengthConverter();
         IntegerConverter intConverter = new IntegerConverter();
@@ -24,8 +24,13 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -65,6 +70,24 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
     private transient File file;
     private transient boolean dirty;
 
+    /**
+     * Built on demand from the current placements and rebuilt once they have changed.
+     */
+    private transient volatile PlacementIndex placementIndex;
+
+    /**
+     * Counts the changes of the placements. It is incremented after each change, so an index
+     * built after reading the count can only be older than it claims, which just causes a
+     * rebuild.
+     */
+    private final transient AtomicLong placementsVersion = new AtomicLong();
+
+    /**
+     * The Placement properties the PlacementIndex depends on.
+     */
+    private static final Set<String> indexedProperties =
+            new HashSet<>(Arrays.asList("part", "side", "type", "location"));
+
     public Board() {
         this(null);
     }
@@ -117,20 +140,53 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
         return Collections.unmodifiableList(placements);
     }
 
+    /**
+     * Get an index of the current placements for fast lookups. The index is a snapshot, it does
+     * not change when the placements do, so it can be used without locking.
+     */
+    public PlacementIndex getPlacementIndex() {
+        long version = placementsVersion.get();
+        PlacementIndex placementIndex = this.placementIndex;
+        if (placementIndex == null || placementIndex.version != version) {
+            placementIndex = new PlacementIndex(placements, version);
+            this.placementIndex = placementIndex;
+        }
+        return placementIndex;
+    }
+
     public void addPlacement(Placement placement) {
         Object oldValue = placements;
         placements = new ArrayList<>(placements);
         placements.add(placement);
+        placementsVersion.incrementAndGet();
         firePropertyChange("placements", oldValue, placements);
         if (placement != null) {
             placement.addPropertyChangeListener(this);
         }
     }
 
+    /**
+     * Add all the given placements at once, as importers do. Unlike calling addPlacement() for
+     * each, this copies the list and fires the change only once.
+     */
+    public void addPlacements(Collection<Placement> placements) {
+        Object oldValue = this.placements;
+        this.placements = new ArrayList<>(this.placements);
+        this.placements.addAll(placements);
+        placementsVersion.incrementAndGet();
+        firePropertyChange("placements", oldValue, this.placements);
+        for (Placement placement : placements) {
+            if (placement != null) {
+                placement.addPropertyChangeListener(this);
+            }
+        }
+    }
+
     public void removePlacement(Placement placement) {
         Object oldValue = placements;
         placements = new ArrayList<>(placements);
         placements.remove(placement);
+        placementsVersion.incrementAndGet();
         firePropertyChange("placements", oldValue, placements);
         if (placement != null) {
             placement.removePropertyChangeListener(this);
@@ -193,6 +249,10 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
     }
 
     public void propertyChange(PropertyChangeEvent evt) {
+        if (evt.getSource() instanceof Placement
+                && indexedProperties.contains(evt.getPropertyName())) {
+            placementsVersion.incrementAndGet();
+        }
         if (evt.getSource() != Board.this || !evt.getPropertyName().equals("dirty")) {
             setDirty(true);
         }
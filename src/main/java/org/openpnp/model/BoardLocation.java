@@ -112,10 +112,8 @@ public class BoardLocation extends AbstractModelObject {
     		return 0;
     	}
     	int counter = 0;
-    	for(Placement placement : board.getPlacements()) {
-    		if (placement.getSide() == getSide()
-    		        && placement.getType() == Type.Placement
-    		        && placement.isEnabled()) {
+    	for(Placement placement : board.getPlacementIndex().getPlacements(getSide(), Type.Placement)) {
+    		if (placement.isEnabled()) {
     				counter++;
         	}
     	}
@@ -127,10 +125,8 @@ public class BoardLocation extends AbstractModelObject {
     		return 0;
     	}
     	int counter = 0;
-	    for(Placement placement : board.getPlacements()) {
-            if (placement.getSide() == getSide()
-                    && placement.getType() == Type.Placement
-                    && placement.isEnabled()
+	    for(Placement placement : board.getPlacementIndex().getPlacements(getSide(), Type.Placement)) {
+            if (placement.isEnabled()
                     && !getPlaced(placement.getId())) {
                     counter++;
             }
@@ -192,9 +188,13 @@ public class BoardLocation extends AbstractModelObject {
         firePropertyChange("enabled", oldValue, enabled);
     }
 
+    /**
+     * Fires a "placed" property change with the id of the placement as the new value. The
+     * change fired by clearAllPlaced() has a null new value.
+     */
     public void setPlaced(String placementId, boolean placed) {
         this.placed.put(placementId, placed);
-        firePropertyChange("placed", null, this.placed);
+        firePropertyChange("placed", null, placementId);
     }
 
     public boolean getPlaced(String placementId) {
@@ -208,7 +208,7 @@ public class BoardLocation extends AbstractModelObject {
     
     public void clearAllPlaced() {
         this.placed.clear();
-        firePropertyChange("placed", null, this.placed);
+        firePropertyChange("placed", null, null);
     }
     
     public AffineTransform getPlacementTransform() {
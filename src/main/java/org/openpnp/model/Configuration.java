@@ -19,20 +19,33 @@
 
 package org.openpnp.model;
 
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.prefs.Preferences;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.openpnp.ConfigurationListener;
 import org.openpnp.Scripting;
 import org.openpnp.spi.Machine;
@@ -42,7 +55,11 @@ import org.simpleframework.xml.Element;
 import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.Serializer;
+import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvPipelineConverter;
 import org.simpleframework.xml.convert.AnnotationStrategy;
+import org.simpleframework.xml.convert.Registry;
+import org.simpleframework.xml.convert.RegistryStrategy;
 import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.stream.Format;
 import org.simpleframework.xml.stream.HyphenStyle;
@@ -85,6 +102,27 @@ public class Configuration extends AbstractModelObject {
     private Scripting scripting;
     private EventBus bus = new EventBus();
 
+    private final ConfigurationFile machineFile = new ConfigurationFile("machine.xml");
+    private final ConfigurationFile packagesFile = new ConfigurationFile("packages.xml");
+    private final ConfigurationFile partsFile = new ConfigurationFile("parts.xml");
+
+    /**
+     * Marks parts.xml for saving when a part changes. Parts report every change of a saved
+     * property, so unchanged parts need not be serialized at all. Packages (their footprints)
+     * and most of the machine don't, so those are always serialized and only the write is
+     * skipped when nothing changed.
+     */
+    private final PropertyChangeListener partsListener = e -> partsFile.dirty = true;
+
+    /**
+     * Writes the configuration files in the background, in the order they were saved.
+     */
+    private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Configuration Save");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static Configuration get() {
         if (instance == null) {
             throw new Error("Configuration instance not yet initialized.");
@@ -228,70 +266,59 @@ public class Configuration extends AbstractModelObject {
     }
 
     public synchronized void load() throws Exception {
-        boolean forceSave = false;
+        long t = System.nanoTime();
         boolean overrideUserConfig = Boolean.getBoolean("overrideUserConfig");
-
-        try {
-            File file = new File(configurationDirectory, "packages.xml");
-            if (overrideUserConfig || !file.exists()) {
-                Logger.info("No packages.xml found in configuration directory, loading defaults.");
-                file = File.createTempFile("packages", "xml");
-                FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/packages.xml"), file);
-                forceSave = true;
-            }
-            loadPackages(file);
-        }
-        catch (Exception e) {
-            String message = e.getMessage();
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                message = e.getCause().getMessage();
-            }
-            throw new Exception("Error while reading packages.xml (" + message + ")", e);
+        boolean forceSave = false;
+        File packagesXml = new File(configurationDirectory, "packages.xml");
+        File partsXml = new File(configurationDirectory, "parts.xml");
+        File machineXml = new File(configurationDirectory, "machine.xml");
+        for (File file : new File[] {packagesXml, partsXml, machineXml}) {
+            forceSave |= overrideUserConfig || !file.exists();
         }
 
-
-        try {
-            File file = new File(configurationDirectory, "parts.xml");
-            if (overrideUserConfig || !file.exists()) {
-                Logger.info("No parts.xml found in configuration directory, loading defaults.");
-                file = File.createTempFile("parts", "xml");
-                FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/parts.xml"), file);
-                forceSave = true;
-            }
-            loadParts(file);
+        // The files only refer to each other by id and the references are resolved in
+        // configurationLoaded(), so they can be parsed at the same time. Set
+        // -DserialConfigurationLoad=true to read them one after another instead.
+        PackagesConfigurationHolder packagesHolder;
+        PartsConfigurationHolder partsHolder;
+        MachineConfigurationHolder machineHolder;
+        if (Boolean.getBoolean("serialConfigurationLoad")) {
+            packagesHolder = readConfigurationFile(packagesXml, overrideUserConfig,
+                    PackagesConfigurationHolder.class, packagesFile);
+            partsHolder = readConfigurationFile(partsXml, overrideUserConfig,
+                    PartsConfigurationHolder.class, partsFile);
+            machineHolder = readConfigurationFile(machineXml, overrideUserConfig,
+                    MachineConfigurationHolder.class, machineFile);
         }
-        catch (Exception e) {
-            String message = e.getMessage();
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                message = e.getCause().getMessage();
-            }
-            throw new Exception("Error while reading parts.xml (" + message + ")", e);
+        else {
+            CompletableFuture<PackagesConfigurationHolder> packagesFuture =
+                    readConfigurationFileAsync(packagesXml, overrideUserConfig,
+                            PackagesConfigurationHolder.class, packagesFile);
+            CompletableFuture<PartsConfigurationHolder> partsFuture =
+                    readConfigurationFileAsync(partsXml, overrideUserConfig,
+                            PartsConfigurationHolder.class, partsFile);
+            machineHolder = readConfigurationFile(machineXml, overrideUserConfig,
+                    MachineConfigurationHolder.class, machineFile);
+            packagesHolder = join(packagesFuture);
+            partsHolder = join(partsFuture);
         }
 
-
-        try {
-            File file = new File(configurationDirectory, "machine.xml");
-            if (overrideUserConfig || !file.exists()) {
-                Logger.info("No machine.xml found in configuration directory, loading defaults.");
-                file = File.createTempFile("machine", "xml");
-                FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/machine.xml"), file);
-                forceSave = true;
-            }
-            loadMachine(file);
+        for (Package pkg : packagesHolder.packages) {
+            addPackage(pkg);
         }
-        catch (Exception e) {
-            String message = e.getMessage();
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                message = e.getCause().getMessage();
-            }
-            throw new Exception("Error while reading machine.xml (" + message + ")", e);
+        for (Part part : partsHolder.parts) {
+            addPart(part);
         }
+        machine = machineHolder.machine;
+        Logger.info("Read configuration files in {} ms.", elapsedMs(t));
 
         loaded = true;
 
+        long phase = System.nanoTime();
         for (ConfigurationListener listener : listeners) {
             listener.configurationLoaded(this);
         }
+        Logger.info("Resolved configuration in {} ms.", elapsedMs(phase));
 
         if (forceSave) {
             Logger.info("Defaults were loaded. Saving to configuration directory.");
@@ -299,32 +326,143 @@ public class Configuration extends AbstractModelObject {
             save();
         }
 
+        phase = System.nanoTime();
         for (ConfigurationListener listener : listeners) {
             listener.configurationComplete(this);
         }
-        
+        Logger.info("Completed configuration in {} ms.", elapsedMs(phase));
+
+        phase = System.nanoTime();
         scripting = new Scripting();
+        Logger.info("Started scripting in {} ms.", elapsedMs(phase));
+        Logger.info("Configuration loaded in {} ms.", elapsedMs(t));
     }
 
-    public synchronized void save() throws Exception {
+    /**
+     * Parse one of the configuration files into its holder. If the file does not exist, or
+     * overrideUserConfig is set, the defaults are read instead.
+     */
+    private <T> T readConfigurationFile(File file, boolean overrideUserConfig, Class<T> cls,
+            ConfigurationFile configurationFile) throws Exception {
+        long t = System.nanoTime();
+        String name = file.getName();
         try {
-            saveMachine(new File(configurationDirectory, "machine.xml"));
+            boolean defaults = overrideUserConfig || !file.exists();
+            byte[] data;
+            if (defaults) {
+                Logger.info("No {} found in configuration directory, loading defaults.", name);
+                URL resource = ClassLoader.getSystemResource("config/" + name);
+                if (resource == null) {
+                    throw new IOException("Default config/" + name + " not found on the classpath.");
+                }
+                try (InputStream in = resource.openStream()) {
+                    data = IOUtils.toByteArray(in);
+                }
+            }
+            else {
+                data = Files.readAllBytes(file.toPath());
+            }
+            T holder = createSerializer().read(cls, new ByteArrayInputStream(data));
+            if (!defaults) {
+                // Defaults are not what is in the file, so it must be written by the first save.
+                configurationFile.loaded(data);
+            }
+            Logger.info("Read {} in {} ms.", name, elapsedMs(t));
+            return holder;
         }
         catch (Exception e) {
-            throw new Exception("Error while saving machine.xml (" + e.getMessage() + ")", e);
+            String message = e.getMessage();
+            if (e.getCause() != null && e.getCause().getMessage() != null) {
+                message = e.getCause().getMessage();
+            }
+            throw new Exception("Error while reading " + name + " (" + message + ")", e);
         }
+    }
+
+    private <T> CompletableFuture<T> readConfigurationFileAsync(File file,
+            boolean overrideUserConfig, Class<T> cls, ConfigurationFile configurationFile) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return readConfigurationFile(file, overrideUserConfig, cls, configurationFile);
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws Exception {
         try {
-            savePackages(new File(configurationDirectory, "packages.xml"));
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * Save the configuration and wait for the files to be written.
+     */
+    public synchronized void save() throws Exception {
+        try {
+            saveAsync().get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Serialize the configuration and write the files that changed in the background. The
+     * configuration is serialized before returning, so it may be changed again right away and
+     * serialization errors are thrown from here. Write errors complete the returned future
+     * exceptionally.
+     */
+    public synchronized CompletableFuture<Void> saveAsync() throws Exception {
+        byte[] machineXml;
+        try {
+            machineXml = saveMachine();
         }
         catch (Exception e) {
-            throw new Exception("Error while saving packages.xml (" + e.getMessage() + ")", e);
+            throw new Exception("Error while saving machine.xml (" + e.getMessage() + ")", e);
         }
+        byte[] packagesXml;
         try {
-            saveParts(new File(configurationDirectory, "parts.xml"));
+            packagesXml = savePackages();
         }
         catch (Exception e) {
-            throw new Exception("Error while saving parts.xml (" + e.getMessage() + ")", e);
+            throw new Exception("Error while saving packages.xml (" + e.getMessage() + ")", e);
+        }
+        byte[] partsXml = null;
+        if (partsFile.dirty || !partsFile.getFile().exists()) {
+            // Cleared first, a change during the save marks it again.
+            partsFile.dirty = false;
+            try {
+                partsXml = saveParts();
+            }
+            catch (Exception e) {
+                partsFile.dirty = true;
+                throw new Exception("Error while saving parts.xml (" + e.getMessage() + ")", e);
+            }
         }
+        final byte[] parts = partsXml;
+        return CompletableFuture.runAsync(() -> {
+            machineFile.write(machineXml);
+            packagesFile.write(packagesXml);
+            if (parts != null) {
+                partsFile.write(parts);
+            }
+        }, saveExecutor);
     }
 
     public Package getPackage(String id) {
@@ -366,12 +504,19 @@ public class Configuration extends AbstractModelObject {
         if (null == part.getId()) {
             throw new Error("Part with null Id cannot be added to Configuration.");
         }
-        parts.put(part.getId().toUpperCase(), part);
+        Part previous = parts.put(part.getId().toUpperCase(), part);
+        if (previous != null) {
+            previous.removePropertyChangeListener(partsListener);
+        }
+        part.addPropertyChangeListener(partsListener);
+        partsFile.dirty = true;
         firePropertyChange("parts", null, parts);
     }
 
     public void removePart(Part part) {
         parts.remove(part.getId().toUpperCase());
+        part.removePropertyChangeListener(partsListener);
+        partsFile.dirty = true;
         firePropertyChange("parts", null, parts);
     }
 
@@ -387,8 +532,7 @@ public class Configuration extends AbstractModelObject {
         if (!file.exists()) {
             Board board = new Board(file);
             board.setName(file.getName());
-            Serializer serializer = createSerializer();
-            serializer.write(board, file);
+            writeAtomically(serializeObject(board), file);
         }
         file = file.getCanonicalFile();
         if (boards.containsKey(file)) {
@@ -400,56 +544,117 @@ public class Configuration extends AbstractModelObject {
         return board;
     }
     
-    private static void serializeObject(Object o, File file) throws Exception {
+    /**
+     * Serialize the object into memory. Any error happens before a file is touched, which keeps
+     * us from writing a partial configuration to the real file.
+     */
+    private static byte[] serializeObject(Object o) throws Exception {
         Serializer serializer = createSerializer();
-        // This write forces any errors that will appear to happen before we start writing to
-        // the file, which keeps us from writing a partial configuration to the real file.
-        serializer.write(o, new ByteArrayOutputStream());
-        FileOutputStream out = new FileOutputStream(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
         serializer.write(o, out);
-        out.write('\n');
-        out.close();
+        return out.toByteArray();
     }
 
-    private void loadMachine(File file) throws Exception {
-        Serializer serializer = createSerializer();
-        MachineConfigurationHolder holder = serializer.read(MachineConfigurationHolder.class, file);
-        machine = holder.machine;
+    /**
+     * Write the data to a temporary file next to the file, then move it over the file, so the
+     * file is never left partially written.
+     */
+    private static void writeAtomically(byte[] data, File file) throws IOException {
+        file = file.getAbsoluteFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            Files.write(temp.toPath(), data);
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
     }
 
-    private void saveMachine(File file) throws Exception {
-        MachineConfigurationHolder holder = new MachineConfigurationHolder();
-        holder.machine = machine;
-        serializeObject(holder, file);
+    private static byte[] withNewline(byte[] data) {
+        byte[] result = Arrays.copyOf(data, data.length + 1);
+        result[data.length] = '\n';
+        return result;
     }
 
-    private void loadPackages(File file) throws Exception {
-        Serializer serializer = createSerializer();
-        PackagesConfigurationHolder holder =
-                serializer.read(PackagesConfigurationHolder.class, file);
-        for (Package pkg : holder.packages) {
-            addPackage(pkg);
-        }
+    private byte[] saveMachine() throws Exception {
+        MachineConfigurationHolder holder = new MachineConfigurationHolder();
+        holder.machine = machine;
+        return withNewline(serializeObject(holder));
     }
 
-    private void savePackages(File file) throws Exception {
+    private byte[] savePackages() throws Exception {
         PackagesConfigurationHolder holder = new PackagesConfigurationHolder();
         holder.packages = new ArrayList<>(packages.values());
-        serializeObject(holder, file);
-    }
-
-    private void loadParts(File file) throws Exception {
-        Serializer serializer = createSerializer();
-        PartsConfigurationHolder holder = serializer.read(PartsConfigurationHolder.class, file);
-        for (Part part : holder.parts) {
-            addPart(part);
-        }
+        return withNewline(serializeObject(holder));
     }
 
-    private void saveParts(File file) throws Exception {
+    private byte[] saveParts() throws Exception {
         PartsConfigurationHolder holder = new PartsConfigurationHolder();
         holder.parts = new ArrayList<>(parts.values());
-        serializeObject(holder, file);
+        return withNewline(serializeObject(holder));
+    }
+
+    /**
+     * One of the configuration files, with a hash of what was last read from or written to it
+     * so that unchanged content is not written again.
+     */
+    private class ConfigurationFile {
+        private final String name;
+        private byte[] hash;
+        /**
+         * Only used for parts.xml, see partsListener.
+         */
+        volatile boolean dirty = true;
+
+        ConfigurationFile(String name) {
+            this.name = name;
+        }
+
+        File getFile() {
+            return new File(configurationDirectory, name);
+        }
+
+        /**
+         * Remember the content read from the file at load.
+         */
+        void loaded(byte[] data) throws Exception {
+            hash = hash(data);
+            dirty = false;
+        }
+
+        /**
+         * Called on the save thread.
+         */
+        void write(byte[] data) {
+            try {
+                byte[] hash = hash(data);
+                File file = getFile();
+                if (Arrays.equals(hash, this.hash) && file.exists()) {
+                    Logger.trace("{} unchanged, not written.", name);
+                    return;
+                }
+                writeAtomically(data, file);
+                this.hash = hash;
+            }
+            catch (Exception e) {
+                if (this == partsFile) {
+                    dirty = true;
+                }
+                throw new RuntimeException(
+                        "Error while saving " + name + " (" + e.getMessage() + ")", e);
+            }
+        }
+
+        private byte[] hash(byte[] data) throws Exception {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        }
     }
 
     public Job loadJob(File file) throws Exception {
@@ -483,7 +688,6 @@ public class Configuration extends AbstractModelObject {
     }
 
     public void saveJob(Job job, File file) throws Exception {
-        Serializer serializer = createSerializer();
         Set<Board> boards = new HashSet<>();
         // Fix the paths to any boards in the Job
         for (BoardLocation boardLocation : job.getBoardLocations()) {
@@ -503,8 +707,7 @@ public class Configuration extends AbstractModelObject {
             saveBoard(board);
         }
         // Save the job
-        serializer.write(job, new ByteArrayOutputStream());
-        serializer.write(job, file);
+        writeAtomically(serializeObject(job), file);
         job.setFile(file);
         job.setDirty(false);
     }
@@ -514,9 +717,7 @@ public class Configuration extends AbstractModelObject {
     }
 
     public void saveBoard(Board board) throws Exception {
-        Serializer serializer = createSerializer();
-        serializer.write(board, new ByteArrayOutputStream());
-        serializer.write(board, board.getFile());
+        writeAtomically(serializeObject(board), board.getFile());
         board.setDirty(false);
     }
 
@@ -531,7 +732,15 @@ public class Configuration extends AbstractModelObject {
     public static Serializer createSerializer() {
         Style style = new HyphenStyle();
         Format format = new Format(style);
-        AnnotationStrategy strategy = new AnnotationStrategy();
+        // Embedded pipelines are kept as XML until they are used, see CvPipelineConverter.
+        Registry registry = new Registry();
+        try {
+            registry.bind(CvPipeline.class, CvPipelineConverter.class);
+        }
+        catch (Exception e) {
+            throw new Error(e);
+        }
+        RegistryStrategy strategy = new RegistryStrategy(registry, new AnnotationStrategy());
         Serializer serializer = new Persister(strategy, format);
         return serializer;
     }
@@ -0,0 +1,176 @@
+package org.openpnp.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.Placement.Type;
+
+/**
+ * An immutable index over the placements of a Board, for looking placements up by id, part, side
+ * and type, or location without scanning the whole list. Get it from Board.getPlacementIndex().
+ * The Board builds a new index when its placements change, so an index can be read from any
+ * thread without locking and stays consistent for as long as it is held, e.g. while a job is
+ * planned.
+ *
+ * All lists are in board order.
+ */
+public class PlacementIndex {
+    /**
+     * Size of the cells of the spatial grid, in millimeters.
+     */
+    private static final double cellSize = 10;
+
+    /**
+     * The Board's count of placement changes this index was built at.
+     */
+    final long version;
+
+    private final List<Placement> placements;
+    private final Map<String, Placement> byId = new HashMap<>();
+    private final Set<String> duplicateIds = new LinkedHashSet<>();
+    private final Map<String, List<Placement>> byPartId = new HashMap<>();
+    private final Map<Side, Map<Type, List<Placement>>> bySideAndType = new EnumMap<>(Side.class);
+    private final Map<Long, List<Placement>> grid = new HashMap<>();
+    private final Map<Placement, Integer> positions = new HashMap<>();
+
+    PlacementIndex(List<Placement> placements, long version) {
+        this.version = version;
+        this.placements = Collections.unmodifiableList(new ArrayList<>(placements));
+        for (Placement placement : this.placements) {
+            if (placement == null) {
+                continue;
+            }
+            positions.put(placement, positions.size());
+            if (byId.putIfAbsent(placement.getId(), placement) != null) {
+                duplicateIds.add(placement.getId());
+            }
+            Part part = placement.getPart();
+            byPartId.computeIfAbsent(part == null ? null : part.getId(), k -> new ArrayList<>())
+                    .add(placement);
+            bySideAndType.computeIfAbsent(placement.getSide(), k -> new EnumMap<>(Type.class))
+                    .computeIfAbsent(placement.getType(), k -> new ArrayList<>())
+                    .add(placement);
+            Location location = placement.getLocation();
+            if (location != null) {
+                location = location.convertToUnits(LengthUnit.Millimeters);
+                grid.computeIfAbsent(cellKey(cell(location.getX()), cell(location.getY())),
+                        k -> new ArrayList<>()).add(placement);
+            }
+        }
+    }
+
+    public List<Placement> getPlacements() {
+        return placements;
+    }
+
+    public int size() {
+        return placements.size();
+    }
+
+    /**
+     * @return The first placement with the given id, or null if there is none.
+     */
+    public Placement getPlacement(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * @return The ids used by more than one placement.
+     */
+    public Set<String> getDuplicateIds() {
+        return Collections.unmodifiableSet(duplicateIds);
+    }
+
+    /**
+     * @return The placements of the given part, or of no part if part is null.
+     */
+    public List<Placement> getPlacements(Part part) {
+        List<Placement> list = byPartId.get(part == null ? null : part.getId());
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    public List<Placement> getPlacements(Side side, Type type) {
+        Map<Type, List<Placement>> byType = bySideAndType.get(side);
+        List<Placement> list = (byType == null) ? null : byType.get(type);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return The placements whose board location is within the rectangle spanned by the two
+     *         given corners, in board order.
+     */
+    public List<Placement> getPlacementsWithin(Location corner1, Location corner2) {
+        corner1 = corner1.convertToUnits(LengthUnit.Millimeters);
+        corner2 = corner2.convertToUnits(LengthUnit.Millimeters);
+        double minX = Math.min(corner1.getX(), corner2.getX());
+        double maxX = Math.max(corner1.getX(), corner2.getX());
+        double minY = Math.min(corner1.getY(), corner2.getY());
+        double maxY = Math.max(corner1.getY(), corner2.getY());
+        List<Placement> results = new ArrayList<>();
+        long cells = (cell(maxX) - cell(minX) + 1) * (cell(maxY) - cell(minY) + 1);
+        if (cells > grid.size()) {
+            // Larger than the occupied part of the grid, so look at all the occupied cells.
+            for (List<Placement> list : grid.values()) {
+                addWithin(list, minX, maxX, minY, maxY, results);
+            }
+        }
+        else {
+            for (long cx = cell(minX); cx <= cell(maxX); cx++) {
+                for (long cy = cell(minY); cy <= cell(maxY); cy++) {
+                    List<Placement> list = grid.get(cellKey(cx, cy));
+                    if (list != null) {
+                        addWithin(list, minX, maxX, minY, maxY, results);
+                    }
+                }
+            }
+        }
+        sortByBoardOrder(results);
+        return results;
+    }
+
+    /**
+     * @return The placements whose board location is within the given distance of the given
+     *         location, in board order.
+     */
+    public List<Placement> getPlacementsNear(Location location, Length distance) {
+        double d = distance.convertToUnits(LengthUnit.Millimeters).getValue();
+        Location offset = new Location(LengthUnit.Millimeters, d, d, 0, 0);
+        Location center = location.convertToUnits(LengthUnit.Millimeters);
+        List<Placement> results =
+                getPlacementsWithin(center.subtract(offset), center.add(offset));
+        results.removeIf(placement -> placement.getLocation()
+                .convertToUnits(LengthUnit.Millimeters)
+                .getLinearDistanceTo(center) > d);
+        return results;
+    }
+
+    private static void addWithin(List<Placement> list, double minX, double maxX, double minY,
+            double maxY, List<Placement> results) {
+        for (Placement placement : list) {
+            Location location = placement.getLocation().convertToUnits(LengthUnit.Millimeters);
+            if (location.getX() >= minX && location.getX() <= maxX && location.getY() >= minY
+                    && location.getY() <= maxY) {
+                results.add(placement);
+            }
+        }
+    }
+
+    private void sortByBoardOrder(List<Placement> results) {
+        results.sort((a, b) -> Integer.compare(positions.get(a), positions.get(b)));
+    }
+
+    private static long cell(double mm) {
+        return (long) Math.floor(mm / cellSize);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+}
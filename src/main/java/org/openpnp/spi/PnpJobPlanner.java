@@ -5,6 +5,11 @@ import java.util.List;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement;
 
 public interface PnpJobPlanner {
+    public enum JobOrderHint {
+        PartHeight,
+        Part
+    }
+
     public static class PlannedPlacement {
         public final JobPlacement jobPlacement;
         public final Nozzle nozzle;
@@ -26,4 +31,21 @@ public interface PnpJobPlanner {
 
     
     public List<PlannedPlacement> plan(Head head, List<JobPlacement> placements);
+
+    /**
+     * Set the order in which the job should be placed. The job processor calls this before each
+     * call of plan() and passes the placements sorted in this order, so planners that keep the
+     * order of the placements they are given don't need to do anything. Planners that reorder
+     * placements must override this and keep the job order.
+     */
+    default void setJobOrder(JobOrderHint jobOrder) {
+    }
+
+    /**
+     * Get the planner's estimate of the time in seconds needed to finish the placements passed
+     * to the last call of plan(), or -1 if the planner does not make an estimate.
+     */
+    default double getEstimatedJobTime() {
+        return -1;
+    }
 }
@@ -36,6 +36,8 @@ import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.MachineListener;
 import org.openpnp.spi.VisionProvider;
 import org.openpnp.spi.Movable.MoveToOption;
 import org.openpnp.util.OpenCvUtils;
@@ -197,6 +199,12 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
     private SimpleGraph settleGraph = null;
     private int recordedMaskDiameter;
 
+    /**
+     * System.nanoTime() of the last head activity reported by the machine, i.e. the end of the
+     * last move or actuation, or Long.MIN_VALUE if there was none yet.
+     */
+    private volatile long lastMotionNanos = Long.MIN_VALUE;
+
     public AbstractCamera() {
         this.id = Configuration.createId("CAM");
         this.name = getClass().getSimpleName();
@@ -207,6 +215,16 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
                     visionProvider.setCamera(AbstractCamera.this);
                 }
             }
+
+            @Override
+            public void configurationComplete(Configuration configuration) throws Exception {
+                configuration.getMachine().addListener(new MachineListener.Adapter() {
+                    @Override
+                    public void machineHeadActivity(Machine machine, Head head) {
+                        lastMotionNanos = System.nanoTime();
+                    }
+                });
+            }
         });
     }
 
@@ -680,14 +698,35 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
                 // Method undetermined, probably created a new camera (no @Commit handler)
                 settleMethod = SettleMethod.FixedTime;
             }
+            if (settleMethod == SettleMethod.FixedTime && isVirtualTime()) {
+                // Moves take no real time on a virtual clock, so the time since the last motion
+                // says nothing. Charge the whole settle time, so that simulated times don't
+                // depend on the speed of the host.
+                try {
+                    settleDwell(getSettleTimeMs());
+                }
+                catch (Exception e) {
+
+                }
+                return captureAfter(System.nanoTime());
+            }
             if (settleMethod == SettleMethod.FixedTime) {
+                // Settle time counts from the end of the last motion, not from now, and the
+                // frame used must have been taken after it passed.
+                long settledNanos = System.nanoTime() + getSettleTimeMs() * 1000000L;
+                if (lastMotionNanos != Long.MIN_VALUE) {
+                    settledNanos = Math.min(settledNanos, lastMotionNanos + getSettleTimeMs() * 1000000L);
+                }
                 try {
-                    Thread.sleep(getSettleTimeMs());
+                    long sleepMs = (settledNanos - System.nanoTime()) / 1000000L;
+                    if (sleepMs > 0) {
+                        settleDwell(sleepMs);
+                    }
                 }
                 catch (Exception e) {
 
                 }
-                return capture();
+                return captureAfter(settledNanos);
             }
             else {
                 return autoSettleAndCapture();
@@ -706,6 +745,39 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
         }
     }
 
+    /**
+     * Waits for the given time while the camera settles with the FixedTime method. Cameras on a
+     * simulated machine can override this to account for the time without actually waiting.
+     */
+    protected void settleDwell(long milliseconds) throws Exception {
+        Thread.sleep(milliseconds);
+    }
+
+    /**
+     * Returns true if the camera is on a simulated machine that runs on a virtual clock. The
+     * FixedTime settle method then always charges the whole settle time to settleDwell().
+     */
+    protected boolean isVirtualTime() {
+        return false;
+    }
+
+    /**
+     * Capture an image from a frame taken at or after the given System.nanoTime(). The default
+     * captures a new image, which always satisfies this. Cameras that keep recent frames can
+     * return one of those instead of waiting for the device.
+     */
+    public BufferedImage captureAfter(long nanos) {
+        return capture();
+    }
+
+    /**
+     * @return System.nanoTime() of the last move or actuation on the machine, or Long.MIN_VALUE
+     *         if there was none yet.
+     */
+    public long getLastMotionNanos() {
+        return lastMotionNanos;
+    }
+
     protected void broadcastCapture(BufferedImage img) {
         for (ListenerEntry listener : new ArrayList<>(listeners)) {
             listener.listener.frameReceived(img);
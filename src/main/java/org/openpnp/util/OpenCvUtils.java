@@ -17,6 +17,7 @@ import java.util.List;
 
 import javax.imageio.ImageIO;
 
+import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
@@ -353,23 +354,100 @@ public class OpenCvUtils {
      * Ported from the C++ version in FireSight by Karl Lew, which is licensed under the 
      * MIT license.
      * https://github.com/firepick1/FireSight
+     * 
+     * The Mat is copied into a primitive array once, so that the scan does not cross into native
+     * code for every pixel.
+     * 
      * @param mat
      * @param rangeMin
      * @param rangeMax
      * @return
      */
     public static List<java.awt.Point> matMaxima(Mat mat, double rangeMin, double rangeMax) {
+        int rows = mat.rows();
+        int cols = mat.cols();
+        return matMaxima(toDoubleArray(mat), rows, cols, rangeMin, rangeMax);
+    }
+
+    /**
+     * Like matMaxima(Mat, double, double) but limits the result to the strongest maxima. Maxima
+     * are taken in order of descending value, and any maximum closer than suppressionRadius
+     * pixels to an already accepted one is dropped (non-maximum suppression).
+     * 
+     * @param mat
+     * @param rangeMin
+     * @param rangeMax
+     * @param suppressionRadius Minimum distance in pixels between two maxima, or 0 to keep all.
+     * @param maxCount Maximum number of maxima to return, or 0 for no limit.
+     * @return The maxima, strongest first.
+     */
+    public static List<java.awt.Point> matMaxima(Mat mat, double rangeMin, double rangeMax,
+            double suppressionRadius, int maxCount) {
+        int rows = mat.rows();
+        int cols = mat.cols();
+        double[] d = toDoubleArray(mat);
+        List<java.awt.Point> maxima = matMaxima(d, rows, cols, rangeMin, rangeMax);
+        maxima.sort((a, b) -> Double.compare(d[b.y * cols + b.x], d[a.y * cols + a.x]));
+        double radiusSquared = suppressionRadius * suppressionRadius;
+        List<java.awt.Point> locations = new ArrayList<>();
+        for (java.awt.Point point : maxima) {
+            if (maxCount > 0 && locations.size() >= maxCount) {
+                break;
+            }
+            boolean suppressed = false;
+            if (radiusSquared > 0) {
+                for (java.awt.Point accepted : locations) {
+                    if (point.distanceSq(accepted) < radiusSquared) {
+                        suppressed = true;
+                        break;
+                    }
+                }
+            }
+            if (!suppressed) {
+                locations.add(point);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Copy the first channel of the Mat into a row major double array in a single transfer.
+     */
+    private static double[] toDoubleArray(Mat mat) {
+        Mat tmp = mat;
+        if (mat.channels() > 1) {
+            tmp = new Mat();
+            Core.extractChannel(mat, tmp, 0);
+        }
+        if (tmp.type() != CvType.CV_64FC1 || !tmp.isContinuous()) {
+            Mat converted = new Mat();
+            tmp.convertTo(converted, CvType.CV_64F);
+            if (tmp != mat) {
+                tmp.release();
+            }
+            tmp = converted;
+        }
+        double[] d = new double[(int) tmp.total()];
+        tmp.get(0, 0, d);
+        if (tmp != mat) {
+            tmp.release();
+        }
+        return d;
+    }
+
+    private static List<java.awt.Point> matMaxima(double[] d, int rows, int cols, double rangeMin,
+            double rangeMax) {
         List<java.awt.Point> locations = new ArrayList<>();
 
-        int rEnd = mat.rows() - 1;
-        int cEnd = mat.cols() - 1;
+        int rEnd = rows - 1;
+        int cEnd = cols - 1;
 
         // CHECK EACH ROW MAXIMA FOR LOCAL 2D MAXIMA
         for (int r = 0; r <= rEnd; r++) {
             MinMaxState state = MinMaxState.BEFORE_INFLECTION;
-            double curVal = mat.get(r, 0)[0];
+            double curVal = d[r * cols];
             for (int c = 1; c <= cEnd; c++) {
-                double val = mat.get(r, c)[0];
+                double val = d[r * cols + c];
 
                 if (val == curVal) {
                     continue;
@@ -386,25 +464,25 @@ public class OpenCvUtils {
                     if (state == MinMaxState.BEFORE_INFLECTION) {
                         if (rangeMin <= curVal && curVal <= rangeMax) { // ROW
                                                                         // MAXIMA
-                            if (0 < r && (mat.get(r - 1, c - 1)[0] >= curVal
-                                    || mat.get(r - 1, c)[0] >= curVal)) {
+                            if (0 < r && (d[(r - 1) * cols + c - 1] >= curVal
+                                    || d[(r - 1) * cols + c] >= curVal)) {
                                 // cout << "reject:r-1 " << r << "," << c-1 <<
                                 // endl;
                                 // - x x
                                 // - - -
                                 // - - -
                             }
-                            else if (r < rEnd && (mat.get(r + 1, c - 1)[0] > curVal
-                                    || mat.get(r + 1, c)[0] > curVal)) {
+                            else if (r < rEnd && (d[(r + 1) * cols + c - 1] > curVal
+                                    || d[(r + 1) * cols + c] > curVal)) {
                                 // cout << "reject:r+1 " << r << "," << c-1 <<
                                 // endl;
                                 // - - -
                                 // - - -
                                 // - x x
                             }
-                            else if (1 < c && (0 < r && mat.get(r - 1, c - 2)[0] >= curVal
-                                    || mat.get(r, c - 2)[0] > curVal
-                                    || r < rEnd && mat.get(r + 1, c - 2)[0] > curVal)) {
+                            else if (1 < c && (0 < r && d[(r - 1) * cols + c - 2] >= curVal
+                                    || d[r * cols + c - 2] > curVal
+                                    || r < rEnd && d[(r + 1) * cols + c - 2] > curVal)) {
                                 // cout << "reject:c-2 " << r << "," << c-1 <<
                                 // endl;
                                 // x - -
@@ -428,25 +506,25 @@ public class OpenCvUtils {
             // PROCESS END OF ROW
             if (state == MinMaxState.BEFORE_INFLECTION) {
                 if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
-                    if (0 < r && (mat.get(r - 1, cEnd - 1)[0] >= curVal
-                            || mat.get(r - 1, cEnd)[0] >= curVal)) {
+                    if (0 < r && (d[(r - 1) * cols + cEnd - 1] >= curVal
+                            || d[(r - 1) * cols + cEnd] >= curVal)) {
                         // cout << "rejectEnd:r-1 " << r << "," << cEnd-1 <<
                         // endl;
                         // - x x
                         // - - -
                         // - - -
                     }
-                    else if (r < rEnd && (mat.get(r + 1, cEnd - 1)[0] > curVal
-                            || mat.get(r + 1, cEnd)[0] > curVal)) {
+                    else if (r < rEnd && (d[(r + 1) * cols + cEnd - 1] > curVal
+                            || d[(r + 1) * cols + cEnd] > curVal)) {
                         // cout << "rejectEnd:r+1 " << r << "," << cEnd-1 <<
                         // endl;
                         // - - -
                         // - - -
                         // - x x
                     }
-                    else if (1 < r && mat.get(r - 1, cEnd - 2)[0] >= curVal
-                            || mat.get(r, cEnd - 2)[0] > curVal
-                            || r < rEnd && mat.get(r + 1, cEnd - 2)[0] > curVal) {
+                    else if (1 < r && d[(r - 1) * cols + cEnd - 2] >= curVal
+                            || d[r * cols + cEnd - 2] > curVal
+                            || r < rEnd && d[(r + 1) * cols + cEnd - 2] > curVal) {
                         // cout << "rejectEnd:cEnd-2 " << r << "," << cEnd-1 <<
                         // endl;
                         // x - -
@@ -24,10 +24,8 @@ package org.openpnp.util;
 import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.TreeMap;
 
 public class SimpleGraph {
 
@@ -179,15 +177,29 @@ public class SimpleGraph {
         this.relativePaddingRight = relativePaddingRight;
     }
 
+    /**
+     * A time series of data points, stored in primitive arrays ordered by x. Points are
+     * normally recorded with increasing x, which is just an append. The minimum and maximum are
+     * kept up to date while recording. Once the maximumSize is reached, the row is decimated to
+     * half its size, so recording never allocates beyond that.
+     * 
+     * Recording and reading may happen on different threads. Callers iterating over the points
+     * using getX(int) and getY(int) should synchronize on the DataRow.
+     */
     public static class DataRow {
+        private static final int INITIAL_CAPACITY = 64;
+        private static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
         private String label;
         private Color color;
-        private TreeMap<Double, Double> data = new TreeMap<>();
+        private double[] xs = new double[INITIAL_CAPACITY];
+        private double[] ys = new double[INITIAL_CAPACITY];
+        private int size;
+        private int maximumSize = DEFAULT_MAXIMUM_SIZE;
 
         // housekeeping
-        boolean dirty = false;
-        private Point2D.Double minimum = null;
-        private Point2D.Double maximum = null;
+        private double minimumX, minimumY;
+        private double maximumX, maximumY;
 
         public DataRow(String label, Color color) {
             super();
@@ -195,75 +207,170 @@ public class SimpleGraph {
             this.color = color;
         }
 
-        public void recordDataPoint(double x, double y) {
-            data.put(x, y);
-            dirty = true;
-        }
-        public Double getDataPoint(double x) {
-            return data.get(x);
-        }
-        public Double getInterpolated(double x) {
-            Entry<Double, Double> entry0 = data.floorEntry(x);
-            Entry<Double, Double> entry1 = data.ceilingEntry(x);
-            if (entry0 != null && entry1 != null) {
-                double x0 = entry0.getKey();
-                double x1 = entry1.getKey();
-                double y0 = data.get(x0);
-                double y1 = data.get(x1);
-                double r = (x-x0)/(x1-x0);
-                return y0+r*(y1-y0);
+        public synchronized void recordDataPoint(double x, double y) {
+            if (size > 0 && x <= xs[size - 1]) {
+                insertDataPoint(x, y);
+                return;
             }
-            return null;
+            if (size >= maximumSize) {
+                decimate();
+            }
+            else if (size == xs.length) {
+                grow();
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+            include(x, y);
         }
-        public int size() {
-            return data.size();
+
+        /**
+         * Records a data point that does not come after the last one. This is the rare case, so
+         * it may shift the arrays.
+         */
+        private void insertDataPoint(double x, double y) {
+            int index = indexOf(x);
+            if (index >= 0) {
+                // same x, replace the data point like a map would
+                ys[index] = y;
+                recalc();
+                return;
+            }
+            if (size >= maximumSize) {
+                decimate();
+                index = indexOf(x);
+            }
+            else if (size == xs.length) {
+                grow();
+            }
+            index = -index - 1;
+            System.arraycopy(xs, index, xs, index + 1, size - index);
+            System.arraycopy(ys, index, ys, index + 1, size - index);
+            xs[index] = x;
+            ys[index] = y;
+            size++;
+            include(x, y);
+        }
+
+        private void grow() {
+            int capacity = Math.min(xs.length * 2, maximumSize);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+
+        /**
+         * Halves the number of data points. Of each pair of points the one that deviates more
+         * from the previously kept one is kept, so that peaks and steps survive.
+         */
+        private void decimate() {
+            int kept = 1;
+            for (int i = 1; i < size; i += 2) {
+                int pick = i;
+                if (i + 1 < size
+                        && Math.abs(ys[i + 1] - ys[kept - 1]) > Math.abs(ys[i] - ys[kept - 1])) {
+                    pick = i + 1;
+                }
+                xs[kept] = xs[pick];
+                ys[kept] = ys[pick];
+                kept++;
+            }
+            size = kept;
+            recalc();
+        }
+
+        /**
+         * @return The index of the data point at x, or (-(insertion point) - 1) as in
+         *         Arrays.binarySearch().
+         */
+        private int indexOf(double x) {
+            return Arrays.binarySearch(xs, 0, size, x);
+        }
+
+        private void include(double x, double y) {
+            if (size == 1) {
+                minimumX = maximumX = x;
+                minimumY = maximumY = y;
+            }
+            else {
+                minimumX = Math.min(x, minimumX);
+                minimumY = Math.min(y, minimumY);
+                maximumX = Math.max(x, maximumX);
+                maximumY = Math.max(y, maximumY);
+            }
         }
 
         protected void recalc() {
-            if (dirty) {
-                minimum = null;
-                maximum = null;
-                for (Entry<Double, Double> entry : data.entrySet()) {
-                    double x = entry.getKey();
-                    double y = data.get(x);
-                    if (minimum == null) {
-                        minimum = new Point2D.Double(x, y);
-                    }
-                    else {
-                        minimum.x = Math.min(x, minimum.x);
-                        minimum.y = Math.min(y, minimum.y);
-                    }
-                    if (maximum == null) {
-                        maximum = new Point2D.Double(x, y);
-                    }
-                    else {
-                        maximum.x = Math.max(x, maximum.x);
-                        maximum.y = Math.max(y, maximum.y);
-                    }
+            for (int i = 0; i < size; i++) {
+                if (i == 0) {
+                    minimumX = maximumX = xs[i];
+                    minimumY = maximumY = ys[i];
+                }
+                else {
+                    minimumX = Math.min(xs[i], minimumX);
+                    minimumY = Math.min(ys[i], minimumY);
+                    maximumX = Math.max(xs[i], maximumX);
+                    maximumY = Math.max(ys[i], maximumY);
                 }
-                dirty = false;
             }
         }
 
-        public Set<Double> getXAxis() {
-            return data.keySet();
+        public synchronized Double getDataPoint(double x) {
+            int index = indexOf(x);
+            if (index < 0) {
+                return null;
+            }
+            return ys[index];
         }
-        public Point2D.Double getMinimum() {
-            recalc();
-            if (minimum == null) {
+        public synchronized Double getInterpolated(double x) {
+            int index = indexOf(x);
+            if (index >= 0) {
+                return ys[index];
+            }
+            index = -index - 1;
+            if (index == 0 || index == size) {
                 return null;
             }
-            else {
-                return (Point2D.Double)minimum.clone();
+            double x0 = xs[index - 1];
+            double x1 = xs[index];
+            double y0 = ys[index - 1];
+            double y1 = ys[index];
+            double r = (x-x0)/(x1-x0);
+            return y0+r*(y1-y0);
+        }
+        public synchronized int size() {
+            return size;
+        }
+        public synchronized double getX(int index) {
+            return xs[index];
+        }
+        public synchronized double getY(int index) {
+            return ys[index];
+        }
+
+        public synchronized Point2D.Double getMinimum() {
+            if (size == 0) {
+                return null;
             }
+            return new Point2D.Double(minimumX, minimumY);
         }
-        public Point2D.Double getMaximum() {
-            recalc();
-            if (maximum == null) {
+        public synchronized Point2D.Double getMaximum() {
+            if (size == 0) {
                 return null;
             }
-            else {
-                return (Point2D.Double)maximum.clone();
+            return new Point2D.Double(maximumX, maximumY);
+        }
+        public synchronized int getMaximumSize() {
+            return maximumSize;
+        }
+        /**
+         * Sets the number of data points at which the row is decimated to half its size.
+         * 
+         * @param maximumSize
+         */
+        public synchronized void setMaximumSize(int maximumSize) {
+            this.maximumSize = Math.max(2, maximumSize);
+            while (size > this.maximumSize) {
+                decimate();
             }
         }
         public String getLabel() {
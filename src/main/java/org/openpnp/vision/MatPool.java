@@ -0,0 +1,90 @@
+package org.openpnp.vision;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+
+/**
+ * A small pool of OpenCV Mats keyed by size and type. Native image buffers are expensive to
+ * allocate and free for every frame, so callers that repeatedly need a Mat of the same geometry
+ * can acquire one from the pool and give it back when done instead of releasing it.
+ *
+ * A pool is not shared between threads; each owner (a pipeline, a camera) keeps its own.
+ */
+public class MatPool {
+    private final int maxPerKey;
+    private final Map<Long, ArrayDeque<Mat>> pool = new HashMap<>();
+
+    public MatPool() {
+        this(4);
+    }
+
+    /**
+     * @param maxPerKey The maximum number of idle Mats kept for each size and type. Mats given
+     *        back beyond this are released.
+     */
+    public MatPool(int maxPerKey) {
+        this.maxPerKey = maxPerKey;
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 40) | ((long) cols << 16) | (type & 0xffff);
+    }
+
+    /**
+     * Get a Mat with the given size and type. Its content is undefined.
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        ArrayDeque<Mat> mats = pool.get(key(rows, cols, type));
+        if (mats != null && !mats.isEmpty()) {
+            return mats.pop();
+        }
+        return new Mat(rows, cols, type);
+    }
+
+    /**
+     * Get a Mat holding a copy of the given Mat.
+     */
+    public Mat copyOf(Mat mat) {
+        Mat copy = acquire(mat.rows(), mat.cols(), mat.type());
+        mat.copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Give the Mat back to the pool. It must not be used by the caller afterwards.
+     */
+    public void recycle(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        if (mat.empty() || !mat.isContinuous() || mat.dims() > 2) {
+            mat.release();
+            return;
+        }
+        ArrayDeque<Mat> mats =
+                pool.computeIfAbsent(key(mat.rows(), mat.cols(), mat.type()), k -> new ArrayDeque<>());
+        if (mats.contains(mat)) {
+            return;
+        }
+        if (mats.size() >= maxPerKey) {
+            mat.release();
+            return;
+        }
+        mats.push(mat);
+    }
+
+    /**
+     * Release all idle Mats.
+     */
+    public void clear() {
+        for (ArrayDeque<Mat> mats : pool.values()) {
+            for (Mat mat : mats) {
+                mat.release();
+            }
+        }
+        pool.clear();
+    }
+}
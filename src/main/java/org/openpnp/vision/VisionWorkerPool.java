@@ -0,0 +1,47 @@
+package org.openpnp.vision;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads for running vision pipelines off the machine thread. A caller that
+ * has captured its image can hand the processing to the pool and move the machine on, and only
+ * wait on the returned Future when it needs the result.
+ *
+ * There is one worker per core, less one for the machine thread. Queued work is bounded; when
+ * the queue is full the submitting thread runs the task itself, which keeps a fast machine from
+ * piling up images faster than they can be processed.
+ */
+public class VisionWorkerPool {
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(THREADS * 4), r -> {
+                    Thread thread = new Thread(r, "VisionWorker-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * @return A Future that is already done with the given result, for callers that sometimes
+     *         have to do the work synchronously.
+     */
+    public static <T> Future<T> completed(T result) {
+        return CompletableFuture.completedFuture(result);
+    }
+}
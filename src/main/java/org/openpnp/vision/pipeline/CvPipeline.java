@@ -1,20 +1,33 @@
 package org.openpnp.vision.pipeline;
 
+import java.awt.Color;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
+import org.openpnp.util.VisionUtils;
+import org.openpnp.vision.MatPool;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.ScriptRun;
 import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.Serializer;
@@ -33,6 +46,16 @@ import org.simpleframework.xml.stream.Style;
  * CvPipeline is serializable using toXmlString and fromXmlString. This makes it easy to export
  * pipelines and exchange them with others.
  * 
+ * By default the pipeline is lean: the model of every stage is kept, but an image snapshot is
+ * only stored for stages that are referenced by name from another stage (e.g. by ImageRecall or
+ * MatchTemplate) or that are named "results". Snapshot buffers are recycled through a MatPool.
+ * The CvPipelineEditor switches on retainAllResultImages so that every stage can be inspected.
+ * 
+ * Copying a pipeline, through clone() or by parsing an XML definition that was seen before, does
+ * not go through the XML serializer. Stages are copied structurally using the same @Attribute and
+ * @Element fields the serializer would write, and parsed definitions are kept in a small cache
+ * of template pipelines keyed by their XML.
+ * 
  * This work takes inspiration from several existing projects:
  * 
  * FireSight by Karl Lew and Šimon Fojtů: https://github.com/firepick1/FireSight
@@ -53,6 +76,12 @@ public class CvPipeline implements AutoCloseable {
     @ElementList
     private ArrayList<CvStage> stages = new ArrayList<>();
 
+    /**
+     * The XML definition of a pipeline that was read from the configuration and has not been
+     * built yet, or null once the stages are built. See CvPipelineConverter.
+     */
+    private volatile String pendingXml;
+
     private Map<CvStage, Result> results = new HashMap<CvStage, Result>();
     
     private Map<String, Object> properties = new HashMap<String, Object>();
@@ -61,6 +90,46 @@ public class CvPipeline implements AutoCloseable {
     private Object workingModel;
     
     private long totalProcessingTimeNs;
+
+    private boolean retainAllResultImages = false;
+
+    private final MatPool matPool = new MatPool();
+
+    /**
+     * The String properties of each stage class, which are scanned for references to other
+     * stages.
+     */
+    private static final Map<Class<?>, List<Field>> stringFields = new ConcurrentHashMap<>();
+
+    /**
+     * The serialized fields of each stage class, used for structural copies.
+     */
+    private static final Map<Class<?>, List<Field>> serializedFields = new ConcurrentHashMap<>();
+
+    private static final int templateCacheSize = 64;
+
+    /**
+     * Parsed pipelines keyed by their XML definition. The templates are never processed or
+     * handed out, they are only copied.
+     */
+    private static final Map<String, CvPipeline> templateCache =
+            Collections.synchronizedMap(new LinkedHashMap<String, CvPipeline>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CvPipeline> eldest) {
+                    return size() > templateCacheSize;
+                }
+            });
+
+    /**
+     * XML definitions with a stage that can't be copied, which are parsed every time instead.
+     */
+    private static final Set<String> uncopyableXml = Collections.newSetFromMap(
+            Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > templateCacheSize;
+                }
+            }));
     
     public CvPipeline() {
         
@@ -71,7 +140,45 @@ public class CvPipeline implements AutoCloseable {
             fromXmlString(xmlPipeline);
         }
         catch (Exception e) {
-            throw new Error(e);
+            throw new IllegalArgumentException("Invalid pipeline XML: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create a pipeline that is built from the given XML when it is first used.
+     */
+    static CvPipeline lazy(String xmlPipeline) {
+        CvPipeline pipeline = new CvPipeline();
+        pipeline.pendingXml = xmlPipeline;
+        return pipeline;
+    }
+
+    String getPendingXml() {
+        return pendingXml;
+    }
+
+    /**
+     * Build the stages from the pending XML definition, if there is one. The configuration
+     * loader already checked that the stage classes exist, so this only fails on bad stage
+     * properties, and then with an unchecked exception that the job processor and the vision
+     * workers handle like any other vision error.
+     */
+    private void build() {
+        if (pendingXml == null) {
+            return;
+        }
+        synchronized (this) {
+            String xml = pendingXml;
+            if (xml != null) {
+                try {
+                    fromXmlString(xml);
+                }
+                catch (Exception e) {
+                    throw new IllegalStateException(
+                            "Failed to build the pipeline from its configuration: " + e.getMessage(),
+                            e);
+                }
+            }
         }
     }
 
@@ -83,8 +190,9 @@ public class CvPipeline implements AutoCloseable {
      * @param stage
      */
     public void add(String name, CvStage stage) {
+        build();
         if (name == null) {
-            name = generateUniqueName();
+            name = generateUniqueName(stages);
         }
         stage.setName(name);
         stages.add(stage);
@@ -101,8 +209,9 @@ public class CvPipeline implements AutoCloseable {
     }
 
     public void insert(String name, CvStage stage, int index) {
+        build();
         if (name == null) {
-            name = generateUniqueName();
+            name = generateUniqueName(stages);
         }
         stage.setName(name);
         stages.add(index, stage);
@@ -117,10 +226,12 @@ public class CvPipeline implements AutoCloseable {
     }
 
     public void remove(CvStage stage) {
+        build();
         stages.remove(stage);
     }
 
     public List<CvStage> getStages() {
+        build();
         return Collections.unmodifiableList(stages);
     }
 
@@ -128,6 +239,7 @@ public class CvPipeline implements AutoCloseable {
         if (name == null) {
             return null;
         }
+        build();
         for (CvStage stage : stages) {
             if (stage.getName().equals(name)) {
                 return stage;
@@ -190,9 +302,71 @@ public class CvPipeline implements AutoCloseable {
       this.totalProcessingTimeNs = totalProcessingTimeNs;
     }
 
+    public boolean isRetainAllResultImages() {
+        return retainAllResultImages;
+    }
+
+    /**
+     * If true, an image snapshot is stored in the Result of every stage, as needed to inspect
+     * the stages in the editor. If false, only images that may be used later in the pipeline or
+     * by the caller are stored.
+     * 
+     * @param retainAllResultImages
+     */
+    public void setRetainAllResultImages(boolean retainAllResultImages) {
+        this.retainAllResultImages = retainAllResultImages;
+    }
+
+    /**
+     * Returns the names of the stages whose result images must be kept in lean mode, or null if
+     * all of them must be kept.
+     */
+    private Set<String> getRetainedImageStageNames() {
+        if (retainAllResultImages) {
+            return null;
+        }
+        Set<String> names = new HashSet<>();
+        names.add(VisionUtils.PIPELINE_RESULTS_NAME);
+        for (CvStage stage : stages) {
+            if (stage instanceof ScriptRun) {
+                // Scripts can look up any result, so we can't tell what is needed.
+                return null;
+            }
+            for (Field field : getStringFields(stage.getClass())) {
+                try {
+                    Object value = field.get(stage);
+                    if (value != null) {
+                        names.add((String) value);
+                    }
+                }
+                catch (IllegalAccessException e) {
+                    return null;
+                }
+            }
+        }
+        return names;
+    }
+
+    private static List<Field> getStringFields(Class<?> cls) {
+        return stringFields.computeIfAbsent(cls, c -> {
+            List<Field> fields = new ArrayList<>();
+            for (; c != null && c != CvStage.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (field.getType() == String.class && !Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields;
+        });
+    }
+
     public void process() {
+        build();
         totalProcessingTimeNs = 0;
         release();
+        Set<String> retainedImageStageNames = getRetainedImageStageNames();
         for (CvStage stage : stages) {
             // Process and time the stage and get the result.
             long processingTimeNs = System.nanoTime();
@@ -218,56 +392,71 @@ public class CvPipeline implements AutoCloseable {
             if(stage.isEnabled() && model != null) {
               workingModel=model;
             }
-            // If the result image is null and there is a working image,
-            // replace the result image with a clone of the working image.
-            if (image == null) {
-                if (workingImage != null) {
-                    image = workingImage.clone();
-                }
-            }
             // If the result image is not null:
-            // Release the working image if the result image is different.
+            // Recycle the working image if the result image is different.
             // Replace the working image with the result image.
-            // Clone the result image for storage.
-            else {
-                if (workingImage != null && workingImage != image) {
-                    workingImage.release();
+            if (image != null) {
+                // Stages like ComposeResult hand out a stored result image as the new working
+                // image, which must stay untouched.
+                if (workingImage != null && workingImage != image && !isResultImage(workingImage)) {
+                    matPool.recycle(workingImage);
                 }
                 workingImage = image;
-                image = image.clone();
+            }
+            // Store a copy of the working image as the result image, if the image may be needed
+            // later on.
+            image = null;
+            if (workingImage != null && (retainedImageStageNames == null
+                    || retainedImageStageNames.contains(stage.getName()))) {
+                image = matPool.copyOf(workingImage);
             }
 
             results.put(stage, new Result(image, model, processingTimeNs));
         }
     }
 
+    private boolean isResultImage(Mat image) {
+        for (Result result : results.values()) {
+            if (result.image == image) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
-     * Release any temporary resources associated with the processing of the pipeline. Should be
-     * called when the pipeline is no longer needed. This is primarily to release retained native
-     * resources from OpenCV.
+     * Drop the results and the working image of the last run. Their Mats go back to the
+     * pipeline's pool for the next run and keep their native memory until close() is called.
      */
     public void release() {
         if (workingImage != null) {
-            workingImage.release();
+            if (!isResultImage(workingImage)) {
+                matPool.recycle(workingImage);
+            }
             workingImage = null;
         }
         for (Result result : results.values()) {
-            if (result.image != null) {
-                result.image.release();
-            }
+            matPool.recycle(result.image);
         }
         workingModel = null;
         results.clear();
     }
     
+    /**
+     * Release any temporary resources associated with the processing of the pipeline, including
+     * the native OpenCV memory held by its pool. Should be called when the pipeline is no longer
+     * needed or will not be used for a while. The pipeline can still be processed afterwards.
+     */
     @Override
     public void close() throws IOException {
         release();
+        matPool.clear();
     }
     
     @Override
     protected void finalize() throws Throwable {
         release();
+        matPool.clear();
         super.finalize();
     }
 
@@ -278,6 +467,7 @@ public class CvPipeline implements AutoCloseable {
      * @throws Exception
      */
     public String toXmlString() throws Exception {
+        build();
         Serializer ser = createSerializer();
         StringWriter sw = new StringWriter();
         ser.write(this, sw);
@@ -292,19 +482,122 @@ public class CvPipeline implements AutoCloseable {
      */
     public void fromXmlString(String s) throws Exception {
         release();
+        List<CvStage> stages;
+        if (uncopyableXml.contains(s)) {
+            stages = parseXmlString(s).getStages();
+        }
+        else {
+            CvPipeline template = templateCache.get(s);
+            boolean parsed = (template == null);
+            if (parsed) {
+                template = parseXmlString(s);
+            }
+            try {
+                stages = copyStages(template.getStages());
+                if (parsed) {
+                    templateCache.put(s, template);
+                }
+            }
+            catch (CloneNotSupportedException e) {
+                // A stage holds something we can't copy. Remember that, so the next time the
+                // definition is only parsed, and use freshly parsed stages, which are not shared.
+                templateCache.remove(s);
+                uncopyableXml.add(s);
+                stages = parsed ? template.getStages() : parseXmlString(s).getStages();
+            }
+        }
+        this.stages.clear();
+        for (CvStage stage : stages) {
+            if (stage.getName() == null) {
+                stage.setName(generateUniqueName(this.stages));
+            }
+            this.stages.add(stage);
+        }
+        // Only publish the pipeline as built once the stages are complete, readers skip the lock
+        // when there is no pending XML.
+        pendingXml = null;
+    }
+
+    private static CvPipeline parseXmlString(String s) throws Exception {
         Serializer ser = createSerializer();
         StringReader sr = new StringReader(s);
-        CvPipeline pipeline = ser.read(CvPipeline.class, sr);
-        stages.clear();
-        for (CvStage stage : pipeline.getStages()) {
-            add(stage);
+        return ser.read(CvPipeline.class, sr);
+    }
+
+    /**
+     * Make a structural deep copy of the given stages. Each stage is created with its no-arg
+     * constructor, as the serializer would do, and the fields the serializer would read and write
+     * are copied over. Only immutable field values can be shared between the copies, anything
+     * else causes a CloneNotSupportedException.
+     */
+    private static List<CvStage> copyStages(List<CvStage> stages) throws CloneNotSupportedException {
+        List<CvStage> copies = new ArrayList<>();
+        for (CvStage stage : stages) {
+            try {
+                Constructor<? extends CvStage> constructor = stage.getClass().getDeclaredConstructor();
+                constructor.setAccessible(true);
+                CvStage copy = constructor.newInstance();
+                for (Field field : getSerializedFields(stage.getClass())) {
+                    Object value = field.get(stage);
+                    if (!isImmutable(value)) {
+                        throw new CloneNotSupportedException(String.format("Can't copy %s.%s of type %s.",
+                                stage.getClass().getSimpleName(), field.getName(), value.getClass().getName()));
+                    }
+                    field.set(copy, value);
+                }
+                copies.add(copy);
+            }
+            catch (CloneNotSupportedException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CloneNotSupportedException(e.getMessage());
+            }
         }
+        return copies;
     }
 
-    private String generateUniqueName() {
+    private static boolean isImmutable(Object value) {
+        return value == null 
+                || value instanceof String
+                || value instanceof Integer
+                || value instanceof Double
+                || value instanceof Boolean
+                || value instanceof Long
+                || value instanceof Float
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Character
+                || value instanceof Enum
+                || value instanceof File
+                || value instanceof Color;
+    }
+
+    private static List<Field> getSerializedFields(Class<?> cls) {
+        return serializedFields.computeIfAbsent(cls, c -> {
+            List<Field> fields = new ArrayList<>();
+            for (; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    for (Annotation annotation : field.getAnnotations()) {
+                        if (annotation.annotationType().getPackage().getName().equals("org.simpleframework.xml")) {
+                            field.setAccessible(true);
+                            fields.add(field);
+                            break;
+                        }
+                    }
+                }
+            }
+            return fields;
+        });
+    }
+
+    private static String generateUniqueName(List<CvStage> stages) {
         for (int i = 0;; i++) {
             String name = "" + i;
-            if (getStage(name) == null) {
+            if (stages.stream().noneMatch(stage -> name.equals(stage.getName()))) {
                 return name;
             }
         }
@@ -312,12 +605,28 @@ public class CvPipeline implements AutoCloseable {
 
     @Override
     public CvPipeline clone() throws CloneNotSupportedException {
+        String xml = pendingXml;
+        if (xml != null) {
+            return lazy(xml);
+        }
+        CvPipeline pipeline = new CvPipeline();
+        List<CvStage> stages;
         try {
-            return new CvPipeline(toXmlString());
+            stages = copyStages(this.stages);
         }
-        catch (Exception e) {
-            throw new CloneNotSupportedException(e.getMessage());
+        catch (CloneNotSupportedException e) {
+            // Fall back to a round trip through XML.
+            try {
+                return new CvPipeline(toXmlString());
+            }
+            catch (Exception e1) {
+                throw new CloneNotSupportedException(e1.getMessage());
+            }
+        }
+        for (CvStage stage : stages) {
+            pipeline.add(stage);
         }
+        return pipeline;
     }
     
     public Object getProperty(String name) {
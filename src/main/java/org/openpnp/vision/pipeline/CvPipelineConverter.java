@@ -0,0 +1,128 @@
+package org.openpnp.vision.pipeline;
+
+import java.io.StringReader;
+
+import org.simpleframework.xml.convert.Converter;
+import org.simpleframework.xml.stream.InputNode;
+import org.simpleframework.xml.stream.NodeBuilder;
+import org.simpleframework.xml.stream.NodeMap;
+import org.simpleframework.xml.stream.OutputNode;
+
+/**
+ * Reads pipelines embedded in the configuration without building their stages. The element is
+ * kept as raw XML in the CvPipeline and only parsed when the pipeline is first used, so a large
+ * parts library with a pipeline per part loads quickly. A pipeline that was never used is written
+ * back exactly as it was read. The classes named in the XML are checked while reading, so a
+ * pipeline that refers to an unknown stage still fails when the configuration is loaded.
+ *
+ * Registered for CvPipeline in Configuration.createSerializer().
+ */
+public class CvPipelineConverter implements Converter<CvPipeline> {
+    private static final String ROOT = "cv-pipeline";
+
+    @Override
+    public CvPipeline read(InputNode node) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        appendXml(node, ROOT, true, sb);
+        return CvPipeline.lazy(sb.toString());
+    }
+
+    @Override
+    public void write(OutputNode node, CvPipeline value) throws Exception {
+        String xml = value.getPendingXml();
+        if (xml == null) {
+            xml = value.toXmlString();
+        }
+        InputNode root = NodeBuilder.read(new StringReader(xml));
+        copy(root, node, true);
+    }
+
+    private static void appendXml(InputNode node, String name, boolean root,
+            StringBuilder sb) throws Exception {
+        sb.append('<').append(name);
+        NodeMap<InputNode> attributes = node.getAttributes();
+        for (String attribute : attributes) {
+            if (attribute.equals("class")) {
+                if (root) {
+                    continue;
+                }
+                checkClass(attributes.get(attribute).getValue());
+            }
+            sb.append(' ').append(attribute).append("=\"");
+            escape(attributes.get(attribute).getValue(), true, sb);
+            sb.append('"');
+        }
+        sb.append('>');
+        String value = node.getValue();
+        StringBuilder children = new StringBuilder();
+        InputNode child;
+        while ((child = node.getNext()) != null) {
+            appendXml(child, child.getName(), false, children);
+        }
+        // Whitespace between child elements is formatting, not content.
+        if (value != null && (children.length() == 0 || !value.trim().isEmpty())) {
+            escape(value, false, sb);
+        }
+        sb.append(children);
+        sb.append("</").append(name).append('>');
+    }
+
+    private static void checkClass(String className) throws Exception {
+        try {
+            Class.forName(className, false, CvPipelineConverter.class.getClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            throw new Exception("Unknown class " + className + " in pipeline.", e);
+        }
+    }
+
+    private static void copy(InputNode from, OutputNode to, boolean root) throws Exception {
+        NodeMap<InputNode> attributes = from.getAttributes();
+        for (String attribute : attributes) {
+            if (root && attribute.equals("class")) {
+                continue;
+            }
+            to.setAttribute(attribute, attributes.get(attribute).getValue());
+        }
+        String value = from.getValue();
+        InputNode child = from.getNext();
+        if (value != null && (child == null || !value.trim().isEmpty())) {
+            to.setValue(value);
+        }
+        for (; child != null; child = from.getNext()) {
+            copy(child, to.getChild(child.getName()), false);
+        }
+    }
+
+    private static void escape(String s, boolean attribute, StringBuilder sb) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append(attribute ? "&quot;" : "\"");
+                    break;
+                // Line breaks and tabs in attributes would be normalized to spaces on reading.
+                case '\n':
+                    sb.append(attribute ? "&#10;" : "\n");
+                    break;
+                case '\r':
+                    sb.append(attribute ? "&#13;" : "\r");
+                    break;
+                case '\t':
+                    sb.append(attribute ? "&#9;" : "\t");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
@@ -53,6 +53,12 @@ public class ImageCapture extends CvStage {
         if (camera == null) {
             throw new Exception("No Camera set on pipeline.");
         }
+        // A caller that already has the frame, e.g. bottom vision aligning several nozzles from
+        // one capture, can hand it in instead of capturing again.
+        Mat frame = (Mat) pipeline.getProperty("ImageCapture.image");
+        if (frame != null) {
+            return new Result(frame.clone());
+        }
         Mat image;
         Mat avgImage;
         if (settleFirst) {
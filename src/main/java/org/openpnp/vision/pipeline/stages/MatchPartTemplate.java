@@ -293,8 +293,9 @@ public class MatchPartTemplate extends CvStage {
 
         // Since matchTemplate type is fixed to TM_CCOEFF_NORMED, corr is not actually needed
         // Using just threshold is enought
+        // Only the best score is used, so only the strongest maximum is needed.
         List<TemplateMatch> matches = new ArrayList<>();
-        for (Point point : OpenCvUtils.matMaxima(result, threshold, rangeMax)) {
+        for (Point point : OpenCvUtils.matMaxima(result, threshold, rangeMax, 0, 1)) {
             int x = point.x;
             int y = point.y;
             TemplateMatch match =
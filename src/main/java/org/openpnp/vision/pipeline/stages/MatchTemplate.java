@@ -55,6 +55,20 @@ public class MatchTemplate extends CvStage {
     @Property(description = "Normalize results to maximum value.")
     private boolean normalize = true;
 
+    /**
+     * Matches closer than this to a better match are dropped. Default is 0, which keeps all.
+     */
+    @Attribute(required = false)
+    @Property(description = "Matches closer than this many pixels to a better match are dropped. 0 keeps all.")
+    private double suppressionRadius = 0;
+
+    /**
+     * Only the best this many matches are reported. Default is 0, which reports all.
+     */
+    @Attribute(required = false)
+    @Property(description = "Maximum number of matches to report, best first. 0 reports all.")
+    private int maxMatches = 0;
+
     public String getTemplateStageName() {
         return templateStageName;
     }
@@ -87,6 +101,22 @@ public class MatchTemplate extends CvStage {
         this.normalize = normalize;
     }
 
+    public double getSuppressionRadius() {
+        return suppressionRadius;
+    }
+
+    public void setSuppressionRadius(double suppressionRadius) {
+        this.suppressionRadius = suppressionRadius;
+    }
+
+    public int getMaxMatches() {
+        return maxMatches;
+    }
+
+    public void setMaxMatches(int maxMatches) {
+        this.maxMatches = maxMatches;
+    }
+
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
         if (templateStageName == null) {
@@ -107,7 +137,8 @@ public class MatchTemplate extends CvStage {
 
 
         List<TemplateMatch> matches = new ArrayList<>();
-        for (Point point : OpenCvUtils.matMaxima(result, rangeMin, rangeMax)) {
+        for (Point point : OpenCvUtils.matMaxima(result, rangeMin, rangeMax, suppressionRadius,
+                maxMatches)) {
             int x = point.x;
             int y = point.y;
             TemplateMatch match = new TemplateMatch(x, y, template.cols(), template.rows(),
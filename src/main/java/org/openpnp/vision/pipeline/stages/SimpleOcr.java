@@ -29,10 +29,14 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.imageio.ImageIO;
 
@@ -171,6 +175,74 @@ public class SimpleOcr extends CvStage {
         this.debug = debug;
     }
 
+    private static final int glyphCacheSize = 64;
+
+    /**
+     * Rendered alphabets keyed by font, pixel size, image type and alphabet. Rendering the
+     * templates with Java2D is slow, and auto-detecting the size or reading many feeders asks
+     * for the same ones over and over.
+     */
+    private static final Map<String, GlyphSet> glyphCache =
+            Collections.synchronizedMap(new LinkedHashMap<String, GlyphSet>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, GlyphSet> eldest) {
+                    if (size() > glyphCacheSize) {
+                        eldest.getValue().evict();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+
+    /**
+     * The character templates of an alphabet rendered in one font and size. The template Mats
+     * are shared through the cache. Users acquire the set and release it when done, the Mats are
+     * released once the set has been evicted from the cache and the last user is done with it.
+     */
+    protected static class GlyphSet {
+        final int height;
+        final List<Glyph> glyphs = new ArrayList<>();
+        private int users = 0;
+        private boolean evicted = false;
+
+        GlyphSet(int height) {
+            this.height = height;
+        }
+
+        synchronized void acquire() {
+            users++;
+        }
+
+        synchronized void release() {
+            users--;
+            releaseIfUnused();
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            releaseIfUnused();
+        }
+
+        private void releaseIfUnused() {
+            if (evicted && users == 0) {
+                for (Glyph glyph : glyphs) {
+                    glyph.template.release();
+                }
+                glyphs.clear();
+            }
+        }
+    }
+
+    protected static class Glyph {
+        final char ch;
+        final Mat template;
+
+        Glyph(char ch, Mat template) {
+            this.ch = ch;
+            this.template = template;
+        }
+    }
+
     protected static class CharacterMatch extends TemplateMatch {
         public CharacterMatch(char ch, double x, double y, double width, double height, double score) {
             super(x, y, width, height, score);
@@ -372,78 +444,25 @@ public class SimpleOcr extends CvStage {
                     textImage.type(), textImage.channels(), textImage.depth()));
         }
 
-        // create the font
-        Font font = new Font(fontName, Font.PLAIN, (int)Math.round(scalePt*fontSizePt));
-        // Create a pseudo graphics context to get font metrics 
-        Graphics2D gfm = new BufferedImage(1, 1, type).createGraphics();
-        FontMetrics fm = gfm.getFontMetrics(font);
-        final int maxAscent = fm.getAscent();// fm.getMaxAscent();
-        final int fontHeight = maxAscent+fm.getDescent();//fm.getHeight();
-        final int margin = 0; // tests have shown that no margin is best
-        final int height = fontHeight+2*margin;
-        if (fontHeight < 5 || fontHeight >= textImage.rows()) {
-            // dud
-            return new Result(textImage, new OcrModel("", 0, 0.0));
-        }
-
-        // try find each character of the alphabet in the text image 
-        List<CharacterMatch> matches = new ArrayList<>();
-        for (char ch : alphabet.toCharArray()) {
-            if (ch == ' ' ) {
-                // we can't search for nothing :-) 
-                // spaces will be recognized by discontinuity
-                continue;
-            }
-            String character = new String(new char[] { ch });
-            String characterTag = (Character.isLetterOrDigit(ch) ? character : String.valueOf((int)ch))+"-";
-            // create a template image of the current character
-            int width = fm.stringWidth(character)+2*margin;
-            BufferedImage templateImage =
-                    new BufferedImage(width, height, type);
-            Graphics2D g2d = (Graphics2D) templateImage.getGraphics();
-            g2d.setColor(Color.white);
-            g2d.fillRect(0, 0, width, height);
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2d.setColor(Color.black);
-            g2d.setFont(font);
-            g2d.drawString(character, margin, margin+maxAscent);
-            g2d.dispose();
-            Mat template = OpenCvUtils.toMat(templateImage);
-            if (debug) {
-                File file = Configuration.get().createResourceFile(getClass(), "character-"+characterTag, ".png");
-                Imgcodecs.imwrite(file.getAbsolutePath(), template);
-            }
-
-            // do the actual template match
-            Mat matchMap = new Mat();
-            Imgproc.matchTemplate(textImage, template, matchMap, Imgproc.TM_CCOEFF_NORMED);
-
-            // determine the range
-            MinMaxLocResult mmr = Core.minMaxLoc(matchMap);
-            double maxVal = mmr.maxVal;
-            double rangeMin = threshold;
-            double rangeMax = maxVal;
-
-            // create the matches
-            for (Point point : OpenCvUtils.matMaxima(matchMap, rangeMin, rangeMax)) {
-                int x = point.x;
-                int y = point.y;
-                CharacterMatch match = new CharacterMatch(ch, 
-                        x, y, template.cols(), template.rows(),
-                        matchMap.get(y, x)[0]);
-                matches.add(match);
-            }
-
-            if (debug) {
-                File file = Configuration.get().createResourceFile(getClass(), "match-map-"+characterTag, ".png");
-                // this is a 3x32bit image, cannot save this as .png, need to convert to known image format first
-                BufferedImage img = OpenCvUtils.toBufferedImage(matchMap);
-                ImageIO.write(img, "png", file);
+        // get the rendered character templates
+        GlyphSet glyphSet = getGlyphSet(fontName, (int)Math.round(scalePt*fontSizePt), type, alphabet);
+        final int height = glyphSet.height;
+        List<CharacterMatch> matches;
+        try {
+            if (height < 5 || height >= textImage.rows()) {
+                // dud
+                return new Result(textImage, new OcrModel("", 0, 0.0));
             }
 
-            // cleanup
-            matchMap.release();
-            template.release();
+            // try find each character of the alphabet in the text image, in parallel as the
+            // characters are independent of each other
+            final Mat matchImage = textImage;
+            matches = glyphSet.glyphs.parallelStream()
+                    .<CharacterMatch>flatMap(glyph -> matchCharacter(matchImage, glyph).stream())
+                    .collect(Collectors.toList());
+        }
+        finally {
+            glyphSet.release();
         }
 
         // ready to harvest
@@ -459,11 +478,31 @@ public class SimpleOcr extends CvStage {
             // is a partial match of an "m" etc.) can have a high template match score and the same continuity as the larger 
             // character and win. With the first/last character test, this seems to be eliminated.
             // However, there is still the chance that "rn" is seen as "m", and therefore monospaced fonts are still recommended. 
+            //
+            // Only matches that are close in x can overlap or continue each other, so sort by x and
+            // for each match only look at the siblings within reach.
+            Collections.sort(matches, new Comparator<CharacterMatch>() {
+                @Override
+                public int compare(CharacterMatch o1, CharacterMatch o2) {
+                    return ((Double) o1.x).compareTo(o2.x);
+                }
+            });
+            double maxWidth = 0;
+            for (CharacterMatch match : matches) {
+                maxWidth = Math.max(maxWidth, match.width);
+            }
+            final double reach = maxWidth + height/10.0 + 1;
+            final double[] xs = new double[matches.size()];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = matches.get(i).x;
+            }
+
             for (CharacterMatch match : matches) {
                 // in a proportional font, the widest character should win at the end of a word/line
                 boolean firstInWord = true;
                 boolean lastInWord = true;
-                for (CharacterMatch sibling : matches) {
+                for (int i = firstWithin(xs, match.x - reach); i < xs.length && xs[i] <= match.x + reach; i++) {
+                    CharacterMatch sibling = matches.get(i);
                     if (sibling != match) {
                         if (match.overlaps(sibling)) {
                             // overlapping 
@@ -503,7 +542,8 @@ public class SimpleOcr extends CvStage {
 
             // exclude overlaps by overall score, weighing in any bonus/malus 
             for (CharacterMatch match : matches) {
-                for (CharacterMatch sibling : matches) {
+                for (int i = firstWithin(xs, match.x - reach); i < xs.length && xs[i] <= match.x + reach; i++) {
+                    CharacterMatch sibling = matches.get(i);
                     if (match != sibling && match.overlaps(sibling)) {
                         if (match.getOverallScore() > sibling.getOverallScore()) {
                             // beat you!
@@ -513,14 +553,6 @@ public class SimpleOcr extends CvStage {
                 }
             }
 
-            // sort by x 
-            Collections.sort(matches, new Comparator<CharacterMatch>() {
-                @Override
-                public int compare(CharacterMatch o1, CharacterMatch o2) {
-                    return ((Double) o1.x).compareTo(o2.x);
-                }
-            });
-
             // finally compose the lines of the text
             double prevLineY = -1;
             do {
@@ -637,4 +669,132 @@ public class SimpleOcr extends CvStage {
         // deliver the goods 
         return new Result(textImage, new OcrModel(text.toString(), numChars, overallScore));
     }
+
+    /**
+     * Get the character templates for the alphabet, rendering and caching them if needed. The
+     * returned set is acquired and must be released by the caller.
+     */
+    protected static GlyphSet getGlyphSet(String fontName, int fontSize, int type, String alphabet) {
+        String key = fontName+"|"+fontSize+"|"+type+"|"+alphabet;
+        synchronized (glyphCache) {
+            GlyphSet glyphSet = glyphCache.get(key);
+            if (glyphSet != null) {
+                glyphSet.acquire();
+                return glyphSet;
+            }
+        }
+
+        // create the font
+        Font font = new Font(fontName, Font.PLAIN, fontSize);
+        // Create a pseudo graphics context to get font metrics 
+        Graphics2D gfm = new BufferedImage(1, 1, type).createGraphics();
+        FontMetrics fm = gfm.getFontMetrics(font);
+        gfm.dispose();
+        final int maxAscent = fm.getAscent();// fm.getMaxAscent();
+        final int fontHeight = maxAscent+fm.getDescent();//fm.getHeight();
+        final int margin = 0; // tests have shown that no margin is best
+        final int height = fontHeight+2*margin;
+        GlyphSet glyphSet = new GlyphSet(height);
+        if (fontHeight >= 5) {
+            for (char ch : alphabet.toCharArray()) {
+                if (ch == ' ' ) {
+                    // we can't search for nothing :-) 
+                    // spaces will be recognized by discontinuity
+                    continue;
+                }
+                String character = new String(new char[] { ch });
+                // create a template image of the current character
+                int width = fm.stringWidth(character)+2*margin;
+                BufferedImage templateImage =
+                        new BufferedImage(width, height, type);
+                Graphics2D g2d = (Graphics2D) templateImage.getGraphics();
+                g2d.setColor(Color.white);
+                g2d.fillRect(0, 0, width, height);
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2d.setColor(Color.black);
+                g2d.setFont(font);
+                g2d.drawString(character, margin, margin+maxAscent);
+                g2d.dispose();
+                glyphSet.glyphs.add(new Glyph(ch, OpenCvUtils.toMat(templateImage)));
+            }
+        }
+        glyphSet.acquire();
+        synchronized (glyphCache) {
+            GlyphSet previous = glyphCache.put(key, glyphSet);
+            if (previous != null && previous != glyphSet) {
+                // rendered concurrently by another thread
+                previous.evict();
+            }
+        }
+        return glyphSet;
+    }
+
+    /**
+     * Find all the places where the character matches the text image above the threshold.
+     */
+    protected List<CharacterMatch> matchCharacter(Mat textImage, Glyph glyph) {
+        char ch = glyph.ch;
+        Mat template = glyph.template;
+        String character = new String(new char[] { ch });
+        String characterTag = (Character.isLetterOrDigit(ch) ? character : String.valueOf((int)ch))+"-";
+        List<CharacterMatch> matches = new ArrayList<>();
+        try {
+            if (debug) {
+                File file = Configuration.get().createResourceFile(getClass(), "character-"+characterTag, ".png");
+                Imgcodecs.imwrite(file.getAbsolutePath(), template);
+            }
+
+            // do the actual template match
+            Mat matchMap = new Mat();
+            Imgproc.matchTemplate(textImage, template, matchMap, Imgproc.TM_CCOEFF_NORMED);
+
+            // determine the range
+            MinMaxLocResult mmr = Core.minMaxLoc(matchMap);
+            double maxVal = mmr.maxVal;
+            double rangeMin = threshold;
+            double rangeMax = maxVal;
+
+            // create the matches
+            for (Point point : OpenCvUtils.matMaxima(matchMap, rangeMin, rangeMax)) {
+                int x = point.x;
+                int y = point.y;
+                CharacterMatch match = new CharacterMatch(ch, 
+                        x, y, template.cols(), template.rows(),
+                        matchMap.get(y, x)[0]);
+                matches.add(match);
+            }
+
+            if (debug) {
+                File file = Configuration.get().createResourceFile(getClass(), "match-map-"+characterTag, ".png");
+                // this is a 3x32bit image, cannot save this as .png, need to convert to known image format first
+                BufferedImage img = OpenCvUtils.toBufferedImage(matchMap);
+                ImageIO.write(img, "png", file);
+            }
+
+            // cleanup
+            matchMap.release();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return matches;
+    }
+
+    /**
+     * Index of the first x in the ascending sorted array that is not below the given value.
+     */
+    private static int firstWithin(double[] xs, double x) {
+        int low = 0;
+        int high = xs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (xs[mid] < x) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 }
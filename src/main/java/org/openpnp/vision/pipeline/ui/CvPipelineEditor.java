@@ -167,6 +167,8 @@ public class CvPipelineEditor extends JPanel {
 
     public CvPipelineEditor(CvPipeline pipeline) {
         this.pipeline = pipeline;
+        // The editor shows the image of every stage, so keep them all.
+        pipeline.setRetainAllResultImages(true);
 
         setLayout(new BorderLayout(0, 0));
 
@@ -2,6 +2,8 @@ package org.openpnp.vision.pipeline.ui;
 
 import java.awt.BorderLayout;
 import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.JDialog;
 import org.openpnp.vision.pipeline.ui.CvPipelineEditor;
@@ -15,6 +17,18 @@ public CvPipelineEditorDialog(Frame owner, String title, CvPipelineEditor editor
     getContentPane().add(editor);
     setSize(1024, 768);    
     this.editor = editor;
+    addWindowListener(new WindowAdapter() {
+        @Override
+        public void windowClosing(WindowEvent e) {
+            // The edited pipeline is usually the configured one, which lives on. Free the images
+            // it kept from the last run.
+            try {
+                editor.getPipeline().close();
+            }
+            catch (Exception ex) {
+            }
+        }
+    });
 }
 
 public void setVisible(boolean b) {
@@ -0,0 +1,44 @@
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Part;
+
+import com.google.common.io.Files;
+
+public class ConfigurationSaveTest {
+    /**
+     * Saving again without changes must not rewrite the files, and a changed part must be saved.
+     */
+    @Test
+    public void testIncrementalSave() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration configuration = Configuration.get();
+        // Loading the defaults saves them to the configuration directory.
+        configuration.load();
+
+        File machineXml = new File(workingDirectory, "machine.xml");
+        File partsXml = new File(workingDirectory, "parts.xml");
+        Assert.assertTrue(machineXml.exists());
+        Assert.assertTrue(partsXml.exists());
+        machineXml.setLastModified(0);
+        partsXml.setLastModified(0);
+
+        configuration.save();
+        Assert.assertEquals(0, machineXml.lastModified());
+        Assert.assertEquals(0, partsXml.lastModified());
+
+        Part part = configuration.getParts().get(0);
+        part.setName("ConfigurationSaveTest");
+        configuration.save();
+        Assert.assertEquals(0, machineXml.lastModified());
+        Assert.assertTrue(FileUtils.readFileToString(partsXml).contains("ConfigurationSaveTest"));
+
+        // No temporary files are left behind.
+        Assert.assertEquals(0, workingDirectory.list((dir, name) -> name.endsWith(".tmp")).length);
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.CostPnpJobPlanner;
+import org.openpnp.model.Board;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Package;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobPlanner.JobOrderHint;
+import org.openpnp.spi.PnpJobPlanner.PlannedPlacement;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+import com.google.common.io.Files;
+
+public class CostPnpJobPlannerTest {
+    private Machine machine;
+    private Head head;
+    private BoardLocation boardLocation;
+    private NozzleTip nt1;
+    private NozzleTip nt2;
+
+    /**
+     * Uses the BasicJobTest machine: two nozzles that both take nozzle tips NT1 and NT2, and no
+     * nozzle tips loaded.
+     */
+    @Before
+    public void setUp() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/machine.xml"),
+                new File(workingDirectory, "machine.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/packages.xml"),
+                new File(workingDirectory, "packages.xml"));
+        FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/parts.xml"),
+                new File(workingDirectory, "parts.xml"));
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        machine = Configuration.get().getMachine();
+        head = machine.getDefaultHead();
+        nt1 = machine.getNozzleTip("NT1");
+        nt2 = machine.getNozzleTip("NT2");
+        boardLocation = new BoardLocation(new Board());
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters));
+    }
+
+    @Test
+    public void testPartHeightOrder() throws Exception {
+        Part[] parts = new Part[] { createPart("P3", 3, nt1, nt2), createPart("P1", 1, nt1, nt2),
+                createPart("P2", 2, nt1, nt2) };
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            jobPlacements.add(createJobPlacement(parts[i % parts.length], i * 7 % 50, i * 3 % 40));
+        }
+        Collections.shuffle(jobPlacements, new Random(1));
+
+        List<List<PlannedPlacement>> cycles = plan(new CostPnpJobPlanner(), jobPlacements);
+        double height = 0;
+        int count = 0;
+        for (List<PlannedPlacement> cycle : cycles) {
+            for (PlannedPlacement plannedPlacement : cycle) {
+                Assert.assertTrue(plannedPlacement.jobPlacement.getPartHeight() >= height);
+                height = plannedPlacement.jobPlacement.getPartHeight();
+                count++;
+            }
+        }
+        Assert.assertEquals(jobPlacements.size(), count);
+    }
+
+    @Test
+    public void testPartOrder() throws Exception {
+        Part[] parts = new Part[] { createPart("P1", 3, nt1, nt2), createPart("P2", 2, nt1, nt2),
+                createPart("P3", 1, nt1, nt2) };
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            jobPlacements.add(createJobPlacement(parts[i % parts.length], i * 7 % 50, i * 3 % 40));
+        }
+
+        CostPnpJobPlanner planner = new CostPnpJobPlanner();
+        planner.setJobOrder(JobOrderHint.Part);
+        List<List<PlannedPlacement>> cycles = plan(planner, jobPlacements);
+        List<String> partIds = new ArrayList<>();
+        for (List<PlannedPlacement> cycle : cycles) {
+            for (PlannedPlacement plannedPlacement : cycle) {
+                partIds.add(plannedPlacement.jobPlacement.getPartId());
+            }
+        }
+        List<String> sorted = new ArrayList<>(partIds);
+        Collections.sort(sorted);
+        Assert.assertEquals(jobPlacements.size(), partIds.size());
+        Assert.assertEquals(sorted, partIds);
+    }
+
+    /**
+     * Parts that only fit NT1 and parts that only fit NT2, mixed with parts that fit both, can be
+     * placed with one nozzle tip load per nozzle.
+     */
+    @Test
+    public void testNozzleTipChanges() throws Exception {
+        Part a = createPart("A", 1, nt1);
+        Part b = createPart("B", 1, nt2);
+        Part c = createPart("C", 1, nt1, nt2);
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            jobPlacements.add(createJobPlacement(a, i * 10, 0));
+            jobPlacements.add(createJobPlacement(b, i * 10, 10));
+            jobPlacements.add(createJobPlacement(c, i * 10, 20));
+        }
+
+        List<List<PlannedPlacement>> cycles = plan(new CostPnpJobPlanner(), jobPlacements);
+        Map<Nozzle, NozzleTip> loaded = new HashMap<>();
+        int changes = 0;
+        int count = 0;
+        for (List<PlannedPlacement> cycle : cycles) {
+            for (PlannedPlacement plannedPlacement : cycle) {
+                Assert.assertTrue(plannedPlacement.jobPlacement.getPlacement().getPart()
+                        .getPackage().getCompatibleNozzleTips().contains(plannedPlacement.nozzleTip));
+                if (loaded.put(plannedPlacement.nozzle, plannedPlacement.nozzleTip)
+                        != plannedPlacement.nozzleTip) {
+                    changes++;
+                }
+                count++;
+            }
+        }
+        Assert.assertEquals(jobPlacements.size(), count);
+        Assert.assertEquals(2, changes);
+    }
+
+    /**
+     * A part no nozzle can handle must not keep the rest of the job from being planned, even if
+     * it is the lowest part.
+     */
+    @Test
+    public void testUnservablePart() throws Exception {
+        Part unservable = createPart("U", 0.5);
+        Part a = createPart("A", 1, nt1);
+        Part b = createPart("B", 2, nt2);
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        JobPlacement unservablePlacement = createJobPlacement(unservable, 0, 0);
+        jobPlacements.add(unservablePlacement);
+        for (int i = 0; i < 5; i++) {
+            jobPlacements.add(createJobPlacement(a, i * 10, 0));
+            jobPlacements.add(createJobPlacement(b, i * 10, 10));
+        }
+
+        List<List<PlannedPlacement>> cycles = plan(new CostPnpJobPlanner(), jobPlacements);
+        HashSet<JobPlacement> planned = new HashSet<>();
+        for (List<PlannedPlacement> cycle : cycles) {
+            for (PlannedPlacement plannedPlacement : cycle) {
+                planned.add(plannedPlacement.jobPlacement);
+            }
+        }
+        HashSet<JobPlacement> expected = new HashSet<>(jobPlacements);
+        expected.remove(unservablePlacement);
+        Assert.assertEquals(expected, planned);
+    }
+
+    /**
+     * Calls plan() like the job processor does, with the placements that are still pending, until
+     * it returns no more placements.
+     */
+    private List<List<PlannedPlacement>> plan(CostPnpJobPlanner planner,
+            List<JobPlacement> jobPlacements) {
+        List<JobPlacement> pending = new ArrayList<>(jobPlacements);
+        List<List<PlannedPlacement>> cycles = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            List<PlannedPlacement> cycle = planner.plan(head, new ArrayList<>(pending));
+            if (cycle.isEmpty()) {
+                break;
+            }
+            Assert.assertTrue(cycle.size() <= head.getNozzles().size());
+            for (PlannedPlacement plannedPlacement : cycle) {
+                Assert.assertTrue(pending.remove(plannedPlacement.jobPlacement));
+            }
+            cycles.add(cycle);
+        }
+        return cycles;
+    }
+
+    private Part createPart(String id, double heightMm, NozzleTip... nozzleTips) {
+        Package pkg = new Package(id);
+        for (NozzleTip nozzleTip : nozzleTips) {
+            pkg.addCompatibleNozzleTip(nozzleTip);
+        }
+        Part part = new Part(id);
+        part.setPackage(pkg);
+        part.setHeight(new Length(heightMm, LengthUnit.Millimeters));
+        return part;
+    }
+
+    private JobPlacement createJobPlacement(Part part, double x, double y) {
+        Placement placement = new Placement(part.getId() + "-" + x + "-" + y);
+        placement.setPart(part);
+        placement.setLocation(new Location(LengthUnit.Millimeters, x, y, 0, 0));
+        return new JobPlacement(boardLocation, placement);
+    }
+}
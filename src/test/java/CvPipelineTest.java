@@ -0,0 +1,114 @@
+import java.io.StringWriter;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
+import org.openpnp.machine.reference.vision.ReferenceFiducialLocator;
+import org.openpnp.model.Configuration;
+import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvStage;
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.Root;
+import org.simpleframework.xml.Serializer;
+
+public class CvPipelineTest {
+    /**
+     * A structural clone must serialize to exactly the same XML as the original, and must not
+     * share any stage instances with it.
+     */
+    @Test
+    public void testClone() throws Exception {
+        for (Class<?> cls : new Class<?>[] {ReferenceBottomVision.class,
+                ReferenceFiducialLocator.class}) {
+            String xml = IOUtils.toString(
+                    cls.getResource(cls.getSimpleName() + "-DefaultPipeline.xml"));
+            CvPipeline pipeline = new CvPipeline(xml);
+            CvPipeline clone = pipeline.clone();
+            Assert.assertEquals(pipeline.toXmlString(), clone.toXmlString());
+            Assert.assertEquals(pipeline.getStages().size(), clone.getStages().size());
+            for (int i = 0; i < pipeline.getStages().size(); i++) {
+                Assert.assertNotSame(pipeline.getStages().get(i), clone.getStages().get(i));
+            }
+
+            // Changing the clone must not affect the original.
+            CvStage stage = clone.getStages().get(0);
+            stage.setEnabled(!stage.isEnabled());
+            Assert.assertNotEquals(pipeline.toXmlString(), clone.toXmlString());
+        }
+    }
+
+    /**
+     * Pipelines created from the same XML come from the template cache, but must still be
+     * independent of each other.
+     */
+    @Test
+    public void testCachedXml() throws Exception {
+        String xml = IOUtils.toString(ReferenceBottomVision.class
+                .getResource("ReferenceBottomVision-DefaultPipeline.xml"));
+        CvPipeline first = new CvPipeline(xml);
+        CvPipeline second = new CvPipeline(xml);
+        Assert.assertEquals(first.toXmlString(), second.toXmlString());
+        Assert.assertNotSame(first.getStages().get(0), second.getStages().get(0));
+        first.getStages().get(0).setName("renamed");
+        Assert.assertEquals(new CvPipeline(xml).toXmlString(), second.toXmlString());
+    }
+
+    @Root
+    public static class PipelineHolder {
+        @Element
+        CvPipeline pipeline;
+    }
+
+    /**
+     * Pipelines read with the configuration serializer are built on first use. Writing one that
+     * was never used must give the same XML as writing the built pipeline.
+     */
+    @Test
+    public void testLazyLoad() throws Exception {
+        String xml = IOUtils.toString(ReferenceBottomVision.class
+                .getResource("ReferenceBottomVision-DefaultPipeline.xml"));
+        CvPipeline pipeline = new CvPipeline(xml);
+        PipelineHolder holder = new PipelineHolder();
+        holder.pipeline = pipeline;
+        Serializer serializer = Configuration.createSerializer();
+        StringWriter written = new StringWriter();
+        serializer.write(holder, written);
+
+        PipelineHolder lazy = serializer.read(PipelineHolder.class, written.toString());
+        StringWriter rewritten = new StringWriter();
+        serializer.write(lazy, rewritten);
+        Assert.assertEquals(written.toString(), rewritten.toString());
+
+        Assert.assertEquals(pipeline.getStages().size(), lazy.pipeline.getStages().size());
+        Assert.assertEquals(pipeline.toXmlString(), lazy.pipeline.toXmlString());
+        rewritten = new StringWriter();
+        serializer.write(lazy, rewritten);
+        Assert.assertEquals(written.toString(), rewritten.toString());
+    }
+
+    /**
+     * A pipeline that refers to an unknown stage class must fail when the configuration is read,
+     * not when the pipeline is first used.
+     */
+    @Test
+    public void testLazyLoadUnknownStage() throws Exception {
+        String xml = IOUtils.toString(ReferenceBottomVision.class
+                .getResource("ReferenceBottomVision-DefaultPipeline.xml"));
+        PipelineHolder holder = new PipelineHolder();
+        holder.pipeline = new CvPipeline(xml);
+        Serializer serializer = Configuration.createSerializer();
+        StringWriter written = new StringWriter();
+        serializer.write(holder, written);
+        String broken = written.toString().replace(
+                "org.openpnp.vision.pipeline.stages.ImageCapture",
+                "org.openpnp.vision.pipeline.stages.NoSuchStage");
+        Assert.assertNotEquals(written.toString(), broken);
+        try {
+            serializer.read(PipelineHolder.class, broken);
+            throw new AssertionError("Expected reading a pipeline with an unknown stage to fail.");
+        }
+        catch (Exception e) {
+        }
+    }
+}
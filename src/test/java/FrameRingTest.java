@@ -0,0 +1,48 @@
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.camera.FrameRing;
+
+public class FrameRingTest {
+    @Test
+    public void testFirstAfter() throws Exception {
+        FrameRing ring = new FrameRing(3);
+        Assert.assertTrue(ring.isEmpty());
+        Assert.assertNull(ring.firstAfter(0));
+
+        BufferedImage[] images = new BufferedImage[5];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            ring.push(images[i], i * 10);
+        }
+        // Only the last three frames are kept.
+        Assert.assertSame(images[2], ring.firstAfter(0).image);
+        Assert.assertSame(images[3], ring.firstAfter(25).image);
+        Assert.assertSame(images[4], ring.firstAfter(40).image);
+        Assert.assertSame(images[4], ring.latest().image);
+        Assert.assertNull(ring.firstAfter(41));
+        Assert.assertEquals(10, ring.getFrameIntervalMs() * 1e6, 1e-6);
+    }
+
+    @Test
+    public void testAwaitAfter() throws Exception {
+        FrameRing ring = new FrameRing(4);
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        long t = System.nanoTime();
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+            }
+            ring.push(image, System.nanoTime());
+        });
+        producer.start();
+        Assert.assertSame(image, ring.awaitAfter(t, 5000).image);
+        producer.join();
+
+        // Times out if no frame comes.
+        Assert.assertNull(ring.awaitAfter(System.nanoTime(), 20));
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -167,6 +168,85 @@ public class GcodeDriverTest {
         }
     }
     
+    @Test
+    public void testStreamedActuateThenRead() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        Actuator actuator = new ReferenceActuator();
+        actuator.setName("A1");
+        machine.addActuator(actuator);
+        GcodeDriver driver = (GcodeDriver) ((ReferenceMachine) machine).getDriver();
+        driver.setStreamingEnabled(true);
+        driver.setMaxUnacknowledgedCommands(2);
+        driver.setCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND, "SET A1 {BooleanValue}");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, "READ A1");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_REGEX, "read:a1:(?<Value>-?\\d+)");
+
+        server.addCommandResponse("SET A1 true", "ok");
+        server.addCommandResponse("SET A1 false", "ok");
+        server.addCommandResponse("READ A1", "read:a1:497\nok");
+
+        /**
+         * Stream more actuations than fit in the window, then read. The read is a sync point,
+         * so it must only see its own response and not the acknowledgements of the streamed
+         * commands.
+         */
+        for (int i = 0; i < 5; i++) {
+            actuator.actuate(i % 2 == 0);
+        }
+        Assert.assertEquals(actuator.read(), "497");
+    }
+
+    @Test
+    public void testStreamedMultiLineActuate() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        Actuator actuator = new ReferenceActuator();
+        actuator.setName("A1");
+        machine.addActuator(actuator);
+        GcodeDriver driver = (GcodeDriver) ((ReferenceMachine) machine).getDriver();
+        driver.setStreamingEnabled(true);
+        driver.setMaxUnacknowledgedCommands(2);
+        driver.setCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND,
+                "SET A1 {BooleanValue}\nSET B1 {BooleanValue}\nSET C1 {BooleanValue}");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, "READ A1");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_REGEX, "read:a1:(?<Value>-?\\d+)");
+
+        server.addCommandResponse("SET A1 true", "ok");
+        server.addCommandResponse("SET B1 true", "ok");
+        server.addCommandResponse("SET C1 true", "ok");
+        server.addCommandResponse("READ A1", "read:a1:497\nok");
+
+        /**
+         * The lines of a multi-line command are written together as far as the window allows.
+         * Each must still be acknowledged on its own before the read sees its response.
+         */
+        actuator.actuate(true);
+        actuator.actuate(true);
+        Assert.assertEquals(actuator.read(), "497");
+    }
+
+    @Test
+    public void testStreamedActuatorReadUntil() throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        ReferenceActuator actuator = new ReferenceActuator();
+        actuator.setName("A1");
+        machine.addActuator(actuator);
+        GcodeDriver driver = (GcodeDriver) ((ReferenceMachine) machine).getDriver();
+        driver.setStreamingEnabled(true);
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_COMMAND, "READ A1");
+        driver.setCommand(actuator, CommandType.ACTUATOR_READ_REGEX, "read:a1:(?<Value>-?\\d+)");
+
+        server.addCommandResponse("READ A1", "read:a1:497\nok");
+
+        /**
+         * The read commands are streamed and their values picked up by the reader thread. Reading
+         * must stop as soon as the condition holds, long before the time is up.
+         */
+        AtomicInteger reads = new AtomicInteger();
+        String value = actuator.readUntil(10000, (v) -> reads.incrementAndGet() == 3);
+        Assert.assertEquals("497", value);
+        Assert.assertEquals(3, reads.get());
+    }
+
     @After
     public void after() throws Exception {
         /**
@@ -0,0 +1,47 @@
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.JobSimulator;
+import org.openpnp.machine.reference.JobSimulator.PlacementTime;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.spi.base.AbstractCamera;
+
+import com.google.common.io.Files;
+
+public class JobSimulatorTest {
+    /**
+     * Runs the pnp-test sample job, as in SampleJobTest, but in virtual time. Every placement
+     * must get a time.
+     */
+    @Test
+    public void testSampleJob() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+        AbstractCamera camera = (AbstractCamera) machine.getDefaultHead().getDefaultCamera();
+        camera.setSettleMethod(AbstractCamera.SettleMethod.FixedTime);
+        camera.setSettleTimeMs(250);
+
+        File jobFile = new File("samples");
+        jobFile = new File(jobFile, "pnp-test");
+        jobFile = new File(jobFile, "pnp-test.job.xml");
+        Job job = Configuration.get().loadJob(jobFile);
+
+        JobSimulator simulator = new JobSimulator(machine);
+        simulator.getDriver().setAccelerationMmPerSecond2(2000);
+        simulator.run(job);
+        simulator.print(System.out);
+
+        Assert.assertFalse(simulator.getPlacementTimes().isEmpty());
+        for (PlacementTime placementTime : simulator.getPlacementTimes()) {
+            Assert.assertTrue(placementTime.cycleTimeMilliseconds > 0);
+        }
+        Assert.assertTrue(simulator.getJobTimeMilliseconds() > 0);
+    }
+}
@@ -1,6 +1,12 @@
+import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openpnp.util.OpenCvUtils;
 import org.openpnp.vision.FluentCv;
 
 public class OpenCvTest {
@@ -13,4 +19,30 @@ public class OpenCvTest {
         BufferedImage img = new BufferedImage(640, 480, BufferedImage.TYPE_3BYTE_BGR);
         new FluentCv().toMat(img).toGray();
     }
+
+    @Test
+    public void matMaxima() throws Exception {
+        Mat mat = Mat.zeros(60, 80, CvType.CV_32FC1);
+        mat.put(10, 10, 0.9);
+        mat.put(10, 12, 0.8);
+        mat.put(40, 50, 0.7);
+        mat.put(30, 30, 0.2);
+
+        List<Point> maxima = OpenCvUtils.matMaxima(mat, 0.5, 1.0);
+        Assert.assertEquals(3, maxima.size());
+        Assert.assertTrue(maxima.contains(new Point(10, 10)));
+        Assert.assertTrue(maxima.contains(new Point(12, 10)));
+        Assert.assertTrue(maxima.contains(new Point(50, 40)));
+
+        // The weaker maximum next to the strongest one is suppressed, the rest is sorted.
+        maxima = OpenCvUtils.matMaxima(mat, 0.5, 1.0, 5, 0);
+        Assert.assertEquals(2, maxima.size());
+        Assert.assertEquals(new Point(10, 10), maxima.get(0));
+        Assert.assertEquals(new Point(50, 40), maxima.get(1));
+
+        maxima = OpenCvUtils.matMaxima(mat, 0.5, 1.0, 0, 1);
+        Assert.assertEquals(1, maxima.size());
+        Assert.assertEquals(new Point(10, 10), maxima.get(0));
+        mat.release();
+    }
 }
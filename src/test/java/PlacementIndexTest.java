@@ -0,0 +1,71 @@
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Placement;
+import org.openpnp.model.Placement.Type;
+import org.openpnp.model.PlacementIndex;
+
+public class PlacementIndexTest {
+    private static Placement createPlacement(String id, Side side, Type type, double x, double y) {
+        Placement placement = new Placement(id);
+        placement.setSide(side);
+        placement.setType(type);
+        placement.setLocation(new Location(LengthUnit.Millimeters, x, y, 0, 0));
+        return placement;
+    }
+
+    @Test
+    public void testLookups() {
+        Board board = new Board();
+        Placement r1 = createPlacement("R1", Side.Top, Type.Placement, 5, 5);
+        Placement r2 = createPlacement("R2", Side.Bottom, Type.Placement, 25, 5);
+        Placement fid1 = createPlacement("FID1", Side.Top, Type.Fiducial, 1, 1);
+        Placement c1 = createPlacement("C1", Side.Top, Type.Placement, 12, 14);
+        board.addPlacements(Arrays.asList(r1, r2, fid1, c1));
+
+        PlacementIndex index = board.getPlacementIndex();
+        Assert.assertSame(r2, index.getPlacement("R2"));
+        Assert.assertNull(index.getPlacement("R3"));
+        Assert.assertTrue(index.getDuplicateIds().isEmpty());
+        Assert.assertEquals(Arrays.asList(r1, c1), index.getPlacements(Side.Top, Type.Placement));
+        Assert.assertEquals(Arrays.asList(fid1), index.getPlacements(Side.Top, Type.Fiducial));
+        Assert.assertTrue(index.getPlacements(Side.Bottom, Type.Fiducial).isEmpty());
+
+        // Spatial queries return board order, across grid cells.
+        List<Placement> within = index.getPlacementsWithin(
+                new Location(LengthUnit.Millimeters, 30, 20, 0, 0),
+                new Location(LengthUnit.Millimeters, 2, 2, 0, 0));
+        Assert.assertEquals(Arrays.asList(r1, r2, c1), within);
+        List<Placement> near = index.getPlacementsNear(
+                new Location(LengthUnit.Inches, 0, 0, 0, 0), new Length(8, LengthUnit.Millimeters));
+        Assert.assertEquals(Arrays.asList(r1, fid1), near);
+    }
+
+    @Test
+    public void testSnapshot() {
+        Board board = new Board();
+        Placement r1 = createPlacement("R1", Side.Top, Type.Placement, 0, 0);
+        board.addPlacement(r1);
+        PlacementIndex index = board.getPlacementIndex();
+        Assert.assertSame(index, board.getPlacementIndex());
+
+        // Changes give a new index and leave the old one as it was.
+        board.addPlacement(createPlacement("R1", Side.Top, Type.Placement, 0, 0));
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(2, board.getPlacementIndex().size());
+        Assert.assertTrue(board.getPlacementIndex().getDuplicateIds().contains("R1"));
+
+        index = board.getPlacementIndex();
+        r1.setSide(Side.Bottom);
+        Assert.assertEquals(2, index.getPlacements(Side.Top, Type.Placement).size());
+        Assert.assertEquals(1,
+                board.getPlacementIndex().getPlacements(Side.Top, Type.Placement).size());
+    }
+}
@@ -0,0 +1,98 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.ReferenceCamera;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.PropertySheetHolder;
+
+import com.google.common.io.Files;
+
+public class ReferenceCameraTransformTest {
+    static class TransformCamera extends ReferenceCamera {
+        BufferedImage composed(BufferedImage image) {
+            return transformImage(image);
+        }
+
+        BufferedImage sequential(BufferedImage image) {
+            return transformImageSequentially(image);
+        }
+
+        @Override
+        protected BufferedImage internalCapture() {
+            return null;
+        }
+
+        @Override
+        public Wizard getConfigurationWizard() {
+            return null;
+        }
+
+        @Override
+        public String getPropertySheetHolderTitle() {
+            return null;
+        }
+
+        @Override
+        public PropertySheetHolder[] getChildPropertySheetHolders() {
+            return null;
+        }
+    }
+
+    /**
+     * The composed remap must show black outside the cropped, rotated and offset image, just like
+     * the step by step transform, and not the raw pixels around the crop window.
+     */
+    @Test
+    public void testCropRotateOffset() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+
+        // A bright raw image, so anything taken from outside the crop window shows.
+        BufferedImage raw = new BufferedImage(320, 240, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < raw.getHeight(); y++) {
+            for (int x = 0; x < raw.getWidth(); x++) {
+                int v = 128 + (x + y) % 128;
+                raw.setRGB(x, y, (v << 16) | (v << 8) | v);
+            }
+        }
+
+        TransformCamera camera = new TransformCamera();
+        camera.setCropWidth(160);
+        camera.setCropHeight(120);
+        camera.setRotation(30);
+        camera.setOffsetX(15);
+        camera.setOffsetY(-10);
+
+        BufferedImage sequential = camera.sequential(raw);
+        BufferedImage composed = camera.composed(raw);
+        Assert.assertEquals(sequential.getWidth(), composed.getWidth());
+        Assert.assertEquals(sequential.getHeight(), composed.getHeight());
+
+        long difference = 0;
+        int blackSequential = 0;
+        int blackBoth = 0;
+        for (int y = 0; y < sequential.getHeight(); y++) {
+            for (int x = 0; x < sequential.getWidth(); x++) {
+                int s = sequential.getRGB(x, y) & 0xff;
+                int c = composed.getRGB(x, y) & 0xff;
+                difference += Math.abs(s - c);
+                if (s == 0) {
+                    blackSequential++;
+                    if (c == 0) {
+                        blackBoth++;
+                    }
+                }
+            }
+        }
+        double meanDifference =
+                (double) difference / (sequential.getWidth() * sequential.getHeight());
+        Assert.assertTrue("mean difference " + meanDifference, meanDifference < 5);
+        // The corners and the offset border are black in both.
+        Assert.assertTrue(blackSequential > sequential.getWidth() * sequential.getHeight() / 10);
+        Assert.assertTrue(blackBoth > blackSequential * 0.95);
+    }
+}
@@ -0,0 +1,56 @@
+import java.awt.Color;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.util.SimpleGraph.DataRow;
+
+public class SimpleGraphTest {
+    @Test
+    public void testRecordAndInterpolate() {
+        DataRow row = new DataRow("test", Color.black);
+        Assert.assertNull(row.getMinimum());
+        for (int i = 0; i < 100; i++) {
+            row.recordDataPoint(i, i * 2);
+        }
+        Assert.assertEquals(100, row.size());
+        Assert.assertEquals(0.0, row.getMinimum().y, 0.0);
+        Assert.assertEquals(198.0, row.getMaximum().y, 0.0);
+        Assert.assertEquals(99.0, row.getMaximum().x, 0.0);
+        Assert.assertEquals(21.0, row.getInterpolated(10.5), 1e-9);
+        Assert.assertEquals(20.0, row.getDataPoint(10), 0.0);
+        Assert.assertNull(row.getDataPoint(10.5));
+        Assert.assertNull(row.getInterpolated(-1));
+        Assert.assertNull(row.getInterpolated(100));
+    }
+
+    @Test
+    public void testOutOfOrder() {
+        DataRow row = new DataRow("test", Color.black);
+        row.recordDataPoint(2, 20);
+        row.recordDataPoint(0, 0);
+        row.recordDataPoint(1, 10);
+        row.recordDataPoint(1, 15);
+        Assert.assertEquals(3, row.size());
+        for (int i = 0; i < row.size(); i++) {
+            Assert.assertEquals(i, row.getX(i), 0.0);
+        }
+        Assert.assertEquals(15.0, row.getDataPoint(1), 0.0);
+    }
+
+    @Test
+    public void testDecimation() {
+        DataRow row = new DataRow("test", Color.black);
+        row.setMaximumSize(100);
+        for (int i = 0; i < 10000; i++) {
+            // a single spike that must survive decimation
+            row.recordDataPoint(i, i == 5001 ? 1000 : 0);
+        }
+        Assert.assertTrue(row.size() <= 100);
+        Assert.assertEquals(0.0, row.getMinimum().x, 0.0);
+        Assert.assertEquals(9999.0, row.getMaximum().x, 0.0);
+        Assert.assertEquals(1000.0, row.getMaximum().y, 0.0);
+        for (int i = 1; i < row.size(); i++) {
+            Assert.assertTrue(row.getX(i) > row.getX(i - 1));
+        }
+    }
+}